@@ -0,0 +1,83 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.benchmarks;
+
+import org.nightcode.common.service.AbstractAsyncMessageService;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for {@link AbstractAsyncMessageService#submit(Object)}: producers
+ * submit into a running service whose consumer thread only counts messages.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AbstractAsyncMessageServiceBenchmark {
+
+  private static final int QUEUE_CAPACITY = 1 << 16;
+  private static final Long MESSAGE = 42L;
+
+  private static final class CountingService extends AbstractAsyncMessageService<Long> {
+    final LongAdder processed = new LongAdder();
+
+    CountingService() {
+      // bounded, so producers which outrun the consumer block instead of growing the heap
+      super("benchmark-service", new ArrayBlockingQueue<>(QUEUE_CAPACITY));
+    }
+
+    @Override protected void process(Long message) {
+      processed.increment();
+    }
+  }
+
+  private CountingService service;
+
+  @Setup(Level.Trial) public void setUp() throws Exception {
+    service = new CountingService();
+    service.start().get(10, TimeUnit.SECONDS);
+  }
+
+  @TearDown(Level.Trial) public void tearDown() throws Exception {
+    service.stop().get(10, TimeUnit.SECONDS);
+  }
+
+  @Benchmark public boolean submit() {
+    return service.submit(MESSAGE);
+  }
+
+  @Benchmark @Threads(4) public boolean submit4Producers() {
+    return service.submit(MESSAGE);
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.benchmarks;
+
+import org.nightcode.common.net.im.ContentType;
+import org.nightcode.common.net.im.InternetMessageUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for the Content-Type parser behind {@link InternetMessageUtils#parseContentType(String)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContentTypeParserBenchmark {
+
+  private static final String SIMPLE = "text/plain; charset=us-ascii";
+  private static final String QUOTED
+      = "multipart/report; report-type=delivery-status;\n\tboundary=\"cd173210-7e04-4b49-bb0a-6bee344ca3a5\"";
+
+  @Benchmark public ContentType parseSimple() {
+    return InternetMessageUtils.parseContentType(SIMPLE);
+  }
+
+  @Benchmark public ContentType parseQuoted() {
+    return InternetMessageUtils.parseContentType(QUOTED);
+  }
+
+  @Benchmark @Threads(4) public ContentType parseQuotedConcurrent() {
+    return InternetMessageUtils.parseContentType(QUOTED);
+  }
+}
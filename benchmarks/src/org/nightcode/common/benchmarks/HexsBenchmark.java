@@ -0,0 +1,74 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.benchmarks;
+
+import org.nightcode.common.base.Hexs;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for {@link Hexs}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HexsBenchmark {
+
+  @Param({"16", "1024"})
+  private int size;
+
+  private final Hexs hexs = Hexs.hex();
+  private byte[] bytes;
+  private String hexString;
+
+  @Setup public void setUp() {
+    bytes = new byte[size];
+    new Random(size).nextBytes(bytes);
+    hexString = hexs.fromByteArray(bytes);
+  }
+
+  @Benchmark public String fromByteArray() {
+    return hexs.fromByteArray(bytes);
+  }
+
+  @Benchmark public byte[] toByteArray() {
+    return hexs.toByteArray(hexString);
+  }
+
+  @Benchmark @Threads(4) public String fromByteArrayConcurrent() {
+    return hexs.fromByteArray(bytes);
+  }
+
+  @Benchmark @Threads(4) public byte[] toByteArrayConcurrent() {
+    return hexs.toByteArray(hexString);
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.benchmarks;
+
+import org.nightcode.common.net.Connection;
+import org.nightcode.common.net.lb.RoundRobinLoadBalancingPolicy;
+
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark for {@link RoundRobinLoadBalancingPolicy#selectConnections()}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoundRobinLoadBalancingPolicyBenchmark {
+
+  private static final class NoopConnection extends Connection<InetSocketAddress> {
+    NoopConnection(String name, InetSocketAddress address) {
+      super(name, address);
+    }
+
+    @Override public void close() {
+      // do nothing
+    }
+
+    @Override public void open() {
+      // do nothing
+    }
+  }
+
+  @Param({"1", "8"})
+  private int connections;
+
+  private final RoundRobinLoadBalancingPolicy<InetSocketAddress, Connection<InetSocketAddress>> lbPolicy
+      = new RoundRobinLoadBalancingPolicy<>();
+
+  @Setup public void setUp() {
+    for (int i = 0; i < connections; i++) {
+      InetSocketAddress address = InetSocketAddress.createUnresolved("localhost", 10000 + i);
+      Connection<InetSocketAddress> connection = new NoopConnection("connection" + i, address);
+      lbPolicy.onEvent(new Connection.ConnectionEvent<>(connection, Connection.State.ACTIVE));
+    }
+  }
+
+  @Benchmark public Connection<InetSocketAddress> selectFirst() {
+    return lbPolicy.selectConnections().next();
+  }
+
+  @Benchmark public void selectAll(Blackhole bh) {
+    Iterator<Connection<InetSocketAddress>> iterator = lbPolicy.selectConnections();
+    while (iterator.hasNext()) {
+      bh.consume(iterator.next());
+    }
+  }
+
+  @Benchmark @Threads(4) public Connection<InetSocketAddress> selectFirstConcurrent() {
+    return lbPolicy.selectConnections().next();
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.benchmarks;
+
+import org.nightcode.common.util.monitoring.Speedometer;
+import org.nightcode.common.util.monitoring.StripedSpeedometer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for {@link Speedometer#update(double)} and {@link StripedSpeedometer}
+ * under single-threaded and contended updates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpeedometerBenchmark {
+
+  private final Speedometer speedometer = new Speedometer();
+  private final StripedSpeedometer stripedSpeedometer = new StripedSpeedometer();
+
+  @Benchmark public double update() {
+    return speedometer.update(1.0);
+  }
+
+  @Benchmark @Threads(4) public double update4Threads() {
+    return speedometer.update(1.0);
+  }
+
+  @Benchmark public double stripedUpdate() {
+    return stripedSpeedometer.update(1.0);
+  }
+
+  @Benchmark @Threads(4) public double stripedUpdate4Threads() {
+    return stripedSpeedometer.update(1.0);
+  }
+
+  @Benchmark @Threads(4) public void stripedMark4Threads() {
+    stripedSpeedometer.mark(1.0);
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.benchmarks;
+
+import org.nightcode.common.base.Splitter;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for {@link Splitter}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SplitterBenchmark {
+
+  private static final String SOURCE = "name=yaranga&version=0.11.6&scope=compile&type=jar&classifier=&optional=false";
+
+  private final Splitter splitter = Splitter.on("&").withKeyValueSeparator("=");
+  private final Splitter trimmingSplitter = Splitter.on(";").withKeyValueSeparator("=").trim(' ');
+
+  @Benchmark public Map<String, String> split() {
+    return splitter.split(SOURCE);
+  }
+
+  @Benchmark public Map<String, String> splitAndTrim() {
+    return trimmingSplitter.split(" charset = utf-8 ; boundary = frontier ; format = flowed ");
+  }
+
+  @Benchmark @Threads(4) public Map<String, String> splitConcurrent() {
+    return splitter.split(SOURCE);
+  }
+}
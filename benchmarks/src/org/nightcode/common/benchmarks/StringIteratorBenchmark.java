@@ -0,0 +1,66 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.benchmarks;
+
+import org.nightcode.common.base.StringIterator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark for {@link StringIterator}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StringIteratorBenchmark {
+
+  private static final String SOURCE = "alpha, beta, , gamma, delta, epsilon, zeta, eta, , theta, iota, kappa";
+
+  @Benchmark public void iterate(Blackhole bh) {
+    StringIterator iterator = new StringIterator(SOURCE, ", ");
+    while (iterator.hasNext()) {
+      bh.consume(iterator.next());
+    }
+  }
+
+  @Benchmark public void iterateOmitEmptyStrings(Blackhole bh) {
+    StringIterator iterator = new StringIterator(SOURCE, ", ", true);
+    while (iterator.hasNext()) {
+      bh.consume(iterator.next());
+    }
+  }
+
+  @Benchmark @Threads(4) public void iterateConcurrent(Blackhole bh) {
+    StringIterator iterator = new StringIterator(SOURCE, ", ");
+    while (iterator.hasNext()) {
+      bh.consume(iterator.next());
+    }
+  }
+}
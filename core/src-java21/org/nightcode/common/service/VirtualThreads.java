@@ -0,0 +1,33 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.service;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads, the implementation for Java 21 and later.
+ */
+final class VirtualThreads {
+
+  private static final ThreadFactory FACTORY = Thread.ofVirtual().factory();
+
+  static ThreadFactory factory() {
+    return FACTORY;
+  }
+
+  private VirtualThreads() {
+    // do nothing
+  }
+}
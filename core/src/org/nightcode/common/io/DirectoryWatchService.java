@@ -1,6 +1,7 @@
 package org.nightcode.common.io;
 
 import org.nightcode.common.annotations.Beta;
+import org.nightcode.common.service.ThreadFactories;
 import org.nightcode.common.util.logging.Log;
 
 import java.io.IOException;
@@ -22,6 +23,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.stream.Stream;
 
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
@@ -75,7 +77,7 @@ public class DirectoryWatchService implements AutoCloseable {
   private final WatchService ws;
   private final int maxDepth;
 
-  private final Thread thread = new Thread(this::run, "DirectoryWatchService.thread");
+  private final Thread thread;
   private volatile boolean running = true;
 
   private final Map<WatchKey, WatchPath> watchKeys = new ConcurrentHashMap<>();
@@ -92,8 +94,23 @@ public class DirectoryWatchService implements AutoCloseable {
   }
 
   public DirectoryWatchService(int maxDepth) throws IOException {
+    this(maxDepth, ThreadFactories.platform());
+  }
+
+  /**
+   * Creates a service which watches directories in a thread created by the given factory,
+   * e.g. {@link ThreadFactories#virtual()}.
+   *
+   * @param maxDepth the maximum number of directory levels to watch
+   * @param threadFactory the thread factory
+   * @throws IOException if an I/O error occurs
+   */
+  public DirectoryWatchService(int maxDepth, ThreadFactory threadFactory) throws IOException {
+    java.util.Objects.requireNonNull(threadFactory, "thread factory");
     this.maxDepth = maxDepth;
     ws = FileSystems.getDefault().newWatchService();
+    thread = threadFactory.newThread(this::run);
+    thread.setName("DirectoryWatchService.thread");
   }
 
   @Override public void close() throws Exception {
@@ -0,0 +1,167 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.io;
+
+import org.nightcode.common.annotations.Beta;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Operations on memory-mapped files which are safe to invoke from interrupted threads.
+ *
+ * <p>An interrupt closes a file channel, so the operations open a short-lived channel
+ * while the interrupt status of the thread is cleared, retry if the thread is interrupted
+ * in the meantime and restore the interrupt status afterwards. A mapping remains valid once
+ * its channel is closed.
+ *
+ * <p>A mapping is otherwise released only once its buffer is garbage collected, until then
+ * the disk space of a deleted file isn't reclaimed and some platforms refuse to truncate
+ * or delete the file, so the owner of a mapping {@link #unmap(MappedByteBuffer) unmaps} it
+ * once it is no longer used.
+ */
+@Beta
+public final class MappedFiles {
+
+  /**
+   * A file channel operation.
+   *
+   * @param <T> the result type
+   */
+  @FunctionalInterface
+  private interface Operation<T> {
+    T apply(FileChannel channel) throws IOException;
+  }
+
+  /**
+   * Releases mappings through the cleaner of the buffer, which the JDK doesn't expose publicly.
+   */
+  private static final class Unmapper {
+    private final Object target;
+    private final Method clean; // null if the cleaner isn't accessible
+
+    private Unmapper(Object target, Method clean) {
+      this.target = target;
+      this.clean = clean;
+    }
+
+    static Unmapper create() {
+      try {
+        Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+        try {
+          // JDK 9+
+          Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+          Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+          theUnsafe.setAccessible(true);
+          return new Unmapper(theUnsafe.get(null), invokeCleaner);
+        } catch (NoSuchMethodException ex) {
+          // JDK 8
+          Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+          cleaner.setAccessible(true);
+          return new Unmapper(null, cleaner);
+        }
+      } catch (ReflectiveOperationException | RuntimeException ex) {
+        return new Unmapper(null, null);
+      }
+    }
+
+    void unmap(MappedByteBuffer buffer) throws ReflectiveOperationException {
+      if (clean == null) {
+        return;
+      }
+      if (target != null) {
+        clean.invoke(target, buffer);
+      } else {
+        Object cleaner = clean.invoke(buffer);
+        if (cleaner != null) {
+          cleaner.getClass().getMethod("clean").invoke(cleaner);
+        }
+      }
+    }
+  }
+
+  private static final Unmapper UNMAPPER = Unmapper.create();
+
+  /**
+   * Maps a region of the file for reading and writing, creating the file if it doesn't exist.
+   *
+   * @param path the file
+   * @param position the position of the region in the file
+   * @param size the size of the region
+   * @return the mapped region
+   * @throws IOException if an I/O error occurs
+   */
+  public static MappedByteBuffer map(Path path, long position, int size) throws IOException {
+    return execute(path, channel -> channel.map(FileChannel.MapMode.READ_WRITE, position, size));
+  }
+
+  /**
+   * Truncates the file to the given size.
+   *
+   * @param path the file
+   * @param size the new size
+   * @throws IOException if an I/O error occurs
+   */
+  public static void truncate(Path path, long size) throws IOException {
+    execute(path, channel -> channel.truncate(size));
+  }
+
+  /**
+   * Releases the mapping of the buffer without waiting for the buffer to be garbage collected.
+   * The mapping is left to the garbage collector if the JDK doesn't provide access to the cleaner
+   * of the buffer. The buffer and its duplicates must not be accessed afterwards, an access
+   * may crash the JVM.
+   *
+   * @param buffer the mapped buffer
+   */
+  public static void unmap(MappedByteBuffer buffer) {
+    java.util.Objects.requireNonNull(buffer, "buffer");
+    try {
+      UNMAPPER.unmap(buffer);
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      // left to the garbage collector
+    }
+  }
+
+  private static <T> T execute(Path path, Operation<T> operation) throws IOException {
+    boolean interrupted = false;
+    try {
+      for (;;) {
+        interrupted |= Thread.interrupted();
+        try (FileChannel channel = FileChannel.open(path
+            , StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+          return operation.apply(channel);
+        } catch (ClosedByInterruptException ex) {
+          interrupted = true; // the thread has been interrupted during the operation, retry
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private MappedFiles() {
+    // do nothing
+  }
+}
@@ -14,11 +14,27 @@
 
 package org.nightcode.common.service;
 
+import org.nightcode.common.base.Objects;
 import org.nightcode.common.util.logging.Log;
+import org.nightcode.common.util.monitoring.Counter;
+import org.nightcode.common.util.monitoring.Meter;
+import org.nightcode.common.util.monitoring.MonitoringEngine;
+import org.nightcode.common.util.monitoring.Timer;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
 
 /**
  * Abstract async message service.
@@ -28,11 +44,91 @@ import java.util.concurrent.TimeUnit;
 public abstract class AbstractAsyncMessageService<M> extends AbstractThreadService
     implements MessageService<M> {
 
+  /**
+   * A message submitted by {@link #submitAsync(Object)} waiting for queue capacity.
+   */
+  private static final class PendingMessage<M> {
+    final M message;
+    final CompletableFuture<Boolean> accepted = new CompletableFuture<>();
+
+    PendingMessage(M message) {
+      this.message = message;
+    }
+  }
+
+  /**
+   * The sequence number of a queued message whose enqueue time is tracked to measure the queueing delay.
+   */
+  private static final class LatencyProbe {
+    final long sequence;
+    final long enqueueTime;
+
+    LatencyProbe(long sequence, long enqueueTime) {
+      this.sequence = sequence;
+      this.enqueueTime = enqueueTime;
+    }
+  }
+
+  /**
+   * The context of an overflow, which tracks whether the message has been processed by the submitting thread.
+   */
+  private final class OverflowContext implements OverflowPolicy.Context<M> {
+    boolean processed;
+
+    @Override public BlockingQueue<M> queue() {
+      return queue;
+    }
+
+    @Override public void dropped(M message, String reason) {
+      countDropped(reason);
+    }
+
+    @Override public void process(M message) throws Exception {
+      processed = true;
+      if (maxBatchSize > 0) {
+        processBatch(Collections.singletonList(message));
+      } else {
+        processMessage(message);
+      }
+    }
+  }
+
   private static final boolean DEFAULT_SKIP_MESSAGE_STRATEGY = false;
+  private static final int DEFAULT_MAX_PENDING_MESSAGES = 1024;
+  private static final long POLL_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
 
   protected final BlockingQueue<M> queue;
+  private final JournalBlockingQueue<M> journal; // null if the queue isn't persistent
   private final boolean skipMessageStrategy;
 
+  private int maxBatchSize;
+  private long maxBatchLatencyNanos;
+  private int maxPendingMessages = DEFAULT_MAX_PENDING_MESSAGES;
+
+  private final BooleanSupplier hasMessages;
+
+  private OverflowPolicy<M> overflowPolicy;
+
+  // metrics, null if the service isn't monitored
+  private Counter droppedMessages;
+  private Counter rejectedMessages;
+  private Counter skippedMessages;
+  private Meter processedMessages;
+  private Timer processTime;
+  private Timer queueLatency;
+  private final AtomicReference<LatencyProbe> latencyProbe = new AtomicReference<>();
+  private final AtomicLong enqueuedCount = new AtomicLong();
+  private final AtomicLong dequeuedCount = new AtomicLong();
+
+  private final ConcurrentLinkedQueue<PendingMessage<M>> pendingMessages = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pendingCount = new AtomicInteger(); // of pendingMessages, size() isn't constant-time
+  private final ConcurrentLinkedQueue<CompletableFuture<Integer>> pendingDemands = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean transferring = new AtomicBoolean();
+
+  private volatile boolean draining; // published after drainDeadline
+  private long drainDeadline;
+  private final AtomicLong flushedMessages = new AtomicLong();
+
   public AbstractAsyncMessageService(String serviceName) {
     this(serviceName, new LinkedBlockingQueue<>(), DEFAULT_SKIP_MESSAGE_STRATEGY);
   }
@@ -47,9 +143,33 @@ public abstract class AbstractAsyncMessageService<M> extends AbstractThreadServi
 
   public AbstractAsyncMessageService(String serviceName, BlockingQueue<M> queue,
       boolean skipMessageStrategy) {
-    super(serviceName);
+    this(serviceName, queue, skipMessageStrategy, 1);
+  }
+
+  /**
+   * Creates a service which processes messages of the shared queue in the given number
+   * of consumer threads, see {@link AbstractThreadService#AbstractThreadService(String, int)}.
+   * Messages are processed concurrently and in no particular order. Single-consumer queues,
+   * {@link RingBufferBlockingQueue} and {@link JournalBlockingQueue}, require one consumer thread.
+   *
+   * @param serviceName the name of the service
+   * @param queue the queue of messages
+   * @param consumers the number of consumer threads
+   */
+  public AbstractAsyncMessageService(String serviceName, BlockingQueue<M> queue, int consumers) {
+    this(serviceName, queue, DEFAULT_SKIP_MESSAGE_STRATEGY, consumers);
+  }
+
+  public AbstractAsyncMessageService(String serviceName, BlockingQueue<M> queue,
+      boolean skipMessageStrategy, int consumers) {
+    super(serviceName, consumers);
+    java.util.Objects.requireNonNull(queue, "queue");
+    Objects.validArgument(consumers == 1 || !isSingleConsumer(queue)
+        , "number of consumers <%s> of single-consumer queue <%s> must be 1", consumers, queue.getClass().getSimpleName());
     this.queue = queue;
+    this.journal = (queue instanceof JournalBlockingQueue) ? (JournalBlockingQueue<M>) queue : null;
     this.skipMessageStrategy = skipMessageStrategy;
+    this.hasMessages = () -> !queue.isEmpty() || !isOperates() || isClosing();
   }
 
   @Override public int awaitProcessingCount() {
@@ -60,22 +180,65 @@ public abstract class AbstractAsyncMessageService<M> extends AbstractThreadServi
     super.shutdown();
   }
 
+  /**
+   * Stops the service gracefully: the service stops accepting messages, processes the queued
+   * ones until the queue is empty or the deadline expires and then terminates. Messages being
+   * processed at the deadline are completed, the rest of the queue is dropped along with messages
+   * waiting for capacity. A persistent queue, see {@link JournalBlockingQueue}, keeps dropped messages.
+   * Idle consumer threads notice the drain within the poll timeout of 100 milliseconds.
+   * {@link #stop()} may be invoked during the drain to terminate the service immediately.
+   *
+   * @param timeout the maximum time to process queued messages
+   * @param unit the time unit of the timeout argument
+   * @return a future which completes with the numbers of flushed and dropped messages
+   *         once the service has terminated
+   */
+  public final CompletableFuture<DrainResult> drain(long timeout, TimeUnit unit) {
+    Objects.validArgument(timeout >= 0L, "timeout <%s> must not be negative", timeout);
+    drainDeadline = System.nanoTime() + unit.toNanos(timeout);
+    flushedMessages.set(0L);
+    draining = true;
+    CompletableFuture<State> stopFuture;
+    if (isRunning()) {
+      Log.info().log(getClass(), "[{}]: draining <{}> messages..", serviceName(), queue.size());
+      shutdown();
+      signalMessages();
+      stopFuture = stopFuture();
+    } else {
+      stopFuture = stop();
+    }
+    return stopFuture.thenApply(state -> {
+      DrainResult result = new DrainResult(flushedMessages.get(), queue.size() + rejectPending());
+      draining = false;
+      Log.info().log(getClass(), "[{}]: service has been drained: {}", serviceName(), result);
+      return result;
+    });
+  }
+
   public boolean submit(M message) {
     int s = state();
     if (!AbstractService.isRunning(s)) {
+      count(rejectedMessages);
       return false;
     }
 
+    if (overflowPolicy != null) {
+      return submit(message, overflowPolicy);
+    }
+
     if (skipMessageStrategy) {
       if (queue.offer(message)) {
         int recheck = state();
         if (!AbstractService.isRunning(recheck) && queue.remove(message)) {
           Log.info().log(getClass(), "[{}]: message <{}> has been skipped (queue remaining capacity {})"
               , serviceName(), message, queue.remainingCapacity());
+          count(rejectedMessages);
           return false;
         }
+        messageEnqueued();
         return true;
       }
+      count(skippedMessages);
     } else {
       for (;;) {
         try {
@@ -83,10 +246,17 @@ public abstract class AbstractAsyncMessageService<M> extends AbstractThreadServi
             int recheck = state();
             if (!AbstractService.isRunning(recheck) && queue.remove(message)) {
               Log.info().log(getClass(), "[{}]: message <{}> has been rejected", serviceName(), message);
+              count(rejectedMessages);
               return false;
             }
+            messageEnqueued();
             return true;
           }
+          if (queue instanceof JournalBlockingQueue) {
+            // the unbounded journal refuses messages only once it has been closed
+            count(rejectedMessages);
+            return false;
+          }
         } catch (InterruptedException ex) {
           Log.warn().log(getClass(), ex, "[{}]: exception:", serviceName());
           Thread.currentThread().interrupt();
@@ -99,15 +269,483 @@ public abstract class AbstractAsyncMessageService<M> extends AbstractThreadServi
     return false;
   }
 
+  private boolean submit(M message, OverflowPolicy<M> policy) {
+    if (queue.offer(message)) {
+      return enqueued(message);
+    }
+    OverflowContext context = new OverflowContext();
+    try {
+      // a message processed by the submitting thread hasn't been queued, so it isn't rechecked
+      return policy.onOverflow(message, context) && (context.processed || enqueued(message));
+    } catch (InterruptedException ex) {
+      Log.warn().log(getClass(), ex, "[{}]: exception:", serviceName());
+      Thread.currentThread().interrupt();
+    } catch (Exception ex) {
+      Log.warn().log(getClass(), ex, "[{}]: unable to process message <{}>", serviceName(), message);
+    }
+    return false;
+  }
+
+  /**
+   * Submits the specified message without blocking the calling thread. The returned stage
+   * completes with <tt>true</tt> once the message has been accepted to the queue, which
+   * happens immediately if the queue has capacity, otherwise as soon as the service frees
+   * up space for it. Messages waiting for capacity are accepted in submission order ahead
+   * of {@link #trySubmit(Object)}. The stage completes with <tt>false</tt> if the service
+   * isn't running or stops before the message is accepted, or if the maximum number of messages
+   * are already waiting for capacity, see {@link #setMaxPendingMessages(int)}.
+   *
+   * <p>The stage may be completed by a consumer thread of the service, so dependent
+   * actions which might block should be executed asynchronously.
+   *
+   * @param message message
+   * @return a stage which completes with <tt>true</tt> once the message has been accepted
+   */
+  public CompletionStage<Boolean> submitAsync(M message) {
+    java.util.Objects.requireNonNull(message, "message");
+    if (!isRunning()) {
+      count(rejectedMessages);
+      return CompletableFuture.completedFuture(Boolean.FALSE);
+    }
+    if (pendingMessages.isEmpty() && queue.offer(message)) {
+      return CompletableFuture.completedFuture(enqueued(message));
+    }
+    if (pendingCount.incrementAndGet() > maxPendingMessages) {
+      pendingCount.decrementAndGet();
+      countDropped(OverflowPolicies.PENDING);
+      return CompletableFuture.completedFuture(Boolean.FALSE);
+    }
+    PendingMessage<M> pending = new PendingMessage<>(message);
+    pendingMessages.add(pending);
+    if (isRunning()) {
+      transferPending();
+    } else {
+      rejectPending();
+    }
+    return pending.accepted;
+  }
+
+  /**
+   * Submits the specified message if the queue has capacity for it, without blocking
+   * and regardless of the skip message strategy.
+   *
+   * @param message message
+   * @return the remaining capacity of the queue after the message has been accepted,
+   *         or <tt>-1</tt> if the message hasn't been accepted
+   */
+  public int trySubmit(M message) {
+    if (!isRunning()) {
+      count(rejectedMessages);
+      return -1;
+    }
+    if (!pendingMessages.isEmpty() || !queue.offer(message) || !enqueued(message)) {
+      return -1;
+    }
+    return queue.remainingCapacity();
+  }
+
+  /**
+   * Returns a stage which completes with the number of messages the queue is able
+   * to accept without blocking, once it is greater than zero and there are no messages
+   * waiting for capacity. Producers may request the demand again after submitting that
+   * many messages, in the manner of reactive streams' {@code Subscription.request(n)}.
+   * The stage completes with zero if the service stops.
+   *
+   * @return a stage which completes with the remaining capacity of the queue
+   */
+  public CompletionStage<Integer> demand() {
+    if (!isRunning()) {
+      return CompletableFuture.completedFuture(0);
+    }
+    int remaining = queue.remainingCapacity();
+    if (remaining > 0 && pendingMessages.isEmpty()) {
+      return CompletableFuture.completedFuture(remaining);
+    }
+    CompletableFuture<Integer> demand = new CompletableFuture<>();
+    pendingDemands.add(demand);
+    if (isRunning()) {
+      transferPending();
+    } else {
+      rejectPending();
+    }
+    return demand;
+  }
+
   protected abstract void process(M message) throws Exception;
 
+  /**
+   * Processes a batch of messages, see {@link #setBatchMode(int, long, TimeUnit)}.
+   * The list is reused by the consumer thread and must not be retained after
+   * this method returns. By default each message is passed to {@link #process(Object)}.
+   *
+   * @param messages messages in the order they were submitted
+   * @throws Exception if unable to process messages
+   */
+  protected void process(List<M> messages) throws Exception {
+    for (int i = 0, size = messages.size(); i < size; i++) {
+      process(messages.get(i));
+    }
+  }
+
+  /**
+   * Switches the service to batch mode: queued messages are drained to {@link #process(List)}
+   * in batches of up to {@code maxBatchSize} messages. Once the first message of a batch
+   * is taken the service waits at most {@code maxBatchLatency} for the batch to fill up;
+   * zero latency hands over whatever is already queued. Must be invoked before the
+   * service is started.
+   *
+   * @param maxBatchSize the maximum number of messages in a batch
+   * @param maxBatchLatency the maximum time to wait for a batch to fill up
+   * @param timeUnit the time unit of the maxBatchLatency argument
+   */
+  protected final void setBatchMode(int maxBatchSize, long maxBatchLatency, TimeUnit timeUnit) {
+    Objects.validArgument(maxBatchSize > 0, "max batch size <%s> must be greater than 0", maxBatchSize);
+    Objects.validArgument(maxBatchLatency >= 0L, "max batch latency <%s> must not be negative", maxBatchLatency);
+    java.util.Objects.requireNonNull(timeUnit, "time unit");
+    this.maxBatchSize = maxBatchSize;
+    this.maxBatchLatencyNanos = timeUnit.toNanos(maxBatchLatency);
+  }
+
+  /**
+   * Sets the maximum number of messages submitted by {@link #submitAsync(Object)} which wait
+   * for queue capacity, 1024 by default. Must be invoked before the service is started.
+   *
+   * @param maxPendingMessages the maximum number of messages waiting for capacity
+   */
+  protected final void setMaxPendingMessages(int maxPendingMessages) {
+    Objects.validArgument(maxPendingMessages > 0, "max pending messages <%s> must be greater than 0", maxPendingMessages);
+    this.maxPendingMessages = maxPendingMessages;
+  }
+
+  /**
+   * Sets the policy for messages submitted while the queue is full, which replaces
+   * both the blocking and the skip message strategy of {@link #submit(Object)}.
+   * Policies which take messages out of the queue in the submitting thread, {@link OverflowPolicy#dropOldest()}
+   * and {@link OverflowPolicy#coalesceByKey}, aren't supported by single-consumer queues.
+   * Must be invoked before the service is started.
+   *
+   * @param overflowPolicy the overflow policy
+   */
+  protected final void setOverflowPolicy(OverflowPolicy<M> overflowPolicy) {
+    java.util.Objects.requireNonNull(overflowPolicy, "overflow policy");
+    Objects.validArgument(!isSingleConsumer(queue) || !OverflowPolicies.takesFromQueue(overflowPolicy)
+        , "overflow policy <%s> isn't supported by single-consumer queue <%s>"
+        , overflowPolicy.getClass().getSimpleName(), queue.getClass().getSimpleName());
+    this.overflowPolicy = overflowPolicy;
+  }
+
+  /**
+   * Registers the metrics of the message service in addition to the restart counter:
+   * <ul>
+   *   <li>{@code queue_depth} the number of queued messages;</li>
+   *   <li>{@code queue_latency} the time messages wait in the queue, sampled by tracking
+   *   one queued message at a time;</li>
+   *   <li>{@code process} the duration of {@link #process(Object)}, or of {@link #process(List)} in batch mode;</li>
+   *   <li>{@code messages} the number and rate of processed messages;</li>
+   *   <li>{@code rejected} messages submitted while the service isn't running;</li>
+   *   <li>{@code skipped} messages skipped by the skip message strategy;</li>
+   *   <li>{@code dropped} messages dropped by the {@link OverflowPolicy}, tagged by the reason of the drop,
+   *   and messages of {@link #submitAsync(Object)} beyond the pending limit, tagged {@code pending}.</li>
+   * </ul>
+   */
+  @Override void registerMetrics(MonitoringEngine monitoringEngine, String prefix) {
+    char separator = monitoringEngine.nameSeparator();
+    monitoringEngine.registerGauge(prefix + "queue" + separator + "depth", "number of queued messages", queue::size);
+    queueLatency = monitoringEngine.registerTimer(prefix + "queue" + separator + "latency"
+        , "time messages wait in the queue");
+    processTime = monitoringEngine.registerTimer(prefix + "process", "duration of message processing");
+    processedMessages = monitoringEngine.registerMeter(prefix + "messages", "number of processed messages");
+    rejectedMessages = monitoringEngine.registerCounter(prefix + "rejected", "number of rejected messages");
+    skippedMessages = monitoringEngine.registerCounter(prefix + "skipped", "number of skipped messages");
+    droppedMessages = monitoringEngine.registerCounter(prefix + "dropped"
+        , "number of messages dropped on queue overflow", "reason");
+  }
+
   @Override protected void service() throws Exception {
+    try {
+      if (maxBatchSize > 0) {
+        serviceBatches();
+        return;
+      }
+      while (isOperates()) {
+        M msg = isClosing() ? queue.poll() : awaitMessage();
+        while (msg != null) {
+          if (hasPending()) {
+            transferPending();
+          }
+          processMessage(msg);
+          if (journal != null) {
+            journal.commit();
+          }
+          if (isClosing() && flushed(1)) {
+            return;
+          }
+          msg = queue.poll();
+        }
+        clearLatencyProbe();
+        if (isClosing()) {
+          return;
+        }
+      }
+    } finally {
+      if (!isOperates()) {
+        rejectPending();
+      }
+    }
+  }
+
+  private void serviceBatches() throws Exception {
+    List<M> batch = new ArrayList<>(maxBatchSize);
     while (isOperates()) {
-      M msg = queue.poll(100, TimeUnit.MILLISECONDS);
-      while (msg != null) {
-        process(msg);
-        msg = queue.poll();
+      M msg = isClosing() ? queue.poll() : awaitMessage();
+      if (msg == null) {
+        if (isClosing()) {
+          return;
+        }
+        continue;
+      }
+      batch.add(msg);
+      queue.drainTo(batch, maxBatchSize - 1);
+      InterruptedException interrupted = null;
+      if (maxBatchLatencyNanos > 0L) {
+        long deadline = System.nanoTime() + maxBatchLatencyNanos;
+        while (batch.size() < maxBatchSize) {
+          long remaining = deadline - System.nanoTime();
+          try {
+            msg = (remaining > 0L) ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+          } catch (InterruptedException ex) {
+            interrupted = ex; // process the messages already taken from the queue before giving up
+            break;
+          }
+          if (msg == null) {
+            break;
+          }
+          batch.add(msg);
+          queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+      }
+      if (hasPending()) {
+        transferPending();
+      }
+      int size = batch.size();
+      try {
+        processBatch(batch);
+        if (journal != null) {
+          journal.commit();
+        }
+      } finally {
+        batch.clear();
+      }
+      clearLatencyProbe();
+      if (interrupted != null) {
+        throw interrupted;
+      }
+      if (isClosing() && flushed(size)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Waits up to 100 milliseconds for a message, blocking on the queue
+   * unless the service has a {@link WaitStrategy}.
+   */
+  private M awaitMessage() throws InterruptedException {
+    WaitStrategy waitStrategy = waitStrategy();
+    if (waitStrategy == null) {
+      return queue.poll(100, TimeUnit.MILLISECONDS);
+    }
+    long deadline = 0L;
+    for (int iteration = 0; ; iteration++) {
+      M msg = queue.poll();
+      if (msg != null || !isOperates() || isClosing()) {
+        return msg;
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      long now = System.nanoTime();
+      if (iteration == 0) {
+        deadline = now + POLL_TIMEOUT_NANOS;
+      } else if (deadline - now <= 0L) {
+        return null;
+      }
+      waitStrategy.idle(iteration, deadline - now, hasMessages);
+    }
+  }
+
+  private void processMessage(M message) throws Exception {
+    Timer timer = processTime;
+    if (timer == null) {
+      process(message);
+      return;
+    }
+    messageDequeued(1);
+    long start = timer.begin();
+    try {
+      process(message);
+    } finally {
+      timer.end(start);
+      processedMessages.mark();
+    }
+  }
+
+  private void processBatch(List<M> messages) throws Exception {
+    Timer timer = processTime;
+    if (timer == null) {
+      process(messages);
+      return;
+    }
+    messageDequeued(messages.size());
+    long start = timer.begin();
+    try {
+      process(messages);
+    } finally {
+      timer.end(start);
+      processedMessages.mark(messages.size());
+    }
+  }
+
+  /**
+   * Rechecks the state of the service after the message has been offered to the queue.
+   */
+  private boolean enqueued(M message) {
+    if (!isRunning() && queue.remove(message)) {
+      Log.info().log(getClass(), "[{}]: message <{}> has been rejected", serviceName(), message);
+      count(rejectedMessages);
+      return false;
+    }
+    messageEnqueued();
+    return true;
+  }
+
+  /**
+   * Numbers the queued message and starts tracking its queueing delay unless another message is tracked.
+   * Messages are matched by their position in the queue rather than by identity, since the queue may
+   * return a copy of the message (e.g. decoded from a journal) or the same instance may be queued twice.
+   */
+  private void messageEnqueued() {
+    if (queueLatency != null) {
+      long sequence = enqueuedCount.incrementAndGet();
+      if (latencyProbe.get() == null) {
+        latencyProbe.compareAndSet(null, new LatencyProbe(sequence, System.nanoTime()));
+      }
+    }
+    signalMessages();
+  }
+
+  /**
+   * Ends tracking of the probe once as many messages as were queued before it have been dequeued.
+   */
+  private void messageDequeued(int count) {
+    long sequence = dequeuedCount.addAndGet(count);
+    LatencyProbe probe = latencyProbe.get();
+    if (probe != null && sequence >= probe.sequence && latencyProbe.compareAndSet(probe, null)) {
+      queueLatency.end(probe.enqueueTime);
+    }
+  }
+
+  /**
+   * The sequence numbers of queued and dequeued messages diverge when messages are removed from the queue
+   * or replayed from a journal, so they are resynchronized whenever the queue is empty. A message is
+   * numbered after it has been queued, so the probe may be set after its message has been dequeued.
+   */
+  private void clearLatencyProbe() {
+    if (queueLatency != null && queue.isEmpty()) {
+      dequeuedCount.set(enqueuedCount.get());
+      LatencyProbe probe = latencyProbe.get();
+      if (probe != null) {
+        latencyProbe.compareAndSet(probe, null);
       }
     }
   }
+
+  /**
+   * Moves messages waiting for capacity to the queue and then completes pending demands.
+   * Invoked by both submitting and consumer threads, one of which does the transfer
+   * while the others rely on it to recheck for pending work afterwards.
+   */
+  private void transferPending() {
+    while (hasPending() && queue.remainingCapacity() > 0 && transferring.compareAndSet(false, true)) {
+      try {
+        PendingMessage<M> pending;
+        while ((pending = pendingMessages.peek()) != null && isRunning() && queue.offer(pending.message)) {
+          if (pendingMessages.poll() != null) {
+            pendingCount.decrementAndGet();
+          }
+          pending.accepted.complete(enqueued(pending.message));
+        }
+        int remaining = queue.remainingCapacity();
+        if (pendingMessages.isEmpty() && remaining > 0) {
+          CompletableFuture<Integer> demand;
+          while ((demand = pendingDemands.poll()) != null) {
+            demand.complete(remaining);
+          }
+        }
+      } finally {
+        transferring.set(false);
+      }
+      if (!isRunning()) {
+        return;
+      }
+    }
+  }
+
+  private boolean hasPending() {
+    return pendingCount.get() != 0 || !pendingDemands.isEmpty();
+  }
+
+  /**
+   * Counts messages processed during the drain.
+   *
+   * @return {@code true} if the drain deadline has expired or the service is stopped without a drain
+   */
+  private boolean flushed(int messages) {
+    if (!draining) {
+      return true;
+    }
+    flushedMessages.addAndGet(messages);
+    return System.nanoTime() - drainDeadline > 0L;
+  }
+
+  private int rejectPending() {
+    int rejected = 0;
+    PendingMessage<M> pending;
+    while ((pending = pendingMessages.poll()) != null) {
+      pendingCount.decrementAndGet();
+      Log.info().log(getClass(), "[{}]: message <{}> has been rejected", serviceName(), pending.message);
+      count(rejectedMessages);
+      pending.accepted.complete(Boolean.FALSE);
+      rejected++;
+    }
+    CompletableFuture<Integer> demand;
+    while ((demand = pendingDemands.poll()) != null) {
+      demand.complete(0);
+    }
+    return rejected;
+  }
+
+  private void countDropped(String reason) {
+    Counter counter = droppedMessages;
+    if (counter != null) {
+      counter.tags(reason).inc();
+    }
+  }
+
+  private static boolean isSingleConsumer(BlockingQueue<?> queue) {
+    return queue instanceof RingBufferBlockingQueue || queue instanceof JournalBlockingQueue;
+  }
+
+  private static void count(Counter counter) {
+    if (counter != null) {
+      counter.inc();
+    }
+  }
+
+  private void signalMessages() {
+    WaitStrategy waitStrategy = waitStrategy();
+    if (waitStrategy != null) {
+      waitStrategy.signalAll();
+    }
+  }
 }
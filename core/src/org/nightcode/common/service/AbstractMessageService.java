@@ -16,6 +16,10 @@ package org.nightcode.common.service;
 
 import org.nightcode.common.base.Throwables;
 import org.nightcode.common.util.logging.Log;
+import org.nightcode.common.util.monitoring.Counter;
+import org.nightcode.common.util.monitoring.Meter;
+import org.nightcode.common.util.monitoring.MonitoringEngine;
+import org.nightcode.common.util.monitoring.Timer;
 
 /**
  * Abstract message service.
@@ -25,6 +29,11 @@ public abstract class AbstractMessageService<M> extends AbstractService implemen
 
   private final boolean propagateException;
 
+  // metrics, null if the service isn't monitored
+  private Counter rejectedMessages;
+  private Meter processedMessages;
+  private Timer processTime;
+
   protected AbstractMessageService(String serviceName) {
     this(serviceName, false);
   }
@@ -45,7 +54,17 @@ public abstract class AbstractMessageService<M> extends AbstractService implemen
   @Override public boolean submit(M message) {
     if (isRunning()) {
       try {
-        process(message);
+        if (processTime == null) {
+          process(message);
+        } else {
+          long start = processTime.begin();
+          try {
+            process(message);
+          } finally {
+            processTime.end(start);
+            processedMessages.mark();
+          }
+        }
         return true;
       } catch (Exception ex) {
         if (propagateException) {
@@ -53,10 +72,29 @@ public abstract class AbstractMessageService<M> extends AbstractService implemen
         }
         Log.warn().log(getClass(), ex, "[{}]: exception occurred while submitting message <{}>", serviceName(), message);
       }
+    } else if (rejectedMessages != null) {
+      rejectedMessages.inc();
     }
     return false;
   }
 
+  /**
+   * Registers the metrics of the service in the given engine, named after the service
+   * and joined by the engine's name separator: {@code <serviceName>_process} the duration
+   * of {@link #process(Object)}, {@code <serviceName>_messages} the number and rate of
+   * processed messages and {@code <serviceName>_rejected} messages submitted while
+   * the service isn't running. Must be invoked before the service is started.
+   *
+   * @param monitoringEngine the monitoring engine
+   */
+  protected final void setMonitoringEngine(MonitoringEngine monitoringEngine) {
+    java.util.Objects.requireNonNull(monitoringEngine, "monitoring engine");
+    String prefix = serviceName() + monitoringEngine.nameSeparator();
+    processTime = monitoringEngine.registerTimer(prefix + "process", "duration of message processing");
+    processedMessages = monitoringEngine.registerMeter(prefix + "messages", "number of processed messages");
+    rejectedMessages = monitoringEngine.registerCounter(prefix + "rejected", "number of rejected messages");
+  }
+
   /**
    * Processes message.
    *
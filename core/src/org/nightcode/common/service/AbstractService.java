@@ -40,6 +40,14 @@ public abstract class AbstractService implements Service {
     return s == RUNNING;
   }
 
+  static boolean isShutdown(int s) {
+    return s == SHUTDOWN;
+  }
+
+  static boolean isFailed(int s) {
+    return s == FAILED;
+  }
+
   protected final Logger logger;
   private final String serviceName;
 
@@ -206,6 +214,10 @@ public abstract class AbstractService implements Service {
     }
   }
 
+  final CompletableFuture<State> stopFuture() {
+    return stopFuture;
+  }
+
   void shutdown() {
     final ReentrantLock mainLock = this.lock;
     mainLock.lock();
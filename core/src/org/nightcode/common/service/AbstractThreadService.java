@@ -14,94 +14,90 @@
 
 package org.nightcode.common.service;
 
+import org.nightcode.common.base.Objects;
 import org.nightcode.common.util.logging.Log;
+import org.nightcode.common.util.monitoring.Counter;
+import org.nightcode.common.util.monitoring.MonitoringEngine;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 /**
- * A Service that executes logic in separate thread.
+ * A Service that executes logic in separate thread(s).
  */
 public abstract class AbstractThreadService extends AbstractService implements Service {
 
+  /**
+   * A service thread.
+   */
+  private final class Worker implements Runnable {
+
+    final String threadName;
+    volatile Thread thread; // created when the service starts
+    volatile boolean restart = false;
+
+    Worker(String threadName) {
+      this.threadName = threadName;
+    }
+
+    void interrupt() {
+      Thread t = thread;
+      if (t != null) {
+        t.interrupt();
+      }
+    }
+
+    @Override public void run() {
+      runThread(this);
+    }
+  }
+
   private volatile boolean operates = true;
-  private volatile boolean restart = false;
 
   private long restartTimeoutMs = 10L; // timeout, in milliseconds
+  private WaitStrategy waitStrategy; // null if the thread blocks
+  private ThreadFactory threadFactory = ThreadFactories.platform();
+  private Counter restarts; // null if the service isn't monitored
 
-  private final Thread thread;
+  private final BooleanSupplier stopped = () -> !operates;
 
-  protected AbstractThreadService(final String serviceName) {
-    super(serviceName);
-
-    thread = new Thread(() -> {
-      boolean interrupted = false;
-      try {
-        onStart();
-        started();
+  private final Worker[] workers;
+  private final AtomicInteger startingThreads;
+  private final AtomicInteger runningThreads;
+  private final CountDownLatch startLatch = new CountDownLatch(1);
 
-        if (isRunning()) {
-          Exception lastFailedCause = null;
-          try {
-            while (operates) {
-              try {
-                if (lastFailedCause != null) {
-                  Exception tmpException = lastFailedCause;
-                  lastFailedCause = null;
-                  onStart();
-                  Log.debug().log(getClass(), tmpException, "[{}]: service has been restarted", serviceName());
-                }
-                service();
-              } catch (InterruptedException ex) {
-                Log.warn().log(getClass(), ex, "[{}]: service has been interrupted", serviceName());
-                interrupted = true;
-                if (restart) {
-                  restart = false;
-                  lastFailedCause = ex;
-                  try {
-                    onStop();
-                  } catch (Exception ex2) {
-                    Log.warn().log(getClass(), ex2, "[{}]: exception occurred", serviceName());
-                  }
-                } else {
-                  break;
-                }
-              } catch (Exception ex) {
-                Log.warn().log(getClass(), ex, "[{}]: service's exception", serviceName());
-                lastFailedCause = ex;
-                try {
-                  onStop();
-                } catch (Exception ex2) {
-                  Log.trace().log(getClass(), ex2, "[{}]: exception occurred", serviceName());
-                }
-                try {
-                  Thread.sleep(restartTimeoutMs);
-                } catch (InterruptedException interrupt) {
-                  Log.trace().log(getClass(), interrupt, "[{}]: exception occurred", serviceName());
-                }
-              }
-            }
-          } catch (Throwable th) {
-            th.printStackTrace();
-            Log.fatal().log(getClass(), th, "[{}]: Service would be stopped. Unexpected error.", serviceName());
-          }
-        }
+  protected AbstractThreadService(final String serviceName) {
+    this(serviceName, 1);
+  }
 
-        if (isStopping() || interrupted) {
-          onStop();
-        }
-        stopped();
-      } catch (Throwable th) {
-        serviceFailed(th);
-      } finally {
-        if (interrupted) {
-          Thread.currentThread().interrupt();
-        }
-      }
-    }, serviceName());
+  /**
+   * Creates a service which executes {@link #service()} in the given number of threads.
+   * Each thread invokes {@link #onStart()} and {@link #onStop()} and is restarted independently
+   * of the others, the service is started once all threads have started and stopped once all
+   * threads have stopped.
+   *
+   * @param serviceName the name of the service
+   * @param threads the number of threads
+   */
+  protected AbstractThreadService(final String serviceName, int threads) {
+    super(serviceName);
+    Objects.validArgument(threads > 0, "number of threads <%s> must be greater than 0", threads);
+    workers = new Worker[threads];
+    for (int i = 0; i < threads; i++) {
+      workers[i] = new Worker(threads == 1 ? serviceName : serviceName + '-' + i);
+    }
+    startingThreads = new AtomicInteger(threads);
+    runningThreads = new AtomicInteger(threads);
   }
 
   public final void interrupt() {
-    thread.interrupt();
+    for (Worker worker : workers) {
+      worker.interrupt();
+    }
   }
 
   @Override public final CompletableFuture<State> start() {
@@ -114,12 +110,32 @@ public abstract class AbstractThreadService extends AbstractService implements S
   }
 
   @Override protected final void doStart() {
-    thread.start();
+    for (Worker worker : workers) {
+      Thread thread = threadFactory.newThread(worker);
+      thread.setName(worker.threadName);
+      worker.thread = thread;
+    }
+    for (int i = 0; i < workers.length; i++) {
+      try {
+        workers[i].thread.start();
+      } catch (Throwable th) {
+        serviceFailed(th);
+        // the threads which have started wait for the rest to start, release them
+        for (int j = i; j < workers.length; j++) {
+          workers[j].thread = null;
+          runningThreads.decrementAndGet();
+          if (startingThreads.decrementAndGet() == 0) {
+            startLatch.countDown();
+          }
+        }
+        return;
+      }
+    }
   }
 
   @Override protected final void doStop() {
     operates = false;
-    thread.interrupt();
+    interrupt();
   }
 
   protected boolean isOperates() {
@@ -140,12 +156,201 @@ public abstract class AbstractThreadService extends AbstractService implements S
     this.restartTimeoutMs = restartTimeoutMs;
   }
 
+  /**
+   * Sets the strategy of the service thread waiting between restarts and, for
+   * message services, waiting for messages. By default the thread blocks.
+   * Must be invoked before the service is started.
+   *
+   * @param waitStrategy the wait strategy
+   */
+  protected final void setWaitStrategy(WaitStrategy waitStrategy) {
+    this.waitStrategy = java.util.Objects.requireNonNull(waitStrategy, "wait strategy");
+  }
+
+  /**
+   * Sets the factory of the service threads, e.g. {@link ThreadFactories#virtual()}.
+   * By default the service creates platform threads. Must be invoked before the service is started.
+   *
+   * @param threadFactory the thread factory
+   */
+  protected final void setThreadFactory(ThreadFactory threadFactory) {
+    this.threadFactory = java.util.Objects.requireNonNull(threadFactory, "thread factory");
+  }
+
+  /**
+   * Registers the metrics of the service in the given engine, named after the service
+   * and joined by the engine's name separator: {@code <serviceName>_restarts} counts
+   * restarts of the service threads after failures. Subclasses register their own metrics
+   * as well. Must be invoked before the service is started.
+   *
+   * @param monitoringEngine the monitoring engine
+   */
+  protected final void setMonitoringEngine(MonitoringEngine monitoringEngine) {
+    java.util.Objects.requireNonNull(monitoringEngine, "monitoring engine");
+    String prefix = serviceName() + monitoringEngine.nameSeparator();
+    restarts = monitoringEngine.registerCounter(prefix + "restarts", "number of restarts of the service threads");
+    registerMetrics(monitoringEngine, prefix);
+  }
+
+  /**
+   * Registers metrics of a subclass, see {@link #setMonitoringEngine(MonitoringEngine)}.
+   *
+   * @param monitoringEngine the monitoring engine
+   * @param prefix the prefix of metric names
+   */
+  void registerMetrics(MonitoringEngine monitoringEngine, String prefix) {
+    // do nothing
+  }
+
   protected void startUp() {
     // do nothing
   }
 
   protected final void restart() {
-    restart = true;
-    thread.interrupt();
+    for (Worker worker : workers) {
+      worker.restart = true;
+      worker.interrupt();
+    }
+  }
+
+  WaitStrategy waitStrategy() {
+    return waitStrategy;
+  }
+
+  private void runThread(Worker worker) {
+    boolean interrupted = false;
+    try {
+      try {
+        onStart();
+      } catch (Throwable th) {
+        serviceFailed(th);
+        return;
+      } finally {
+        threadStarted();
+      }
+
+      // the service may have been asked to drain before this thread proceeds
+      int s = state();
+      if (AbstractService.isRunning(s) || AbstractService.isShutdown(s)) {
+        Exception lastFailedCause = null;
+        try {
+          while (operates) {
+            try {
+              if (lastFailedCause != null) {
+                Exception tmpException = lastFailedCause;
+                lastFailedCause = null;
+                onStart();
+                if (restarts != null) {
+                  restarts.inc();
+                }
+                Log.debug().log(getClass(), tmpException, "[{}]: service has been restarted", serviceName());
+              }
+              service();
+              if (isClosing()) {
+                // the service has completed its work after shutdown
+                break;
+              }
+            } catch (InterruptedException ex) {
+              Log.warn().log(getClass(), ex, "[{}]: service has been interrupted", serviceName());
+              interrupted = true;
+              if (worker.restart) {
+                worker.restart = false;
+                lastFailedCause = ex;
+                try {
+                  onStop();
+                } catch (Exception ex2) {
+                  Log.warn().log(getClass(), ex2, "[{}]: exception occurred", serviceName());
+                }
+              } else {
+                break;
+              }
+            } catch (Exception ex) {
+              Log.warn().log(getClass(), ex, "[{}]: service's exception", serviceName());
+              lastFailedCause = ex;
+              try {
+                onStop();
+              } catch (Exception ex2) {
+                Log.trace().log(getClass(), ex2, "[{}]: exception occurred", serviceName());
+              }
+              try {
+                awaitRestart();
+              } catch (InterruptedException interrupt) {
+                Log.trace().log(getClass(), interrupt, "[{}]: exception occurred", serviceName());
+              }
+            }
+          }
+        } catch (Throwable th) {
+          th.printStackTrace();
+          Log.fatal().log(getClass(), th, "[{}]: Service would be stopped. Unexpected error.", serviceName());
+        }
+      }
+
+      // threads which have started release their resources even if another thread failed to start
+      if (isClosing() || interrupted) {
+        onStop();
+      }
+    } catch (Throwable th) {
+      serviceFailed(th);
+    } finally {
+      threadStopped();
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void threadStarted() {
+    if (startingThreads.decrementAndGet() == 0) {
+      try {
+        if (!AbstractService.isFailed(state())) {
+          started();
+        }
+      } finally {
+        startLatch.countDown();
+      }
+    } else {
+      // the service must be either running or failed before any thread proceeds
+      boolean interrupted = false;
+      for (;;) {
+        try {
+          startLatch.await();
+          break;
+        } catch (InterruptedException ex) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Invoked by the last service thread once all threads have stopped, before the service is terminated.
+   */
+  void threadsStopped() {
+    // do nothing
+  }
+
+  private void threadStopped() {
+    if (runningThreads.decrementAndGet() == 0 && !AbstractService.isFailed(state())) {
+      threadsStopped();
+      stopped();
+    }
+  }
+
+  private void awaitRestart() throws InterruptedException {
+    if (waitStrategy == null) {
+      Thread.sleep(restartTimeoutMs);
+      return;
+    }
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(restartTimeoutMs);
+    for (int iteration = 0; operates; iteration++) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0L) {
+        break;
+      }
+      waitStrategy.idle(iteration, remaining, stopped);
+    }
   }
 }
@@ -0,0 +1,53 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.service;
+
+import org.nightcode.common.annotations.Beta;
+
+/**
+ * The result of draining an {@link AbstractAsyncMessageService},
+ * see {@link AbstractAsyncMessageService#drain(long, java.util.concurrent.TimeUnit)}.
+ */
+@Beta
+public final class DrainResult {
+
+  private final long flushed;
+  private final long dropped;
+
+  DrainResult(long flushed, long dropped) {
+    this.flushed = flushed;
+    this.dropped = dropped;
+  }
+
+  /**
+   * Returns the number of messages processed during the drain.
+   */
+  public long flushed() {
+    return flushed;
+  }
+
+  /**
+   * Returns the number of messages left unprocessed when the service terminated. Messages left
+   * in a {@link JournalBlockingQueue} are counted as well, though they aren't lost: they remain
+   * in the journal and are replayed when the queue is reopened.
+   */
+  public long dropped() {
+    return dropped;
+  }
+
+  @Override public String toString() {
+    return "DrainResult{flushed=" + flushed + ", dropped=" + dropped + '}';
+  }
+}
@@ -0,0 +1,573 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.service;
+
+import org.nightcode.common.annotations.Beta;
+import org.nightcode.common.base.Objects;
+import org.nightcode.common.io.MappedFiles;
+import org.nightcode.common.util.logging.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * An unbounded persistent queue which appends elements to memory-mapped segment files,
+ * intended as the queue of an {@link AbstractAsyncMessageService} to get at-least-once processing
+ * of messages across restarts of the service and of the JVM.
+ *
+ * <p>Each element is encoded by a {@link Codec} into a record of a segment file; a segment
+ * which has no room for a record is closed by an end-of-segment mark and the record is written
+ * to the next one. Producers append records under a lock and publish the write position;
+ * the consumer reads records up to it without taking the lock. Written records survive
+ * a crash of the JVM as soon as they are appended, when they reach the disk is defined
+ * by a {@link FsyncPolicy}.
+ *
+ * <p>Taking an element only advances the read position in memory. The consumer {@link #commit() commits}
+ * the position to the cursor file once the taken elements have been processed, which
+ * {@link AbstractAsyncMessageService} does after each message or batch. A reopened queue
+ * replays elements from the committed position, so elements which have been taken but not committed
+ * are delivered again. Segments preceding the committed position are deleted, the mapping of a segment
+ * is released as soon as the producers and the consumer have moved to the next one, so the disk space
+ * of deleted segments is reclaimed without waiting for the garbage collector.
+ *
+ * <p>The position is committed regardless of the outcome of processing: an element whose processing
+ * has failed is committed along with the elements processed after it, so at-least-once delivery
+ * holds across restarts but a failed element isn't delivered again while the queue stays open.
+ * A record whose header doesn't fit into its segment is reported as a corrupted segment.
+ *
+ * <p>Only one thread at a time may take elements out of the queue and commit them. Elements can't
+ * be removed from the middle of the queue: {@link #remove(Object)} always returns {@code false}
+ * and {@link #iterator()} isn't supported.
+ *
+ * @param <E> the type of elements held in this queue
+ */
+@Beta
+public final class JournalBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E>, Closeable {
+
+  /**
+   * Converts elements of the queue to bytes and back.
+   *
+   * @param <E> the type of elements
+   */
+  public interface Codec<E> {
+
+    byte[] encode(E element);
+
+    E decode(byte[] bytes);
+
+    /**
+     * Returns a codec of strings encoded in UTF-8.
+     */
+    static Codec<String> utf8() {
+      return new Codec<String>() {
+        @Override public byte[] encode(String element) {
+          return element.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override public String decode(byte[] bytes) {
+          return new String(bytes, StandardCharsets.UTF_8);
+        }
+      };
+    }
+  }
+
+  /**
+   * Defines when appended records are forced to the disk. Regardless of the policy
+   * segments are forced when they are full and when the queue is closed.
+   */
+  public static final class FsyncPolicy {
+
+    private static final FsyncPolicy NEVER = new FsyncPolicy(0, 0L);
+    private static final FsyncPolicy ALWAYS = new FsyncPolicy(1, 0L);
+
+    /**
+     * Returns a policy which leaves writing records to the disk to the operating system.
+     */
+    public static FsyncPolicy never() {
+      return NEVER;
+    }
+
+    /**
+     * Returns a policy which forces each record to the disk before it is published to the consumer.
+     */
+    public static FsyncPolicy always() {
+      return ALWAYS;
+    }
+
+    /**
+     * Returns a policy which forces records to the disk after every {@code writes} records.
+     *
+     * @param writes the number of records
+     */
+    public static FsyncPolicy everyWrites(int writes) {
+      Objects.validArgument(writes > 0, "writes <%s> must be greater than 0", writes);
+      return new FsyncPolicy(writes, 0L);
+    }
+
+    /**
+     * Returns a policy which forces records to the disk when a record is appended at least
+     * {@code period} after the previous force.
+     *
+     * @param period the minimal period between forces
+     * @param timeUnit the time unit of the period argument
+     */
+    public static FsyncPolicy interval(long period, TimeUnit timeUnit) {
+      Objects.validArgument(period > 0L, "period <%s> must be greater than 0", period);
+      return new FsyncPolicy(0, timeUnit.toNanos(period));
+    }
+
+    private final int writes;
+    private final long intervalNanos;
+
+    private FsyncPolicy(int writes, long intervalNanos) {
+      this.writes = writes;
+      this.intervalNanos = intervalNanos;
+    }
+  }
+
+  /**
+   * A memory-mapped segment file.
+   */
+  private static final class Segment {
+    final long index;
+    final MappedByteBuffer buffer;
+
+    Segment(long index, MappedByteBuffer buffer) {
+      this.index = index;
+      this.buffer = buffer;
+    }
+  }
+
+  private static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+  private static final int MIN_SEGMENT_SIZE = 64;
+  private static final int MAX_SEGMENT_SIZE = 1 << 30;
+  private static final String SEGMENT_SUFFIX = ".journal";
+  private static final String CURSOR_FILE = "cursor";
+
+  private static final int HEADER_SIZE = 4;
+  // a header holds the length of the record plus one, zero marks the end of written records
+  private static final int END_OF_SEGMENT = -1;
+
+  private final Path directory;
+  private final Codec<E> codec;
+  private final int segmentSize;
+  private final FsyncPolicy fsyncPolicy;
+  private final WaitStrategy waitStrategy;
+
+  private final Object writeLock = new Object();
+  private final AtomicInteger size = new AtomicInteger();
+  private volatile long published; // write position visible to the consumer
+
+  // guarded by writeLock
+  private Segment writeSegment;
+  private int writeOffset;
+  private int unforcedWrites;
+  private long lastForce;
+  private boolean closed;
+
+  // owned by the consumer
+  private final MappedByteBuffer cursor;
+  private Segment readSegment;
+  private long readPosition;
+  private long committed;
+
+  private final BooleanSupplier notEmpty = () -> readPosition != published;
+
+  /**
+   * Opens the queue stored in the given directory with 64MB segments, leaving writing records
+   * to the disk to the operating system and blocking the consumer while the queue is empty.
+   *
+   * @param directory the directory of segment files, created if it doesn't exist
+   * @param codec the codec of elements
+   * @throws IOException if an I/O error occurs
+   */
+  public JournalBlockingQueue(Path directory, Codec<E> codec) throws IOException {
+    this(directory, codec, DEFAULT_SEGMENT_SIZE, FsyncPolicy.never(), WaitStrategy.blocking());
+  }
+
+  /**
+   * Opens the queue stored in the given directory and replays elements which haven't been committed.
+   *
+   * @param directory the directory of segment files, created if it doesn't exist
+   * @param codec the codec of elements
+   * @param segmentSize the size of a segment file, limits the size of an encoded element
+   * @param fsyncPolicy the policy of forcing records to the disk
+   * @param waitStrategy the strategy of the consumer waiting for elements
+   * @throws IOException if an I/O error occurs
+   */
+  public JournalBlockingQueue(Path directory, Codec<E> codec, int segmentSize, FsyncPolicy fsyncPolicy,
+      WaitStrategy waitStrategy) throws IOException {
+    Objects.validArgument(segmentSize >= MIN_SEGMENT_SIZE && segmentSize <= MAX_SEGMENT_SIZE
+        , "segment size <%s> must be in range [%s, %s]", segmentSize, MIN_SEGMENT_SIZE, MAX_SEGMENT_SIZE);
+    this.directory = java.util.Objects.requireNonNull(directory, "directory");
+    this.codec = java.util.Objects.requireNonNull(codec, "codec");
+    this.segmentSize = segmentSize;
+    this.fsyncPolicy = java.util.Objects.requireNonNull(fsyncPolicy, "fsync policy");
+    this.waitStrategy = java.util.Objects.requireNonNull(waitStrategy, "wait strategy");
+
+    Files.createDirectories(directory);
+    cursor = map(directory.resolve(CURSOR_FILE), Long.BYTES);
+    TreeSet<Long> segments = segments();
+    long position = cursor.getLong(0);
+    if (!segments.contains(segment(position))) {
+      position = position(segments.isEmpty() ? segment(position) : segments.first(), 0);
+    }
+    for (Long index : segments.headSet(segment(position))) {
+      Files.deleteIfExists(segmentPath(index));
+    }
+    committed = position;
+    readPosition = position;
+    readSegment = openSegment(segment(position));
+    replay();
+    lastForce = System.nanoTime();
+  }
+
+  /**
+   * Commits the elements taken from the queue so far as processed, they won't be replayed when
+   * the queue is reopened. May be invoked only by the consumer.
+   */
+  public void commit() {
+    long position = readPosition;
+    if (position == committed) {
+      return;
+    }
+    cursor.putLong(0, position);
+    long previous = segment(committed);
+    committed = position;
+    if (previous != segment(position)) {
+      cursor.force();
+      for (long index = previous; index < segment(position); index++) {
+        try {
+          Files.deleteIfExists(segmentPath(index));
+        } catch (IOException ex) {
+          Log.warn().log(getClass(), ex, "unable to delete segment <{}>", segmentPath(index));
+        }
+      }
+    }
+  }
+
+  /**
+   * Appends the element, never fails for the lack of space since the queue is unbounded.
+   *
+   * @return {@code true} if the element was added to this queue, {@code false} if the queue has been closed
+   */
+  @Override public boolean offer(E element) {
+    java.util.Objects.requireNonNull(element, "element");
+    byte[] bytes = codec.encode(element);
+    int recordSize = HEADER_SIZE + ((bytes.length + 3) & ~3);
+    Objects.validArgument(recordSize <= segmentSize - HEADER_SIZE
+        , "encoded element of <%s> bytes doesn't fit into a segment of <%s> bytes", bytes.length, segmentSize);
+    synchronized (writeLock) {
+      if (closed) {
+        return false;
+      }
+      if (writeOffset + recordSize > segmentSize - HEADER_SIZE) {
+        Segment previous = writeSegment;
+        previous.buffer.putInt(writeOffset, END_OF_SEGMENT);
+        previous.buffer.force();
+        writeSegment = openSegment(previous.index + 1);
+        writeOffset = 0;
+        MappedFiles.unmap(previous.buffer);
+      }
+      MappedByteBuffer buffer = writeSegment.buffer;
+      ((Buffer) buffer).position(writeOffset + HEADER_SIZE);
+      buffer.put(bytes);
+      buffer.putInt(writeOffset, bytes.length + 1);
+      writeOffset += recordSize;
+      fsync(buffer);
+      size.incrementAndGet();
+      published = position(writeSegment.index, writeOffset);
+    }
+    waitStrategy.signalAll();
+    return true;
+  }
+
+  /**
+   * Appends the element, never blocks since the queue is unbounded.
+   *
+   * @throws IllegalStateException if the queue has been closed
+   */
+  @Override public void put(E element) {
+    if (!offer(element)) {
+      throw new IllegalStateException("queue has been closed");
+    }
+  }
+
+  /**
+   * Appends the element, never blocks since the queue is unbounded.
+   *
+   * @return {@code true} if the element was added to this queue, {@code false} if the queue has been closed
+   */
+  @Override public boolean offer(E element, long timeout, TimeUnit unit) {
+    return offer(element);
+  }
+
+  @Override public E poll() {
+    byte[] bytes = read(true);
+    return (bytes != null) ? codec.decode(bytes) : null;
+  }
+
+  @Override public E take() throws InterruptedException {
+    return poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+  }
+
+  @Override public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+    E element = poll();
+    if (element != null) {
+      return element;
+    }
+    long nanosTimeout = unit.toNanos(timeout);
+    long deadline = System.nanoTime() + nanosTimeout;
+    for (int iteration = 0; ; iteration++) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      element = poll();
+      if (element != null) {
+        return element;
+      }
+      if (nanosTimeout != Long.MAX_VALUE) {
+        nanosTimeout = deadline - System.nanoTime();
+        if (nanosTimeout <= 0L) {
+          return null;
+        }
+      }
+      waitStrategy.idle(iteration, nanosTimeout, notEmpty);
+    }
+  }
+
+  @Override public E peek() {
+    byte[] bytes = read(false);
+    return (bytes != null) ? codec.decode(bytes) : null;
+  }
+
+  @Override public int drainTo(Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override public int drainTo(Collection<? super E> c, int maxElements) {
+    java.util.Objects.requireNonNull(c, "collection");
+    Objects.validArgument(c != this, "unable to drain a queue to itself");
+    int n = 0;
+    E element;
+    while (n < maxElements && (element = poll()) != null) {
+      c.add(element);
+      n++;
+    }
+    return n;
+  }
+
+  @Override public int size() {
+    return size.get();
+  }
+
+  @Override public int remainingCapacity() {
+    return Integer.MAX_VALUE;
+  }
+
+  /**
+   * Not supported, elements can only be taken from the head of the queue.
+   *
+   * @return {@code false}
+   */
+  @Override public boolean remove(Object o) {
+    return false;
+  }
+
+  /**
+   * Not supported.
+   *
+   * @throws UnsupportedOperationException always
+   */
+  @Override public Iterator<E> iterator() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Forces written records and the committed position to the disk, elements can't be added
+   * to the closed queue. The segments mapped at the moment are released once they are garbage collected
+   * since the consumer may still take elements.
+   */
+  @Override public void close() {
+    synchronized (writeLock) {
+      if (!closed) {
+        closed = true;
+        writeSegment.buffer.force();
+        cursor.force();
+      }
+    }
+  }
+
+  @Override public String toString() {
+    return "JournalBlockingQueue{directory=" + directory + ", size=" + size() + '}';
+  }
+
+  /**
+   * Scans records from the committed position to restore the size and the write position.
+   */
+  private void replay() throws IOException {
+    Segment segment = readSegment;
+    int offset = offset(readPosition);
+    int count = 0;
+    for (;;) {
+      int header = header(segment, offset);
+      if (header == END_OF_SEGMENT) {
+        Segment previous = segment;
+        segment = openSegment(segment.index + 1);
+        offset = 0;
+        if (previous != readSegment) {
+          MappedFiles.unmap(previous.buffer);
+        }
+      } else if (header == 0) {
+        break;
+      } else {
+        offset += HEADER_SIZE + ((header - 1 + 3) & ~3);
+        count++;
+      }
+    }
+    // the writer and the reader don't share a buffer, whose position isn't thread-safe
+    writeSegment = openSegment(segment.index);
+    if (segment != readSegment) {
+      MappedFiles.unmap(segment.buffer);
+    }
+    writeOffset = offset;
+    size.set(count);
+    published = position(segment.index, offset);
+  }
+
+  private byte[] read(boolean advance) {
+    for (;;) {
+      long position = readPosition;
+      if (position == published) {
+        return null;
+      }
+      int offset = offset(position);
+      MappedByteBuffer buffer = readSegment.buffer;
+      int header;
+      try {
+        header = header(readSegment, offset);
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+      if (header == END_OF_SEGMENT) {
+        Segment previous = readSegment;
+        readSegment = openSegment(previous.index + 1);
+        readPosition = position(readSegment.index, 0);
+        MappedFiles.unmap(previous.buffer);
+        continue;
+      }
+      byte[] bytes = new byte[header - 1];
+      ((Buffer) buffer).position(offset + HEADER_SIZE);
+      buffer.get(bytes);
+      if (advance) {
+        readPosition = position(readSegment.index, offset + HEADER_SIZE + ((bytes.length + 3) & ~3));
+        size.decrementAndGet();
+      }
+      return bytes;
+    }
+  }
+
+  /**
+   * Returns the header of the record at the given offset, zero if the offset is beyond the last header.
+   *
+   * @throws IOException if the record doesn't fit into the segment
+   */
+  private int header(Segment segment, int offset) throws IOException {
+    if (offset > segmentSize - HEADER_SIZE) {
+      return 0;
+    }
+    int header = segment.buffer.getInt(offset);
+    if (header < END_OF_SEGMENT
+        || header > 0 && offset + HEADER_SIZE + ((header - 1L + 3) & ~3L) > segmentSize - HEADER_SIZE) {
+      throw new IOException(String.format("segment <%s> is corrupted: invalid header <%s> at offset <%s>"
+          , segmentPath(segment.index), header, offset));
+    }
+    return header;
+  }
+
+  private void fsync(MappedByteBuffer buffer) {
+    if (fsyncPolicy.writes > 0) {
+      if (++unforcedWrites >= fsyncPolicy.writes) {
+        buffer.force();
+        unforcedWrites = 0;
+      }
+    } else if (fsyncPolicy.intervalNanos > 0L) {
+      long now = System.nanoTime();
+      if (now - lastForce >= fsyncPolicy.intervalNanos) {
+        buffer.force();
+        lastForce = now;
+      }
+    }
+  }
+
+  private Segment openSegment(long index) {
+    try {
+      return new Segment(index, map(segmentPath(index), segmentSize));
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  private TreeSet<Long> segments() throws IOException {
+    TreeSet<Long> segments = new TreeSet<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+      for (Path path : stream) {
+        String name = path.getFileName().toString();
+        segments.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+      }
+    }
+    return segments;
+  }
+
+  private Path segmentPath(long index) {
+    return directory.resolve(String.format("%020d%s", index, SEGMENT_SUFFIX));
+  }
+
+  private static MappedByteBuffer map(Path path, int size) throws IOException {
+    try (FileChannel channel = FileChannel.open(path
+        , StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+  }
+
+  private static long position(long segment, int offset) {
+    return (segment << 32) | offset;
+  }
+
+  private static long segment(long position) {
+    return position >>> 32;
+  }
+
+  private static int offset(long position) {
+    return (int) position;
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.service;
+
+import org.nightcode.common.base.Objects;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Implementations of {@link OverflowPolicy}.
+ */
+final class OverflowPolicies {
+
+  static final String NEWEST = "newest";
+  static final String OLDEST = "oldest";
+  static final String COALESCED = "coalesced";
+  static final String TIMEOUT = "timeout";
+  static final String PENDING = "pending"; // too many messages of submitAsync() wait for capacity
+
+  /**
+   * Removes a queued message having the same key and appends the submitted one to the tail.
+   */
+  static final class CoalesceByKey<M> implements OverflowPolicy<M> {
+
+    private final Function<? super M, ?> keyExtractor;
+
+    CoalesceByKey(Function<? super M, ?> keyExtractor) {
+      this.keyExtractor = java.util.Objects.requireNonNull(keyExtractor, "key extractor");
+    }
+
+    @Override public boolean onOverflow(M message, Context<M> context) {
+      BlockingQueue<M> queue = context.queue();
+      Object key = keyExtractor.apply(message);
+      for (M queued : queue) {
+        if (java.util.Objects.equals(key, keyExtractor.apply(queued)) && queue.remove(queued)) {
+          context.dropped(queued, COALESCED);
+          if (queue.offer(message)) {
+            return true;
+          }
+          break;
+        }
+      }
+      context.dropped(message, NEWEST);
+      return false;
+    }
+  }
+
+  /**
+   * Waits for queue capacity.
+   */
+  static final class BlockWithTimeout<M> implements OverflowPolicy<M> {
+
+    private final long timeout;
+    private final TimeUnit timeUnit;
+
+    BlockWithTimeout(long timeout, TimeUnit timeUnit) {
+      Objects.validArgument(timeout >= 0L, "timeout <%s> must not be negative", timeout);
+      this.timeout = timeout;
+      this.timeUnit = java.util.Objects.requireNonNull(timeUnit, "time unit");
+    }
+
+    @Override public boolean onOverflow(M message, Context<M> context) throws InterruptedException {
+      if (context.queue().offer(message, timeout, timeUnit)) {
+        return true;
+      }
+      context.dropped(message, TIMEOUT);
+      return false;
+    }
+  }
+
+  /**
+   * Drops the oldest queued messages to make room for the submitted one.
+   */
+  static final class DropOldest<M> implements OverflowPolicy<M> {
+
+    @Override public boolean onOverflow(M message, Context<M> context) {
+      BlockingQueue<M> queue = context.queue();
+      for (;;) {
+        M oldest = queue.poll();
+        if (oldest != null) {
+          context.dropped(oldest, OLDEST);
+        }
+        if (queue.offer(message)) {
+          return true;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns {@code true} if the policy takes messages out of the queue in the submitting thread.
+   */
+  static boolean takesFromQueue(OverflowPolicy<?> policy) {
+    return policy instanceof DropOldest || policy instanceof CoalesceByKey;
+  }
+
+  private OverflowPolicies() {
+    // do nothing
+  }
+}
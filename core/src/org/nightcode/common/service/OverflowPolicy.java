@@ -0,0 +1,128 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.service;
+
+import org.nightcode.common.annotations.Beta;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A policy of {@link AbstractAsyncMessageService} for messages which are submitted
+ * while the queue is full. Messages dropped by a policy are counted through the service's
+ * {@link org.nightcode.common.util.monitoring.MonitoringEngine} instead of being logged.
+ *
+ * @param <M> the message type
+ */
+@Beta
+public interface OverflowPolicy<M> {
+
+  /**
+   * The state of the service available to a policy.
+   *
+   * @param <M> the message type
+   */
+  interface Context<M> {
+
+    /**
+     * Returns the queue of the service.
+     */
+    BlockingQueue<M> queue();
+
+    /**
+     * Records that the message has been dropped.
+     *
+     * @param message the dropped message
+     * @param reason the reason of the drop, used as a tag value of the drop counter
+     */
+    void dropped(M message, String reason);
+
+    /**
+     * Processes the message in the calling thread.
+     *
+     * @param message the message
+     * @throws Exception if unable to process the message
+     */
+    void process(M message) throws Exception;
+  }
+
+  /**
+   * Handles the message which can't be offered to the full queue, invoked by the submitting thread.
+   *
+   * @param message the submitted message
+   * @param context the state of the service
+   * @return <tt>true</tt> if the message has been accepted, else <tt>false</tt>
+   * @throws Exception if the message has been accepted but not processed
+   *         or the submitting thread is interrupted
+   */
+  boolean onOverflow(M message, Context<M> context) throws Exception;
+
+  /**
+   * Returns a policy which drops the submitted message.
+   */
+  static <M> OverflowPolicy<M> dropNewest() {
+    return (message, context) -> {
+      context.dropped(message, OverflowPolicies.NEWEST);
+      return false;
+    };
+  }
+
+  /**
+   * Returns a policy which drops the oldest queued messages to make room for the submitted one.
+   * The queue must allow any thread to take messages, unlike single-consumer queues such as
+   * {@link RingBufferBlockingQueue} and {@link JournalBlockingQueue}.
+   */
+  static <M> OverflowPolicy<M> dropOldest() {
+    return new OverflowPolicies.DropOldest<>();
+  }
+
+  /**
+   * Returns a policy which removes a queued message having the same key as the submitted one
+   * and appends the submitted message to the tail of the queue, or drops the submitted message
+   * if there is no such message. The submitted message doesn't take the place of the removed one,
+   * so a key which is updated faster than the queue is consumed keeps moving to the tail and its
+   * latest message may wait behind the messages of other keys indefinitely. The queue is searched
+   * linearly and must support iteration and removal by any thread, e.g. {@link java.util.concurrent.LinkedBlockingQueue}.
+   *
+   * @param keyExtractor the function extracting a key of a message
+   */
+  static <M> OverflowPolicy<M> coalesceByKey(Function<? super M, ?> keyExtractor) {
+    return new OverflowPolicies.CoalesceByKey<>(keyExtractor);
+  }
+
+  /**
+   * Returns a policy which waits up to the given timeout for queue capacity
+   * and then drops the submitted message.
+   *
+   * @param timeout the maximum time to wait
+   * @param timeUnit the time unit of the timeout argument
+   */
+  static <M> OverflowPolicy<M> blockWithTimeout(long timeout, TimeUnit timeUnit) {
+    return new OverflowPolicies.BlockWithTimeout<>(timeout, timeUnit);
+  }
+
+  /**
+   * Returns a policy which processes the submitted message in the submitting thread,
+   * slowing producers down to the rate of the service. Messages processed this way overtake
+   * the queued ones and are processed concurrently with them.
+   */
+  static <M> OverflowPolicy<M> spillToCaller() {
+    return (message, context) -> {
+      context.process(message);
+      return true;
+    };
+  }
+}
@@ -0,0 +1,283 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.service;
+
+import org.nightcode.common.annotations.Beta;
+import org.nightcode.common.base.Objects;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A bounded multi-producer single-consumer queue backed by a preallocated ring buffer,
+ * intended as the queue of an {@link AbstractAsyncMessageService} whose thread is the only consumer.
+ *
+ * <p>Producers claim slots by a CAS on the tail sequence and never take a lock; the consumer
+ * owns the head sequence. Both sequences are padded against false sharing. The way the consumer
+ * waits for elements is defined by a {@link WaitStrategy}; a producer which finds the buffer full
+ * parks for the shortest period until the consumer frees a slot.
+ *
+ * <p>Only one thread at a time may take elements out of the queue ({@code poll}, {@code take},
+ * {@code drainTo}, {@code peek}). {@link #remove(Object)} may be invoked by any thread, it replaces
+ * the element with a marker which the consumer skips, so removed elements are counted by
+ * {@link #size()} until the consumer passes them. {@link #iterator()} isn't supported.
+ *
+ * @param <E> the type of elements held in this queue
+ */
+@Beta
+public final class RingBufferBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+  private static final int MAX_CAPACITY = 1 << 30;
+  private static final Object REMOVED = new Object();
+
+  private final int capacity;
+  private final int mask;
+  private final AtomicReferenceArray<Object> buffer;
+  private final WaitStrategy waitStrategy;
+
+  private final Sequence head = new Sequence(0L);
+  private final Sequence tail = new Sequence(0L);
+  private final Sequence headCache = new Sequence(0L); // producers' view of head
+
+  private final BooleanSupplier notEmpty = () -> tail.get() != head.get();
+
+  /**
+   * Creates a queue with the given capacity which blocks the consumer while it is empty.
+   *
+   * @param capacity the capacity, rounded up to the next power of two
+   */
+  public RingBufferBlockingQueue(int capacity) {
+    this(capacity, WaitStrategy.blocking());
+  }
+
+  /**
+   * Creates a queue with the given capacity and consumer's wait strategy.
+   *
+   * @param capacity the capacity, rounded up to the next power of two
+   * @param waitStrategy the strategy of the consumer waiting for elements
+   */
+  public RingBufferBlockingQueue(int capacity, WaitStrategy waitStrategy) {
+    Objects.validArgument(capacity > 0 && capacity <= MAX_CAPACITY
+        , "capacity <%s> must be in range [1, %s]", capacity, MAX_CAPACITY);
+    java.util.Objects.requireNonNull(waitStrategy, "wait strategy");
+    this.capacity = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+    this.mask = this.capacity - 1;
+    this.buffer = new AtomicReferenceArray<>(this.capacity);
+    this.waitStrategy = waitStrategy;
+  }
+
+  /**
+   * Returns the capacity of this queue.
+   */
+  public int capacity() {
+    return capacity;
+  }
+
+  @Override public boolean offer(E element) {
+    java.util.Objects.requireNonNull(element, "element");
+    long t;
+    do {
+      t = tail.get();
+      if (t - headCache.get() >= capacity) {
+        long h = head.get();
+        if (t - h >= capacity) {
+          return false;
+        }
+        headCache.lazySet(h);
+      }
+    } while (!tail.compareAndSet(t, t + 1));
+    buffer.lazySet(index(t), element);
+    waitStrategy.signalAll();
+    return true;
+  }
+
+  @Override public void put(E element) throws InterruptedException {
+    while (!offer(element)) {
+      backOff();
+    }
+  }
+
+  @Override public boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (!offer(element)) {
+      if (deadline - System.nanoTime() <= 0L) {
+        return false;
+      }
+      backOff();
+    }
+    return true;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override public E poll() {
+    for (;;) {
+      long h = head.get();
+      int index = index(h);
+      if (awaitElement(h, index) == null) {
+        return null;
+      }
+      // the swap decides the race with remove(), which replaces the element with REMOVED
+      Object element = buffer.getAndSet(index, null);
+      head.lazySet(h + 1);
+      if (element != REMOVED) {
+        return (E) element;
+      }
+    }
+  }
+
+  @Override public E take() throws InterruptedException {
+    return poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+  }
+
+  @Override public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+    E element = poll();
+    if (element != null) {
+      return element;
+    }
+    long nanosTimeout = unit.toNanos(timeout);
+    long deadline = System.nanoTime() + nanosTimeout;
+    for (int iteration = 0; ; iteration++) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      element = poll();
+      if (element != null) {
+        return element;
+      }
+      if (nanosTimeout != Long.MAX_VALUE) {
+        nanosTimeout = deadline - System.nanoTime();
+        if (nanosTimeout <= 0L) {
+          return null;
+        }
+      }
+      waitStrategy.idle(iteration, nanosTimeout, notEmpty);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override public E peek() {
+    for (;;) {
+      long h = head.get();
+      int index = index(h);
+      Object element = awaitElement(h, index);
+      if (element != REMOVED) {
+        return (E) element;
+      }
+      // only the consumer changes REMOVED
+      buffer.lazySet(index, null);
+      head.lazySet(h + 1);
+    }
+  }
+
+  @Override public int drainTo(Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override public int drainTo(Collection<? super E> c, int maxElements) {
+    java.util.Objects.requireNonNull(c, "collection");
+    Objects.validArgument(c != this, "unable to drain a queue to itself");
+    int n = 0;
+    E element;
+    while (n < maxElements && (element = poll()) != null) {
+      c.add(element);
+      n++;
+    }
+    return n;
+  }
+
+  @Override public int size() {
+    long h;
+    long t;
+    do {
+      h = head.get();
+      t = tail.get();
+    } while (h != head.get());
+    return (int) Math.min(t - h, capacity);
+  }
+
+  @Override public int remainingCapacity() {
+    return capacity - size();
+  }
+
+  /**
+   * Removes an element equal to the given one which hasn't been taken by the consumer yet,
+   * searching from the head of the queue.
+   *
+   * @param o element to be removed
+   * @return {@code true} if an element has been removed
+   */
+  @Override public boolean remove(Object o) {
+    if (o == null) {
+      return false;
+    }
+    for (long sequence = head.get(), t = tail.get(); sequence < t; sequence++) {
+      int index = index(sequence);
+      Object element = buffer.get(index);
+      if (element != null && element != REMOVED && o.equals(element)
+          && buffer.compareAndSet(index, element, REMOVED)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Not supported.
+   *
+   * @throws UnsupportedOperationException always
+   */
+  @Override public Iterator<E> iterator() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override public String toString() {
+    return "RingBufferBlockingQueue{capacity=" + capacity + ", size=" + size() + '}';
+  }
+
+  /**
+   * Returns the element of the head slot, waiting for a claimed slot to be published,
+   * or {@code null} if the queue is empty.
+   */
+  private Object awaitElement(long h, int index) {
+    Object element = buffer.get(index);
+    if (element == null) {
+      if (h == tail.get()) {
+        return null;
+      }
+      // the slot has been claimed but the element isn't visible yet
+      do {
+        element = buffer.get(index);
+      } while (element == null);
+    }
+    return element;
+  }
+
+  private int index(long sequence) {
+    return (int) sequence & mask;
+  }
+
+  private static void backOff() throws InterruptedException {
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    LockSupport.parkNanos(1L);
+  }
+}
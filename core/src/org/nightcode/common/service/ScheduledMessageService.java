@@ -0,0 +1,392 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.service;
+
+import org.nightcode.common.annotations.Beta;
+import org.nightcode.common.base.Objects;
+import org.nightcode.common.util.logging.Log;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A message service which processes messages after a delay, e.g. to expire timeouts,
+ * retries or TTLs. Messages are kept in a hashed hierarchical timing wheel ticking on
+ * the service thread: scheduling and cancellation take constant time and don't depend
+ * on the number of pending messages.
+ *
+ * <p>The lowest wheel has {@code wheelSize} buckets of one tick each, every next wheel
+ * has buckets as long as the whole previous wheel. Each tick the service thread moves
+ * messages from the due buckets of the higher wheels down to the lower ones and processes
+ * the messages of the current bucket of the lowest wheel. A message is never processed
+ * before its delay has elapsed and is processed at most one tick later, given that
+ * {@link #process(Object)} keeps up with the tick. Messages due in the same tick are
+ * processed in no particular order. While no message is pending the service thread
+ * doesn't tick, it waits until a message is scheduled.
+ *
+ * <p>Scheduled messages which haven't been processed by the time the service is
+ * stopped are dropped.
+ *
+ * @param <M> The message type accepted by this MessageService's <tt>submit</tt> method
+ */
+@Beta
+public abstract class ScheduledMessageService<M> extends AbstractThreadService implements MessageService<M> {
+
+  /**
+   * A handle of a scheduled message.
+   *
+   * @param <M> the message type
+   */
+  public static final class Timeout<M> {
+
+    private static final int PENDING   = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED   = 2;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<Timeout> STATE
+        = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+    private final ScheduledMessageService<M> service;
+    private final M message;
+    private final long deadline; // in nanoseconds since the service has been created
+
+    private volatile int state = PENDING;
+
+    // accessed by the service thread only
+    private Timeout<M> next;
+    private Timeout<M> prev;
+    private int level = -1; // -1 if the timeout isn't in a wheel
+    private int bucket;
+
+    Timeout(ScheduledMessageService<M> service, M message, long deadline) {
+      this.service = service;
+      this.message = message;
+      this.deadline = deadline;
+    }
+
+    /**
+     * Cancels processing of the message.
+     *
+     * @return {@code true} if the message has been cancelled, {@code false} if it has
+     *         already been processed or cancelled
+     */
+    public boolean cancel() {
+      if (!STATE.compareAndSet(this, PENDING, CANCELLED)) {
+        return false;
+      }
+      service.cancelled(this);
+      return true;
+    }
+
+    public boolean isCancelled() {
+      return state == CANCELLED;
+    }
+
+    public boolean isExpired() {
+      return state == EXPIRED;
+    }
+
+    public M message() {
+      return message;
+    }
+
+    @Override public String toString() {
+      return "Timeout{message=" + message + ", state=" + (state == PENDING ? "PENDING"
+          : state == CANCELLED ? "CANCELLED" : "EXPIRED") + '}';
+    }
+
+    boolean expire() {
+      return STATE.compareAndSet(this, PENDING, EXPIRED);
+    }
+  }
+
+  private static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+  private static final int DEFAULT_WHEEL_SIZE = 512;
+
+  private final long startTime = System.nanoTime();
+  private final long tickNanos;
+  private final int wheelBits;
+  private final int wheelMask;
+  private final Timeout<M>[][] wheels;
+
+  private final Queue<Timeout<M>> scheduledTimeouts = new ConcurrentLinkedQueue<>();
+  private final Queue<Timeout<M>> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pendingTimeouts = new AtomicInteger();
+
+  private long tick; // the next tick to process, accessed by the service thread only
+  private volatile Thread idleThread; // the service thread while it waits for scheduled messages
+
+  /**
+   * Creates a service with a tick of 1 millisecond and wheels of 512 buckets.
+   *
+   * @param serviceName the name of the service
+   */
+  protected ScheduledMessageService(String serviceName) {
+    this(serviceName, DEFAULT_TICK_NANOS, TimeUnit.NANOSECONDS, DEFAULT_WHEEL_SIZE);
+  }
+
+  /**
+   * Creates a service with the given tick and wheel size.
+   *
+   * @param serviceName the name of the service
+   * @param tickDuration the duration of a tick, i.e. the precision of delays
+   * @param unit the time unit of the tickDuration argument
+   * @param wheelSize the number of buckets of each wheel, a power of two
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  protected ScheduledMessageService(String serviceName, long tickDuration, TimeUnit unit, int wheelSize) {
+    super(serviceName);
+    Objects.validArgument(tickDuration > 0L, "tick duration <%s> must be greater than 0", tickDuration);
+    Objects.validArgument(wheelSize > 1 && Integer.bitCount(wheelSize) == 1
+        , "wheel size <%s> must be a power of two greater than 1", wheelSize);
+    tickNanos = unit.toNanos(tickDuration);
+    wheelBits = Integer.numberOfTrailingZeros(wheelSize);
+    wheelMask = wheelSize - 1;
+    // enough wheels to cover any non-negative tick
+    wheels = new Timeout[(Long.SIZE - 2) / wheelBits + 1][wheelSize];
+  }
+
+  @Override public int awaitProcessingCount() {
+    return pendingTimeouts.get();
+  }
+
+  /**
+   * Schedules the message to be processed on the next tick.
+   *
+   * @param message message
+   * @return {@code true} if the message was scheduled, {@code false} if the service isn't running
+   */
+  @Override public boolean submit(M message) {
+    return schedule(message, 0L, TimeUnit.NANOSECONDS) != null;
+  }
+
+  /**
+   * Schedules the message to be processed after the given delay.
+   *
+   * @param message message
+   * @param delay the delay, a non-positive delay means the next tick
+   * @param unit the time unit of the delay argument
+   * @return the handle which allows to cancel processing of the message, or {@code null}
+   *         if the service isn't running
+   */
+  public final Timeout<M> schedule(M message, long delay, TimeUnit unit) {
+    java.util.Objects.requireNonNull(message, "message");
+    java.util.Objects.requireNonNull(unit, "unit");
+    if (!isRunning()) {
+      Log.info().log(getClass(), "[{}]: message <{}> has been rejected", serviceName(), message);
+      return null;
+    }
+    long elapsed = System.nanoTime() - startTime;
+    long delayNanos = Math.max(unit.toNanos(delay), 0L);
+    long deadline = elapsed + delayNanos;
+    if (deadline < 0L) {
+      deadline = Long.MAX_VALUE; // overflow
+    }
+    Timeout<M> timeout = new Timeout<>(this, message, deadline);
+    pendingTimeouts.incrementAndGet();
+    scheduledTimeouts.offer(timeout);
+    Thread thread = idleThread;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+    }
+    return timeout;
+  }
+
+  /**
+   * Processes the message whose delay has elapsed. An exception thrown by this method
+   * is logged and doesn't affect other messages.
+   *
+   * @param message message
+   * @throws Exception if unable to process the message
+   */
+  protected abstract void process(M message) throws Exception;
+
+  @Override protected void service() throws Exception {
+    while (isOperates()) {
+      if (pendingTimeouts.get() == 0) {
+        awaitScheduled();
+        // nothing to process, skip the ticks which have passed
+        tick = Math.max(tick, ticks(System.nanoTime() - startTime));
+        continue;
+      }
+      long elapsed = System.nanoTime() - startTime;
+      long remaining = tick * tickNanos - elapsed;
+      if (remaining > 0L) {
+        TimeUnit.NANOSECONDS.sleep(remaining);
+        continue;
+      }
+      removeCancelled();
+      cascade();
+      transferScheduled();
+      expire((int) tick & wheelMask);
+      tick++;
+    }
+  }
+
+  @Override void threadsStopped() {
+    dropPending();
+  }
+
+  void cancelled(Timeout<M> timeout) {
+    pendingTimeouts.decrementAndGet();
+    cancelledTimeouts.offer(timeout);
+  }
+
+  /**
+   * Parks the service thread until a message is scheduled, the service is stopped
+   * or the thread is interrupted.
+   */
+  private void awaitScheduled() throws InterruptedException {
+    idleThread = Thread.currentThread();
+    try {
+      // rechecked after idleThread has been published, see schedule()
+      if (pendingTimeouts.get() == 0 && isOperates()) {
+        LockSupport.park(this);
+      }
+    } finally {
+      idleThread = null;
+    }
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+  }
+
+  private void cascade() {
+    for (int level = wheels.length - 1; level > 0; level--) {
+      int shift = level * wheelBits;
+      if ((tick & ((1L << shift) - 1)) != 0L) {
+        continue;
+      }
+      int bucket = (int) (tick >>> shift) & wheelMask;
+      Timeout<M> timeout = wheels[level][bucket];
+      wheels[level][bucket] = null;
+      while (timeout != null) {
+        Timeout<M> next = timeout.next;
+        timeout.next = null;
+        timeout.prev = null;
+        timeout.level = -1;
+        if (!timeout.isCancelled()) {
+          place(timeout);
+        }
+        timeout = next;
+      }
+    }
+  }
+
+  private void dropPending() {
+    int dropped = 0;
+    for (Timeout<M>[] wheel : wheels) {
+      for (int i = 0; i < wheel.length; i++) {
+        for (Timeout<M> timeout = wheel[i]; timeout != null; timeout = timeout.next) {
+          dropped++;
+        }
+        wheel[i] = null;
+      }
+    }
+    Timeout<M> timeout;
+    while ((timeout = scheduledTimeouts.poll()) != null) {
+      dropped++;
+    }
+    cancelledTimeouts.clear();
+    pendingTimeouts.set(0);
+    if (dropped > 0) {
+      Log.info().log(getClass(), "[{}]: <{}> scheduled messages have been dropped", serviceName(), dropped);
+    }
+  }
+
+  private void expire(int bucket) {
+    Timeout<M>[] wheel = wheels[0];
+    Timeout<M> timeout = wheel[bucket];
+    wheel[bucket] = null;
+    while (timeout != null) {
+      Timeout<M> next = timeout.next;
+      timeout.next = null;
+      timeout.prev = null;
+      timeout.level = -1;
+      if (timeout.expire()) {
+        pendingTimeouts.decrementAndGet();
+        try {
+          process(timeout.message);
+        } catch (Exception ex) {
+          Log.warn().log(getClass(), ex, "[{}]: unable to process message <{}>", serviceName(), timeout.message);
+        }
+      }
+      timeout = next;
+    }
+  }
+
+  /**
+   * Puts the timeout to the bucket of its deadline in the lowest wheel which covers it.
+   */
+  private void place(Timeout<M> timeout) {
+    long deadlineTick = Math.max(ticks(timeout.deadline), tick);
+    long ticks = deadlineTick - tick;
+    int level = 0;
+    while (level < wheels.length - 1 && (ticks >>> ((level + 1) * wheelBits)) != 0L) {
+      level++;
+    }
+    int bucket = (int) (deadlineTick >>> (level * wheelBits)) & wheelMask;
+    Timeout<M> head = wheels[level][bucket];
+    timeout.next = head;
+    if (head != null) {
+      head.prev = timeout;
+    }
+    timeout.level = level;
+    timeout.bucket = bucket;
+    wheels[level][bucket] = timeout;
+  }
+
+  private void removeCancelled() {
+    Timeout<M> timeout;
+    while ((timeout = cancelledTimeouts.poll()) != null) {
+      if (timeout.level < 0) {
+        continue; // not in a wheel yet, see transferScheduled()
+      }
+      if (timeout.prev != null) {
+        timeout.prev.next = timeout.next;
+      } else {
+        wheels[timeout.level][timeout.bucket] = timeout.next;
+      }
+      if (timeout.next != null) {
+        timeout.next.prev = timeout.prev;
+      }
+      timeout.next = null;
+      timeout.prev = null;
+      timeout.level = -1;
+    }
+  }
+
+  /**
+   * Returns the number of ticks the given time spans, rounded up.
+   */
+  private long ticks(long nanos) {
+    long ticks = nanos / tickNanos;
+    return (nanos % tickNanos == 0L) ? ticks : ticks + 1;
+  }
+
+  private void transferScheduled() {
+    Timeout<M> timeout;
+    while ((timeout = scheduledTimeouts.poll()) != null) {
+      if (!timeout.isCancelled()) {
+        place(timeout);
+      }
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A sequence counter padded on both sides so that it doesn't share a cache line
+ * (nor the adjacent line fetched along with it) with other frequently written data.
+ * The value is kept in the middle of an array since the JVM is free to reorder fields
+ * but not array elements.
+ */
+final class Sequence {
+
+  private static final int PADDING = 16; // 128 bytes
+
+  private final AtomicLongArray values = new AtomicLongArray(2 * PADDING + 1);
+
+  Sequence(long initialValue) {
+    values.lazySet(PADDING, initialValue);
+  }
+
+  long get() {
+    return values.get(PADDING);
+  }
+
+  void lazySet(long newValue) {
+    values.lazySet(PADDING, newValue);
+  }
+
+  boolean compareAndSet(long expectedValue, long newValue) {
+    return values.compareAndSet(PADDING, expectedValue, newValue);
+  }
+}
@@ -16,26 +16,133 @@ package org.nightcode.common.service;
 
 import org.nightcode.common.util.logging.Log;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Future;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Service manager.
+ *
+ * <p>Services may declare dependencies on each other, see {@link #addDependency(Service, Service)}.
+ * {@link #startAll(long, TimeUnit)} starts a service once its dependencies have started and
+ * {@link #stopAll(long, TimeUnit)} stops a service once its dependents have stopped, services
+ * which don't depend on each other are started and stopped in parallel.
  */
 public final class ServiceManager {
 
+  /**
+   * A start or a stop of all services in dependency order.
+   */
+  private final class Transition {
+    private final boolean start;
+    private final long timeout;
+    private final TimeUnit unit;
+    private final Map<String, Service> snapshot;
+    private final Map<String, Set<String>> preceding;
+    private final Map<String, CompletableFuture<Service.State>> futures = new HashMap<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool(THREAD_FACTORY);
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(THREAD_FACTORY);
+
+    Transition(boolean start, long timeout, TimeUnit unit) {
+      this.start = start;
+      this.timeout = timeout;
+      this.unit = Objects.requireNonNull(unit, "time unit");
+      synchronized (dependencies) {
+        snapshot = new HashMap<>(services);
+        // a service starts after its dependencies and stops after its dependents
+        preceding = new HashMap<>();
+        dependencies.forEach((name, names) -> names.forEach(dependency -> {
+          if (start) {
+            preceding.computeIfAbsent(name, k -> new HashSet<>()).add(dependency);
+          } else {
+            preceding.computeIfAbsent(dependency, k -> new HashSet<>()).add(name);
+          }
+        }));
+      }
+    }
+
+    CompletableFuture<Void> run() {
+      snapshot.keySet().forEach(this::future);
+      CompletableFuture<Void> all = CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]));
+      all.whenComplete((v, th) -> {
+        executor.shutdown();
+        timer.shutdownNow();
+      });
+      return all;
+    }
+
+    private CompletableFuture<Service.State> future(String name) {
+      CompletableFuture<Service.State> future = futures.get(name);
+      if (future != null) {
+        return future;
+      }
+      CompletableFuture<Void> ready = CompletableFuture.allOf(preceding.getOrDefault(name, Collections.emptySet())
+          .stream().filter(snapshot::containsKey).map(this::future).toArray(CompletableFuture<?>[]::new));
+      if (!start) {
+        // dependencies are stopped even if their dependents failed to stop
+        ready = ready.handle((v, th) -> null);
+      }
+      Service service = snapshot.get(name);
+      future = ready.thenComposeAsync(v -> withTimeout(name, start ? service.start() : service.stop()), executor);
+      future.whenComplete((state, th) -> {
+        if (th != null) {
+          Log.warn().log(ServiceManager.class, th, "[ServiceManager]: cannot {} service <{}>", start ? "start" : "stop", name);
+        }
+      });
+      futures.put(name, future);
+      return future;
+    }
+
+    private CompletableFuture<Service.State> withTimeout(String name, CompletableFuture<Service.State> future) {
+      CompletableFuture<Service.State> result = new CompletableFuture<>();
+      ScheduledFuture<?> task = timer.schedule(() -> result.completeExceptionally(new TimeoutException("service <"
+          + name + "> hasn't been " + (start ? "started" : "stopped") + " in " + timeout + ' ' + unit)), timeout, unit);
+      future.whenComplete((state, th) -> {
+        task.cancel(false);
+        if (th != null) {
+          result.completeExceptionally(th);
+        } else {
+          result.complete(state);
+        }
+      });
+      return result;
+    }
+  }
+
   private static final ServiceManager INSTANCE = new ServiceManager();
 
+  private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Override public Thread newThread(Runnable runnable) {
+      Thread thread = ThreadFactories.platform().newThread(runnable);
+      thread.setName("ServiceManager-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  };
+
   public static ServiceManager instance() {
     return INSTANCE;
   }
 
   private final ConcurrentMap<String, Service> services = new ConcurrentHashMap<>();
+  private final Map<String, Set<String>> dependencies = new HashMap<>(); // guarded by itself
 
   // NOTE: package private because of DI frameworks
   ServiceManager() {
@@ -57,40 +164,94 @@ public final class ServiceManager {
     if (serv == null) {
       Log.info().log(getClass(), "[ServiceManager]: service <{}> has never been added", service.serviceName());
     } else {
+      synchronized (dependencies) {
+        dependencies.remove(service.serviceName());
+        dependencies.values().forEach(names -> names.remove(service.serviceName()));
+      }
       Log.info().log(getClass(), "[ServiceManager]: shutdown hook for service <{}> has been removed", service.serviceName());
     }
   }
 
-  public void shutdownAll() {
-    Log.info().log(getClass(), "[ServiceManager]: external termination in progress..");
-    Map<String, Future<Service.State>> futures = new HashMap<>();
-    for (final Service service : services.values()) {
-        futures.put(service.serviceName(), service.stop());
+  /**
+   * Declares that the service depends on another one: the service is started after
+   * the dependency and stopped before it. Both services must have been added.
+   *
+   * @param service the dependent service
+   * @param dependency the service it depends on
+   * @throws IllegalStateException if a service hasn't been added or the dependency forms a cycle
+   */
+  public void addDependency(Service service, Service dependency) {
+    Objects.requireNonNull(service, "service");
+    Objects.requireNonNull(dependency, "dependency");
+    String name = service.serviceName();
+    String dependencyName = dependency.serviceName();
+    for (Service serv : new Service[] {service, dependency}) {
+      if (services.get(serv.serviceName()) != serv) {
+        throw new IllegalStateException("service <" + serv.serviceName() + "> has never been added");
+      }
     }
-    futures.forEach((key, value) -> {
-      try {
-        value.get();
-      } catch (Exception ex) {
-        Log.warn().log(getClass(), ex, "[ServiceManager]: cannot stop service <{}>", key);
+    synchronized (dependencies) {
+      if (name.equals(dependencyName) || dependsOn(dependencyName, name, new HashSet<>())) {
+        throw new IllegalStateException("dependency of service <" + name + "> on service <"
+            + dependencyName + "> forms a cycle");
       }
+      dependencies.computeIfAbsent(name, k -> new HashSet<>()).add(dependencyName);
+    }
+    Log.info().log(getClass(), "[ServiceManager]: service <{}> depends on service <{}>", name, dependencyName);
+  }
 
-    });
-    services.clear();
+  /**
+   * Starts all services in dependency order, services which don't depend on each other
+   * are started in parallel. A service isn't started if any of its dependencies failed to start.
+   *
+   * @param timeout the maximum time to wait for each service to start
+   * @param unit the time unit of the timeout argument
+   * @return a future which completes when all services have started, or exceptionally
+   *         if any service failed to start
+   */
+  public CompletableFuture<Void> startAll(long timeout, TimeUnit unit) {
+    return new Transition(true, timeout, unit).run();
+  }
+
+  /**
+   * Stops all services in reverse dependency order, services which don't depend on each other
+   * are stopped in parallel. A service is stopped even if any of its dependents failed to stop.
+   *
+   * @param timeout the maximum time to wait for each service to stop
+   * @param unit the time unit of the timeout argument
+   * @return a future which completes when all services have stopped, or exceptionally
+   *         if any service failed to stop
+   */
+  public CompletableFuture<Void> stopAll(long timeout, TimeUnit unit) {
+    return new Transition(false, timeout, unit).run();
+  }
+
+  public void shutdownAll() {
+    shutdownAll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
   }
 
   public void shutdownAll(long timeout, TimeUnit unit) {
     Log.info().log(getClass(), "[ServiceManager]: external termination in progress..");
-    Map<String, Future<Service.State>> futures = new HashMap<>();
-    for (final Service service : services.values()) {
-        futures.put(service.serviceName(), service.stop());
+    try {
+      stopAll(timeout, unit).join();
+    } catch (CompletionException ex) {
+      // failures have been logged for each service
     }
-    futures.forEach((key, value) -> {
-      try {
-        value.get(timeout, unit);
-      } catch (Exception ex) {
-        Log.warn().log(getClass(), ex, "[ServiceManager]: cannot stop service <{}>", key);
-      }
-    });
     services.clear();
+    synchronized (dependencies) {
+      dependencies.clear();
+    }
+  }
+
+  private boolean dependsOn(String name, String dependencyName, Set<String> visited) {
+    if (!visited.add(name)) {
+      return false;
+    }
+    for (String dependency : dependencies.getOrDefault(name, Collections.emptySet())) {
+      if (dependency.equals(dependencyName) || dependsOn(dependency, dependencyName, visited)) {
+        return true;
+      }
+    }
+    return false;
   }
 }
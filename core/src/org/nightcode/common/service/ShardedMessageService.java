@@ -0,0 +1,156 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.service;
+
+import org.nightcode.common.annotations.Beta;
+import org.nightcode.common.base.Objects;
+import org.nightcode.common.util.logging.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * A message service which distributes messages among shards by a key: messages with
+ * equal keys are always submitted to the same shard. Given single-threaded shards, such as
+ * {@link AbstractAsyncMessageService}s with one consumer, messages of different keys are
+ * processed in parallel while messages of the same key are processed in submission order.
+ *
+ * <p>The shards are started and stopped along with this service, which completes its futures
+ * once all shards have completed theirs. The shards shouldn't be started, stopped or added to
+ * {@link ServiceManager} on their own; adding this service is enough to stop all of them.
+ *
+ * @param <M> The message type accepted by this MessageService's <tt>submit</tt> method
+ */
+@Beta
+public final class ShardedMessageService<M> extends AbstractService implements MessageService<M> {
+
+  private final Function<? super M, ?> keyExtractor;
+  private final List<MessageService<M>> shards;
+
+  /**
+   * Creates a service with the given number of shards.
+   *
+   * @param serviceName the name of the service
+   * @param shards the number of shards
+   * @param keyExtractor the function which extracts a message's key
+   * @param shardFactory the function which creates a shard by its index
+   */
+  public ShardedMessageService(String serviceName, int shards, Function<? super M, ?> keyExtractor,
+      IntFunction<? extends MessageService<M>> shardFactory) {
+    this(serviceName, keyExtractor, createShards(shards, shardFactory));
+  }
+
+  /**
+   * Creates a service over the given shards.
+   *
+   * @param serviceName the name of the service
+   * @param keyExtractor the function which extracts a message's key
+   * @param shards the shards
+   */
+  public ShardedMessageService(String serviceName, Function<? super M, ?> keyExtractor,
+      List<? extends MessageService<M>> shards) {
+    super(serviceName);
+    java.util.Objects.requireNonNull(keyExtractor, "key extractor");
+    java.util.Objects.requireNonNull(shards, "shards");
+    Objects.validArgument(!shards.isEmpty(), "shards must not be empty");
+    for (MessageService<M> shard : shards) {
+      java.util.Objects.requireNonNull(shard, "shard");
+    }
+    this.keyExtractor = keyExtractor;
+    this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+  }
+
+  @Override public int awaitProcessingCount() {
+    int count = 0;
+    for (int i = 0, size = shards.size(); i < size; i++) {
+      count += shards.get(i).awaitProcessingCount();
+    }
+    return count;
+  }
+
+  @Override public boolean submit(M message) {
+    if (!isRunning()) {
+      return false;
+    }
+    return shards.get(shardIndex(message)).submit(message);
+  }
+
+  /**
+   * Returns the shards of this service.
+   */
+  public List<MessageService<M>> shards() {
+    return shards;
+  }
+
+  @Override protected void doStart() {
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[shards.size()];
+    for (int i = 0; i < futures.length; i++) {
+      futures[i] = shards.get(i).start();
+    }
+    CompletableFuture.allOf(futures).whenComplete((ignore, th) -> {
+      if (th == null) {
+        started();
+        return;
+      }
+      // stop the shards which have managed to start
+      for (MessageService<M> shard : shards) {
+        shard.stop();
+      }
+      serviceFailed(unwrap(th));
+    });
+  }
+
+  @Override protected void doStop() {
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[shards.size()];
+    for (int i = 0; i < futures.length; i++) {
+      futures[i] = shards.get(i).stop();
+    }
+    CompletableFuture.allOf(futures).whenComplete((ignore, th) -> {
+      if (th == null) {
+        stopped();
+      } else {
+        Log.warn().log(getClass(), th, "[{}]: unable to stop shards", serviceName());
+        serviceFailed(unwrap(th));
+      }
+    });
+  }
+
+  int shardIndex(M message) {
+    Object key = keyExtractor.apply(message);
+    int h = (key == null) ? 0 : key.hashCode();
+    h ^= h >>> 16;
+    return Math.floorMod(h, shards.size());
+  }
+
+  private static <M> List<MessageService<M>> createShards(int shards,
+      IntFunction<? extends MessageService<M>> shardFactory) {
+    Objects.validArgument(shards > 0, "number of shards <%s> must be greater than 0", shards);
+    java.util.Objects.requireNonNull(shardFactory, "shard factory");
+    List<MessageService<M>> list = new ArrayList<>(shards);
+    for (int i = 0; i < shards; i++) {
+      list.add(shardFactory.apply(i));
+    }
+    return list;
+  }
+
+  private static Throwable unwrap(Throwable th) {
+    return (th instanceof CompletionException && th.getCause() != null) ? th.getCause() : th;
+  }
+}
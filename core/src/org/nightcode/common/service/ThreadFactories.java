@@ -0,0 +1,55 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.service;
+
+import org.nightcode.common.annotations.Beta;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Factories of service threads, see {@link AbstractThreadService#setThreadFactory(ThreadFactory)}.
+ */
+@Beta
+public final class ThreadFactories {
+
+  private static final ThreadFactory PLATFORM = Thread::new;
+
+  /**
+   * Returns a factory which creates platform threads.
+   */
+  public static ThreadFactory platform() {
+    return PLATFORM;
+  }
+
+  /**
+   * Returns a factory which creates virtual threads if the runtime supports them
+   * (Java 21 or later), otherwise a factory which creates platform threads.
+   */
+  public static ThreadFactory virtual() {
+    ThreadFactory factory = VirtualThreads.factory();
+    return (factory != null) ? factory : PLATFORM;
+  }
+
+  /**
+   * Returns {@code true} if the runtime supports virtual threads.
+   */
+  public static boolean isVirtualSupported() {
+    return VirtualThreads.factory() != null;
+  }
+
+  private ThreadFactories() {
+    // do nothing
+  }
+}
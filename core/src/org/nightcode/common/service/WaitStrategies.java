@@ -0,0 +1,150 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.service;
+
+import org.nightcode.common.base.Objects;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Implementations of {@link WaitStrategy}.
+ */
+final class WaitStrategies {
+
+  static final WaitStrategy BUSY_SPIN = (iteration, nanosTimeout, condition) -> {
+    // do nothing
+  };
+
+  static final WaitStrategy YIELDING = (iteration, nanosTimeout, condition) -> Thread.yield();
+
+  /**
+   * Spins and then yields the processor.
+   */
+  static final class SpinThenYield implements WaitStrategy {
+
+    private final int spins;
+
+    SpinThenYield(int spins) {
+      Objects.validArgument(spins >= 0, "spins <%s> must not be negative", spins);
+      this.spins = spins;
+    }
+
+    @Override public void idle(int iteration, long nanosTimeout, BooleanSupplier condition) {
+      if (iteration >= spins) {
+        Thread.yield();
+      }
+    }
+  }
+
+  /**
+   * Spins, yields the processor and then parks the thread with an exponential backoff.
+   */
+  static final class BackoffParking implements WaitStrategy {
+
+    private static final int SPINS = 10;
+    private static final int YIELDS = SPINS + 5;
+
+    private final long minParkNanos;
+    private final long maxParkNanos;
+
+    BackoffParking(long minParkPeriod, long maxParkPeriod, TimeUnit timeUnit) {
+      Objects.validArgument(minParkPeriod > 0L, "min park period <%s> must be greater than 0", minParkPeriod);
+      Objects.validArgument(maxParkPeriod >= minParkPeriod
+          , "max park period <%s> must not be less than min park period <%s>", maxParkPeriod, minParkPeriod);
+      java.util.Objects.requireNonNull(timeUnit, "time unit");
+      this.minParkNanos = timeUnit.toNanos(minParkPeriod);
+      this.maxParkNanos = timeUnit.toNanos(maxParkPeriod);
+    }
+
+    @Override public void idle(int iteration, long nanosTimeout, BooleanSupplier condition) {
+      if (iteration < SPINS) {
+        return;
+      }
+      if (iteration < YIELDS) {
+        Thread.yield();
+        return;
+      }
+      int shift = iteration - YIELDS;
+      long parkNanos = (shift < Long.numberOfLeadingZeros(minParkNanos) - 1) ? minParkNanos << shift : maxParkNanos;
+      LockSupport.parkNanos(Math.min(Math.min(parkNanos, maxParkNanos), nanosTimeout));
+    }
+  }
+
+  /**
+   * Parks the thread for a fixed period.
+   */
+  static final class Parking implements WaitStrategy {
+
+    private final long parkNanos;
+
+    Parking(long parkPeriod, TimeUnit timeUnit) {
+      Objects.validArgument(parkPeriod > 0L, "park period <%s> must be greater than 0", parkPeriod);
+      java.util.Objects.requireNonNull(timeUnit, "time unit");
+      this.parkNanos = timeUnit.toNanos(parkPeriod);
+    }
+
+    @Override public void idle(int iteration, long nanosTimeout, BooleanSupplier condition) {
+      LockSupport.parkNanos(Math.min(parkNanos, nanosTimeout));
+    }
+  }
+
+  /**
+   * Blocks the thread on a condition variable until it is signalled.
+   */
+  static final class Blocking implements WaitStrategy {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition signal = lock.newCondition();
+    private volatile int waiters; // modified under the lock
+
+    @Override public void idle(int iteration, long nanosTimeout, BooleanSupplier condition)
+        throws InterruptedException {
+      lock.lock();
+      try {
+        // registered before the condition is re-checked, so a signalling thread either
+        // observes the waiter or the waiter observes the satisfied condition
+        waiters++;
+        try {
+          if (!condition.getAsBoolean()) {
+            signal.awaitNanos(nanosTimeout);
+          }
+        } finally {
+          waiters--;
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override public void signalAll() {
+      if (waiters > 0) {
+        lock.lock();
+        try {
+          signal.signalAll();
+        } finally {
+          lock.unlock();
+        }
+      }
+    }
+  }
+
+  private WaitStrategies() {
+    // do nothing
+  }
+}
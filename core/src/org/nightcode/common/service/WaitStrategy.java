@@ -0,0 +1,100 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.service;
+
+import org.nightcode.common.annotations.Beta;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A strategy of a thread waiting for a condition, e.g. a consumer waiting
+ * for messages to arrive, which trades CPU usage for wake up latency.
+ */
+@Beta
+public interface WaitStrategy {
+
+  /**
+   * Waits once for the condition to be satisfied. The caller re-checks the condition
+   * after each invocation and invokes this method again while the condition isn't satisfied.
+   *
+   * @param iteration the number of preceding unsuccessful waits for the condition
+   * @param nanosTimeout the maximum time to wait, in nanoseconds
+   * @param condition the awaited condition
+   * @throws InterruptedException if the current thread is interrupted while waiting
+   */
+  void idle(int iteration, long nanosTimeout, BooleanSupplier condition) throws InterruptedException;
+
+  /**
+   * Wakes up the threads waiting in {@link #idle(int, long, BooleanSupplier)},
+   * invoked after the awaited condition might have become satisfied.
+   */
+  default void signalAll() {
+    // do nothing
+  }
+
+  /**
+   * Returns a strategy which keeps the thread spinning, the lowest latency at the cost of a busy core.
+   */
+  static WaitStrategy busySpin() {
+    return WaitStrategies.BUSY_SPIN;
+  }
+
+  /**
+   * Returns a strategy which yields the processor between checks of the condition.
+   */
+  static WaitStrategy yielding() {
+    return WaitStrategies.YIELDING;
+  }
+
+  /**
+   * Returns a strategy which spins for the given number of iterations and then yields the processor.
+   *
+   * @param spins the number of iterations to spin
+   */
+  static WaitStrategy spinThenYield(int spins) {
+    return new WaitStrategies.SpinThenYield(spins);
+  }
+
+  /**
+   * Returns a strategy which spins, then yields the processor, and then parks the thread
+   * for a period which doubles from {@code minParkPeriod} up to {@code maxParkPeriod}.
+   *
+   * @param minParkPeriod the initial park period
+   * @param maxParkPeriod the maximum park period
+   * @param timeUnit the time unit of the park period arguments
+   */
+  static WaitStrategy backoffParking(long minParkPeriod, long maxParkPeriod, TimeUnit timeUnit) {
+    return new WaitStrategies.BackoffParking(minParkPeriod, maxParkPeriod, timeUnit);
+  }
+
+  /**
+   * Returns a strategy which parks the thread for the given period between checks of the condition.
+   *
+   * @param parkPeriod the park period
+   * @param timeUnit the time unit of the parkPeriod argument
+   */
+  static WaitStrategy parking(long parkPeriod, TimeUnit timeUnit) {
+    return new WaitStrategies.Parking(parkPeriod, timeUnit);
+  }
+
+  /**
+   * Returns a strategy which blocks the thread until it is signalled, the lowest CPU usage
+   * at the cost of a lock acquired by signalling threads when there are waiting ones.
+   */
+  static WaitStrategy blocking() {
+    return new WaitStrategies.Blocking();
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.logging;
+
+import org.nightcode.common.annotations.Beta;
+import org.nightcode.common.service.WaitStrategy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * LoggingHandler which writes records to a stream on a background service thread, so that
+ * logging threads don't wait for I/O. Records have the same layout as the ones of
+ * {@link PrintStreamLoggingHandler}.
+ *
+ * <p>A logging thread claims a preallocated slot of a ring buffer and copies the timestamp,
+ * the thread, the class, the formatted message and the throwable into it without allocating
+ * memory besides the {@code toString()} of the arguments. The service thread encodes published
+ * records into a reusable byte buffer and writes them to the stream in batches, flushing the
+ * stream once the ring buffer is empty. A logging thread which finds the ring buffer full waits
+ * until the service thread frees a slot.
+ *
+ * <p>Records logged while the service isn't running are written as described by
+ * {@link RingBufferLoggingHandler}.
+ */
+@Beta
+public final class AsyncLoggingHandler extends RingBufferLoggingHandler {
+
+  private final OutputStream out;
+
+  /**
+   * Creates a handler with a ring buffer of 8192 records.
+   *
+   * @param serviceName the name of the service
+   * @param out the stream to write records to
+   */
+  public AsyncLoggingHandler(String serviceName, OutputStream out) {
+    this(serviceName, out, DEFAULT_CAPACITY, defaultWaitStrategy());
+  }
+
+  /**
+   * Creates a handler with the given capacity and service thread's wait strategy.
+   *
+   * @param serviceName the name of the service
+   * @param out the stream to write records to
+   * @param capacity the number of records in the ring buffer, rounded up to the next power of two
+   * @param waitStrategy the strategy of the service thread waiting for records
+   */
+  public AsyncLoggingHandler(String serviceName, OutputStream out, int capacity, WaitStrategy waitStrategy) {
+    super(serviceName, capacity, waitStrategy);
+    this.out = java.util.Objects.requireNonNull(out, "output stream");
+  }
+
+  @Override void flushOutput() throws IOException {
+    out.flush();
+  }
+
+  @Override void write(byte[] bytes, int offset, int length) throws IOException {
+    out.write(bytes, offset, length);
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.logging;
+
+import org.nightcode.common.annotations.Beta;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Renders segments written by {@link BinaryLogWriter} as text, a line per record:
+ * <pre>
+ * 2024-01-31T12:00:00.123456789 INFO [main/Service]: message
+ * </pre>
+ * followed by the stack trace of the record if any. Timestamps are rendered in the default
+ * time zone. A segment which is still being written is rendered up to its last complete record.
+ *
+ * <p>Usage: {@code java org.nightcode.common.util.logging.BinaryLogDecoder <segment>...}
+ */
+@Beta
+public final class BinaryLogDecoder {
+
+  private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSSSSSSS");
+
+  /**
+   * Renders the given segments to the standard output in order.
+   *
+   * @param args the segment files
+   * @throws IOException if an I/O error occurs or a file isn't a segment
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.err.println("usage: BinaryLogDecoder <segment>...");
+      return;
+    }
+    Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+    for (String arg : args) {
+      decode(Paths.get(arg), out);
+    }
+    out.flush();
+  }
+
+  /**
+   * Renders the records of the segment.
+   *
+   * @param segment the segment file
+   * @param out the destination of the text
+   * @throws IOException if an I/O error occurs or the file isn't a segment
+   */
+  public static void decode(Path segment, Appendable out) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+    if (buffer.remaining() < Integer.BYTES + 1 || buffer.getInt() != BinaryLogWriter.MAGIC) {
+      throw new IOException("file <" + segment + "> isn't a binary log segment");
+    }
+    byte version = buffer.get();
+    if (version != BinaryLogWriter.VERSION) {
+      throw new IOException("unsupported version <" + version + "> of binary log segment <" + segment + ">");
+    }
+
+    Map<Integer, String> templates = new HashMap<>();
+    Map<Integer, String> classes = new HashMap<>();
+    Map<Long, String> threads = new HashMap<>();
+    StringBuilder sb = new StringBuilder();
+    try {
+      while (buffer.hasRemaining()) {
+        int position = buffer.position();
+        byte type = buffer.get();
+        switch (type) {
+          case BinaryLogWriter.END:
+            return;
+          case BinaryLogWriter.TEMPLATE:
+            templates.put(buffer.getInt(), getString(buffer));
+            break;
+          case BinaryLogWriter.CLASS:
+            classes.put(buffer.getInt(), simpleName(getString(buffer)));
+            break;
+          case BinaryLogWriter.THREAD:
+            threads.put(buffer.getLong(), getString(buffer));
+            break;
+          case BinaryLogWriter.RECORD:
+            sb.setLength(0);
+            appendRecord(sb, buffer, templates, classes, threads);
+            out.append(sb);
+            break;
+          default:
+            throw new IOException("unknown entry type <" + type + "> at <" + position + "> of segment <" + segment + ">");
+        }
+      }
+    } catch (BufferUnderflowException ex) {
+      throw new IOException("binary log segment <" + segment + "> is corrupted", ex);
+    }
+  }
+
+  private static void appendRecord(StringBuilder sb, ByteBuffer buffer, Map<Integer, String> templates,
+      Map<Integer, String> classes, Map<Long, String> threads) throws IOException {
+    int level = buffer.get();
+    long timestamp = buffer.getLong();
+    long threadId = buffer.getLong();
+    int classId = buffer.getInt();
+    int templateId = buffer.getInt();
+    Object[] args = new Object[buffer.get()];
+    for (int i = 0; i < args.length; i++) {
+      args[i] = getArgument(buffer);
+    }
+    String stackTrace = buffer.get() != 0 ? getString(buffer) : null;
+
+    Instant instant = Instant.ofEpochSecond(Math.floorDiv(timestamp, 1_000_000_000L), Math.floorMod(timestamp, 1_000_000_000L));
+    TIMESTAMP_FORMATTER.formatTo(LocalDateTime.ofInstant(instant, ZoneId.systemDefault()), sb);
+    String levelName = level >= 0 && level < BinaryLogWriter.LEVELS.length ? BinaryLogWriter.LEVELS[level] : "#" + level;
+    sb.append(' ').append(levelName)
+        .append(" [").append(threads.getOrDefault(threadId, "#" + threadId))
+        .append('/').append(classes.getOrDefault(classId, "#" + classId))
+        .append("]: ");
+    PlaceholderFormatter.appendTo(sb, templates.getOrDefault(templateId, "#" + templateId), args);
+    sb.append('\n');
+    if (stackTrace != null) {
+      sb.append(stackTrace);
+    }
+  }
+
+  private static Object getArgument(ByteBuffer buffer) throws IOException {
+    byte type = buffer.get();
+    switch (type) {
+      case BinaryLogWriter.NULL:
+        return null;
+      case BinaryLogWriter.BOOLEAN:
+        return buffer.get() != 0;
+      case BinaryLogWriter.CHAR:
+        return buffer.getChar();
+      case BinaryLogWriter.INT:
+        return buffer.getInt();
+      case BinaryLogWriter.LONG:
+        return buffer.getLong();
+      case BinaryLogWriter.FLOAT:
+        return buffer.getFloat();
+      case BinaryLogWriter.DOUBLE:
+        return buffer.getDouble();
+      case BinaryLogWriter.STRING:
+        return getString(buffer);
+      default:
+        throw new IOException("unknown argument type <" + type + "> at <" + (buffer.position() - 1) + ">");
+    }
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+    ((Buffer) buffer).position(buffer.position() + length);
+    return s;
+  }
+
+  private static String simpleName(String className) {
+    return className.substring(Math.max(className.lastIndexOf('.'), className.lastIndexOf('$')) + 1);
+  }
+
+  private BinaryLogDecoder() {
+    // do nothing
+  }
+}
@@ -0,0 +1,423 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.logging;
+
+import org.nightcode.common.annotations.Beta;
+import org.nightcode.common.base.Objects;
+import org.nightcode.common.io.MappedFiles;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Writes log records in a compact binary form to memory-mapped segment files, the records
+ * are rendered to text offline by {@link BinaryLogDecoder}.
+ *
+ * <p>A record keeps the message template and the arguments instead of the formatted message:
+ * templates, classes and threads are written once per segment as definitions and referred by id,
+ * primitive wrappers are written raw and other arguments as their {@code toString()} value.
+ * Strings are truncated to 16 kilobytes and stack traces to 64 kilobytes, a record with more than
+ * 16 arguments or a template beyond the first 65536 ones of a segment is written formatted.
+ * Template ids are assigned per segment.
+ * Timestamps have nanosecond resolution relative to the start of the JVM clock.
+ *
+ * <p>Segments are named {@code <prefix>-<index>.blog} and rolled once less than 512 kilobytes
+ * are left in them, every segment is decodable on its own. The writer never appends to segments
+ * written before it has been created. If a segment can't be rolled the record is dropped and
+ * the next segment is opened by the next record. Records are appended by the logging thread under the
+ * lock of the writer, arguments and stack traces are rendered before the lock is taken so that
+ * a {@code toString()} which logs appends its record ahead of the record being rendered.
+ * {@link #trace()} and the like return handlers of the writer for each level:
+ * <pre>
+ * BinaryLogWriter writer = new BinaryLogWriter(directory, "app");
+ * Log.setLoggingHandler(writer.trace(), writer.debug(), writer.info(), writer.warn(), writer.error(), writer.fatal());
+ * </pre>
+ */
+@Beta
+public final class BinaryLogWriter implements Closeable {
+
+  static final int MAGIC = 0x424C4F47; // "BLOG"
+  static final byte VERSION = 1;
+  static final String SUFFIX = ".blog";
+
+  // entry types, the type is put after the entry so that a partially written entry reads as END
+  static final byte END = 0;
+  static final byte TEMPLATE = 1;
+  static final byte CLASS = 2;
+  static final byte THREAD = 3;
+  static final byte RECORD = 4;
+
+  // argument types
+  static final byte NULL = 0;
+  static final byte BOOLEAN = 1;
+  static final byte CHAR = 2;
+  static final byte INT = 3;
+  static final byte LONG = 4;
+  static final byte FLOAT = 5;
+  static final byte DOUBLE = 6;
+  static final byte STRING = 7;
+
+  static final String[] LEVELS = {"TRACE", "DEBUG", "INFO", "WARN", "ERROR", "FATAL"};
+
+  static final int MAX_ARGUMENTS = 16;
+  static final int MAX_STRING_BYTES = 16 * 1024;
+  static final int MAX_STACK_TRACE_BYTES = 64 * 1024;
+
+  private static final int MAX_ENTRIES_SIZE = 512 * 1024; // of a record with its definitions
+  private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+  private static final int MIN_SEGMENT_SIZE = 1024 * 1024;
+  private static final int MAX_SEGMENT_SIZE = 1 << 30;
+  private static final int MAX_TEMPLATES = 65536;
+  private static final String FORMATTED = "{}";
+
+  private static final long BASE_EPOCH_NANOS = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+  private static final long BASE_NANO_TIME = System.nanoTime();
+
+  /**
+   * An id and the segment the id has been defined in last.
+   */
+  private static final class Definition {
+    final int id;
+    long segment = -1L;
+
+    Definition(int id) {
+      this.id = id;
+    }
+  }
+
+  private final Path directory;
+  private final String prefix;
+  private final Pattern segmentName;
+  private final int segmentSize;
+  private final BinaryLoggingHandler[] handlers = new BinaryLoggingHandler[LEVELS.length];
+
+  // guarded by this
+  private final Map<String, Definition> templates = new HashMap<>();
+  private final ClassValue<Definition> classes = new ClassValue<Definition>() {
+    @Override protected Definition computeValue(Class<?> type) {
+      return new Definition(nextClassId++);
+    }
+  };
+  private final ThreadLocal<long[]> threads = ThreadLocal.withInitial(() -> new long[] {-1L});
+  private int nextClassId;
+  private MappedByteBuffer mapping; // null if no segment is open, e.g. the next one has failed to open
+  private boolean closed;
+  private Path segment;
+  private long segmentIndex;
+
+  /**
+   * Creates a writer with segments of 64 megabytes.
+   *
+   * @param directory the directory of the segments
+   * @param prefix the prefix of the segment file names
+   * @throws IOException if unable to create the directory or the first segment
+   */
+  public BinaryLogWriter(Path directory, String prefix) throws IOException {
+    this(directory, prefix, DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * Creates a writer with the given segment size.
+   *
+   * @param directory the directory of the segments
+   * @param prefix the prefix of the segment file names
+   * @param segmentSize the size of a segment
+   * @throws IOException if unable to create the directory or the first segment
+   */
+  public BinaryLogWriter(Path directory, String prefix, int segmentSize) throws IOException {
+    java.util.Objects.requireNonNull(directory, "directory");
+    java.util.Objects.requireNonNull(prefix, "prefix");
+    Objects.validArgument(!prefix.isEmpty() && prefix.indexOf('/') < 0 && prefix.indexOf('\\') < 0
+        , "prefix <%s> must be a non-empty file name", prefix);
+    Objects.validArgument(segmentSize >= MIN_SEGMENT_SIZE && segmentSize <= MAX_SEGMENT_SIZE
+        , "segment size <%s> must be in range [%s, %s]", segmentSize, MIN_SEGMENT_SIZE, MAX_SEGMENT_SIZE);
+    this.directory = Files.createDirectories(directory);
+    this.prefix = prefix;
+    this.segmentName = Pattern.compile(Pattern.quote(prefix) + "-(\\d+)" + Pattern.quote(SUFFIX));
+    this.segmentSize = segmentSize;
+    for (int i = 0; i < handlers.length; i++) {
+      handlers[i] = new BinaryLoggingHandler(this, i);
+    }
+    segmentIndex = lastIndex();
+    openSegment();
+  }
+
+  public BinaryLoggingHandler trace() {
+    return handlers[0];
+  }
+
+  public BinaryLoggingHandler debug() {
+    return handlers[1];
+  }
+
+  public BinaryLoggingHandler info() {
+    return handlers[2];
+  }
+
+  public BinaryLoggingHandler warn() {
+    return handlers[3];
+  }
+
+  public BinaryLoggingHandler error() {
+    return handlers[4];
+  }
+
+  public BinaryLoggingHandler fatal() {
+    return handlers[5];
+  }
+
+  /**
+   * Truncates the current segment to its records, records appended afterwards are discarded.
+   *
+   * @throws IOException if an I/O error occurs
+   */
+  @Override public synchronized void close() throws IOException {
+    closed = true;
+    if (mapping != null) {
+      closeSegment();
+    }
+  }
+
+  /**
+   * Appends a record.
+   *
+   * @param level the index of the level in {@link #LEVELS}
+   * @param clazz the class of the logger
+   * @param thrown the throwable of the record
+   * @param template the message template
+   * @param args the arguments of the template, {@code null} if the template isn't formatted
+   */
+  void append(int level, Class<?> clazz, @Nullable Throwable thrown, @Nullable String template,
+      @Nullable Object[] args) {
+    Object[] rendered = args;
+    if (args != null) {
+      for (int i = 0; i < args.length; i++) {
+        if (args[i] != null && !(args[i] instanceof String) && !isRaw(args[i])) {
+          if (rendered == args) {
+            rendered = args.clone();
+          }
+          rendered[i] = String.valueOf(args[i].toString());
+        }
+      }
+    }
+    String stackTrace = null;
+    if (thrown != null) {
+      StringWriter sw = new StringWriter();
+      thrown.printStackTrace(new PrintWriter(sw));
+      stackTrace = sw.toString();
+    }
+    write(level, clazz, stackTrace, template, rendered);
+  }
+
+  /**
+   * Writes a record whose arguments are either {@code null}, strings or primitive wrappers.
+   */
+  private synchronized void write(int level, Class<?> clazz, @Nullable String stackTrace, @Nullable String template,
+      @Nullable Object[] args) {
+    if (closed) {
+      return;
+    }
+    long timestamp = BASE_EPOCH_NANOS + (System.nanoTime() - BASE_NANO_TIME);
+    try {
+      if (mapping == null || mapping.remaining() < MAX_ENTRIES_SIZE) {
+        if (mapping != null) {
+          closeSegment();
+        }
+        openSegment();
+      }
+      if (template == null) {
+        template = "null";
+      }
+      int count = args != null ? args.length : 0;
+      Definition definition = templates.get(template);
+      if (definition == null && templates.size() >= MAX_TEMPLATES || count > MAX_ARGUMENTS) {
+        args = new Object[] {PlaceholderFormatter.format(template, args)};
+        count = 1;
+        template = FORMATTED;
+        definition = templates.get(template);
+      }
+      if (definition == null) {
+        definition = new Definition(templates.size());
+        templates.put(template, definition);
+      }
+      if (definition.segment != segmentIndex) {
+        putDefinition(TEMPLATE, definition.id, template);
+        definition.segment = segmentIndex;
+      }
+      Definition classDefinition = classes.get(clazz);
+      if (classDefinition.segment != segmentIndex) {
+        putDefinition(CLASS, classDefinition.id, clazz.getName());
+        classDefinition.segment = segmentIndex;
+      }
+      Thread thread = Thread.currentThread();
+      long[] threadSegment = threads.get();
+      if (threadSegment[0] != segmentIndex) {
+        putDefinition(THREAD, thread.getId(), thread.getName());
+        threadSegment[0] = segmentIndex;
+      }
+
+      int start = mapping.position();
+      ((Buffer) mapping).position(start + 1);
+      mapping.put((byte) level).putLong(timestamp).putLong(thread.getId()).putInt(classDefinition.id)
+          .putInt(definition.id).put((byte) count);
+      for (int i = 0; i < count; i++) {
+        putArgument(args[i]);
+      }
+      if (stackTrace != null) {
+        mapping.put((byte) 1);
+        putString(stackTrace, MAX_STACK_TRACE_BYTES);
+      } else {
+        mapping.put((byte) 0);
+      }
+      mapping.put(start, RECORD);
+    } catch (IOException ex) {
+      ex.printStackTrace();
+    }
+  }
+
+  private void putDefinition(byte type, long id, String value) {
+    int start = mapping.position();
+    ((Buffer) mapping).position(start + 1);
+    if (type == THREAD) {
+      mapping.putLong(id);
+    } else {
+      mapping.putInt((int) id);
+    }
+    putString(value, MAX_STRING_BYTES);
+    mapping.put(start, type);
+  }
+
+  private void putArgument(@Nullable Object arg) {
+    if (arg == null) {
+      mapping.put(NULL);
+    } else if (arg instanceof Integer || arg instanceof Short || arg instanceof Byte) {
+      mapping.put(INT).putInt(((Number) arg).intValue());
+    } else if (arg instanceof Long) {
+      mapping.put(LONG).putLong((Long) arg);
+    } else if (arg instanceof Double) {
+      mapping.put(DOUBLE).putDouble((Double) arg);
+    } else if (arg instanceof Float) {
+      mapping.put(FLOAT).putFloat((Float) arg);
+    } else if (arg instanceof Boolean) {
+      mapping.put(BOOLEAN).put((byte) ((Boolean) arg ? 1 : 0));
+    } else if (arg instanceof Character) {
+      mapping.put(CHAR).putChar((Character) arg);
+    } else {
+      mapping.put(STRING);
+      putString((String) arg, MAX_STRING_BYTES);
+    }
+  }
+
+  private static boolean isRaw(Object arg) {
+    return arg instanceof Integer || arg instanceof Long || arg instanceof Double || arg instanceof Float
+        || arg instanceof Boolean || arg instanceof Character || arg instanceof Short || arg instanceof Byte;
+  }
+
+  /**
+   * Puts the length and the UTF-8 bytes of the string, truncated to whole characters within the limit.
+   */
+  private void putString(String s, int limit) {
+    int start = mapping.position();
+    int position = start + Integer.BYTES;
+    int end = position + limit;
+    for (int i = 0, n = s.length(); i < n; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        if (position + 1 > end) {
+          break;
+        }
+        mapping.put(position++, (byte) c);
+      } else if (c < 0x800) {
+        if (position + 2 > end) {
+          break;
+        }
+        mapping.put(position++, (byte) (0xC0 | (c >> 6)));
+        mapping.put(position++, (byte) (0x80 | (c & 0x3F)));
+      } else if (!Character.isSurrogate(c)) {
+        if (position + 3 > end) {
+          break;
+        }
+        mapping.put(position++, (byte) (0xE0 | (c >> 12)));
+        mapping.put(position++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+        mapping.put(position++, (byte) (0x80 | (c & 0x3F)));
+      } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+        if (position + 4 > end) {
+          break;
+        }
+        int cp = Character.toCodePoint(c, s.charAt(++i));
+        mapping.put(position++, (byte) (0xF0 | (cp >> 18)));
+        mapping.put(position++, (byte) (0x80 | ((cp >> 12) & 0x3F)));
+        mapping.put(position++, (byte) (0x80 | ((cp >> 6) & 0x3F)));
+        mapping.put(position++, (byte) (0x80 | (cp & 0x3F)));
+      } else {
+        if (position + 1 > end) {
+          break;
+        }
+        mapping.put(position++, (byte) '?'); // unpaired surrogate
+      }
+    }
+    mapping.putInt(start, position - start - Integer.BYTES);
+    ((Buffer) mapping).position(position);
+  }
+
+  private void closeSegment() throws IOException {
+    MappedByteBuffer closed = mapping;
+    long size = closed.position();
+    mapping = null;
+    MappedFiles.unmap(closed);
+    MappedFiles.truncate(segment, size);
+  }
+
+  private long lastIndex() throws IOException {
+    long last = -1L;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        Matcher matcher = segmentName.matcher(file.getFileName().toString());
+        if (matcher.matches()) {
+          last = Math.max(last, Long.parseLong(matcher.group(1)));
+        }
+      }
+    }
+    return last;
+  }
+
+  /**
+   * Opens the segment following the last one, the index is advanced only once the segment is mapped.
+   */
+  private void openSegment() throws IOException {
+    Path path = directory.resolve(String.format("%s-%08d%s", prefix, segmentIndex + 1, SUFFIX));
+    MappedByteBuffer buffer = MappedFiles.map(path, 0L, segmentSize);
+    buffer.putInt(MAGIC).put(VERSION);
+    segmentIndex++;
+    segment = path;
+    mapping = buffer;
+    // ids of templates are assigned per segment, so the limit of templates applies to each segment
+    templates.clear();
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.logging;
+
+import org.nightcode.common.annotations.Beta;
+
+import java.util.function.Supplier;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * LoggingHandler which appends records of a level to a {@link BinaryLogWriter}. A supplied
+ * message is evaluated by the logging thread and written as a formatted message.
+ */
+@Beta
+public final class BinaryLoggingHandler implements LoggingHandler {
+
+  private final BinaryLogWriter writer;
+  private final int level;
+
+  BinaryLoggingHandler(BinaryLogWriter writer, int level) {
+    this.writer = writer;
+    this.level = level;
+  }
+
+  @Override public boolean isEnabled(@NotNull Class<?> clazz) {
+    return true;
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, String message) {
+    writer.append(level, clazz, null, message, null);
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, String message, Object... params) {
+    writer.append(level, clazz, null, message, params);
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, String message, @Nullable Throwable thrown) {
+    writer.append(level, clazz, thrown, message, null);
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, Supplier<String> supplier, @Nullable Throwable thrown) {
+    writer.append(level, clazz, thrown, "{}", new Object[] {supplier.get()});
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, Throwable thrown, String message, Object... params) {
+    writer.append(level, clazz, thrown, message, params);
+  }
+}
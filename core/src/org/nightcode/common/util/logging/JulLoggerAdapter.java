@@ -22,6 +22,16 @@ import org.jetbrains.annotations.Nullable;
 
 class JulLoggerAdapter implements Logger {
 
+  /**
+   * Formats {@code {}} placeholders, templates without them are formatted by {@link String#format}.
+   */
+  private static String format(String message, Object... args) {
+    if (message != null && PlaceholderFormatter.hasPlaceholders(message)) {
+      return PlaceholderFormatter.format(message, args);
+    }
+    return String.format(message, args);
+  }
+
   private static Supplier<String> toStringSupplier(Supplier<?> target) {
     return () -> {
       Object obj = target.get();
@@ -56,7 +66,7 @@ class JulLoggerAdapter implements Logger {
 
   @Override public void log(LogLevel level, Throwable thrown, String message, Object... args) {
     Level l = toJulLevel(level);
-    log(l, () -> String.format(message, args), thrown);
+    log(l, () -> format(message, args), thrown);
   }
 
   @Override public void log(LogLevel level, Supplier<?> supplier) {
@@ -82,7 +92,7 @@ class JulLoggerAdapter implements Logger {
   }
 
   @Override public void trace(Throwable thrown, String message, Object... args) {
-    log(Level.FINEST, () -> String.format(message, args), thrown);
+    log(Level.FINEST, () -> format(message, args), thrown);
   }
 
   @Override public void trace(Supplier<?> supplier) {
@@ -106,7 +116,7 @@ class JulLoggerAdapter implements Logger {
   }
 
   @Override public void debug(Throwable thrown, String message, Object... args) {
-    log(Level.FINE, () -> String.format(message, args), thrown);
+    log(Level.FINE, () -> format(message, args), thrown);
   }
 
   @Override public void debug(Supplier<?> supplier) {
@@ -130,7 +140,7 @@ class JulLoggerAdapter implements Logger {
   }
 
   @Override public void info(Throwable thrown, String message, Object... args) {
-    log(Level.INFO, () -> String.format(message, args), thrown);
+    log(Level.INFO, () -> format(message, args), thrown);
   }
 
   @Override public void info(Supplier<?> supplier) {
@@ -182,7 +192,7 @@ class JulLoggerAdapter implements Logger {
   }
 
   @Override public void config(Throwable thrown, String message, Object... args) {
-    log(Level.CONFIG, () -> String.format(message, args), thrown);
+    log(Level.CONFIG, () -> format(message, args), thrown);
   }
 
   @Override public void config(Supplier<?> supplier) {
@@ -206,7 +216,7 @@ class JulLoggerAdapter implements Logger {
   }
 
   @Override public void warn(Throwable thrown, String message, Object... args) {
-    log(Level.WARNING, () -> String.format(message, args), thrown);
+    log(Level.WARNING, () -> format(message, args), thrown);
   }
 
   @Override public void warn(Supplier<?> supplier) {
@@ -230,7 +240,7 @@ class JulLoggerAdapter implements Logger {
   }
 
   @Override public void error(Throwable thrown, String message, Object... args) {
-    log(Level.WARNING, () -> String.format(message, args), thrown);
+    log(Level.WARNING, () -> format(message, args), thrown);
   }
 
   @Override public void error(Supplier<?> supplier) {
@@ -254,7 +264,7 @@ class JulLoggerAdapter implements Logger {
   }
 
   @Override public void fatal(Throwable thrown, String message, Object... args) {
-    log(Level.SEVERE, () -> String.format(message, args), thrown);
+    log(Level.SEVERE, () -> format(message, args), thrown);
   }
 
   @Override public void fatal(Supplier<?> supplier) {
@@ -270,7 +280,7 @@ class JulLoggerAdapter implements Logger {
   }
 
   private void log(Level level, String message, Object... args) {
-    logRecord(level, null, () -> String.format(message, args));
+    logRecord(level, null, () -> format(message, args));
   }
 
   private void log(Level level, String message, Throwable thrown) {
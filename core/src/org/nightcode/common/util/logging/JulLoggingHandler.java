@@ -21,8 +21,6 @@ import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import static java.lang.String.format;
-
 /**
  * JUL implementation of LoggingHandler.
  */
@@ -64,7 +62,7 @@ public enum JulLoggingHandler implements LoggingHandler {
   }
 
   @Override public void log(@NotNull Class<?> clazz, String message, Object... params) {
-    getLogger(clazz).log(level, message.replaceAll("\\{}", "%s"), params);
+    getLogger(clazz).log(level, () -> PlaceholderFormatter.format(message, params));
   }
 
   @Override public void log(@NotNull Class<?> clazz, Supplier<String> supplier, @Nullable Throwable thrown) {
@@ -72,6 +70,6 @@ public enum JulLoggingHandler implements LoggingHandler {
   }
 
   @Override public void log(@NotNull Class<?> clazz, Throwable thrown, String message, Object... params) {
-    getLogger(clazz).log(level, thrown, () -> format(message.replaceAll("\\{}", "%s"), params));
+    getLogger(clazz).log(level, thrown, () -> PlaceholderFormatter.format(message, params));
   }
 }
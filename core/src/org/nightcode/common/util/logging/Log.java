@@ -18,6 +18,10 @@ import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Log helper class.
+ *
+ * <p>A level is disabled by setting {@link NoopLoggingHandler#INSTANCE} as its handler.
+ * Calls with up to 4 arguments don't allocate an array of arguments for a disabled level;
+ * callers which compute arguments may check {@code isDebugEnabled()} and the like first.
  */
 public enum Log {
   ;
@@ -29,6 +33,14 @@ public enum Log {
   private static final AtomicReference<LoggingHandler> ERROR = new AtomicReference<>(PrintStreamLoggingHandler.ERR);
   private static final AtomicReference<LoggingHandler> FATAL = new AtomicReference<>(PrintStreamLoggingHandler.ERR);
 
+  // levels handled by NoopLoggingHandler are disabled
+  private static volatile boolean traceEnabled = true;
+  private static volatile boolean debugEnabled = true;
+  private static volatile boolean infoEnabled = true;
+  private static volatile boolean warnEnabled = true;
+  private static volatile boolean errorEnabled = true;
+  private static volatile boolean fatalEnabled = true;
+
   public static LoggingHandler debug() {
     return DEBUG.get();
   }
@@ -53,6 +65,30 @@ public enum Log {
     return WARN.get();
   }
 
+  public static boolean isTraceEnabled() {
+    return traceEnabled;
+  }
+
+  public static boolean isDebugEnabled() {
+    return debugEnabled;
+  }
+
+  public static boolean isInfoEnabled() {
+    return infoEnabled;
+  }
+
+  public static boolean isWarnEnabled() {
+    return warnEnabled;
+  }
+
+  public static boolean isErrorEnabled() {
+    return errorEnabled;
+  }
+
+  public static boolean isFatalEnabled() {
+    return fatalEnabled;
+  }
+
   public static void setLoggingHandler(LoggingHandler trace,
                                        LoggingHandler debug,
                                        LoggingHandler info,
@@ -65,5 +101,11 @@ public enum Log {
     WARN.set(warn);
     ERROR.set(error);
     FATAL.set(fatal);
+    traceEnabled = trace != NoopLoggingHandler.INSTANCE;
+    debugEnabled = debug != NoopLoggingHandler.INSTANCE;
+    infoEnabled = info != NoopLoggingHandler.INSTANCE;
+    warnEnabled = warn != NoopLoggingHandler.INSTANCE;
+    errorEnabled = error != NoopLoggingHandler.INSTANCE;
+    fatalEnabled = fatal != NoopLoggingHandler.INSTANCE;
   }
 }
@@ -36,6 +36,47 @@ public interface LoggingHandler {
 
   void log(@NotNull Class<?> clazz, Throwable thrown, String message, Object... params);
 
+  /**
+   * Fixed-arity form of {@link #log(Class, String, Object...)}, which doesn't allocate
+   * an array of arguments unless the handler logs the message.
+   */
+  default void log(@NotNull Class<?> clazz, String message, Object arg) {
+    log(clazz, message, new Object[] {arg});
+  }
+
+  default void log(@NotNull Class<?> clazz, String message, Object arg1, Object arg2) {
+    log(clazz, message, new Object[] {arg1, arg2});
+  }
+
+  default void log(@NotNull Class<?> clazz, String message, Object arg1, Object arg2, Object arg3) {
+    log(clazz, message, new Object[] {arg1, arg2, arg3});
+  }
+
+  default void log(@NotNull Class<?> clazz, String message, Object arg1, Object arg2, Object arg3, Object arg4) {
+    log(clazz, message, new Object[] {arg1, arg2, arg3, arg4});
+  }
+
+  /**
+   * Fixed-arity form of {@link #log(Class, Throwable, String, Object...)}, which doesn't allocate
+   * an array of arguments unless the handler logs the message.
+   */
+  default void log(@NotNull Class<?> clazz, Throwable thrown, String message, Object arg) {
+    log(clazz, thrown, message, new Object[] {arg});
+  }
+
+  default void log(@NotNull Class<?> clazz, Throwable thrown, String message, Object arg1, Object arg2) {
+    log(clazz, thrown, message, new Object[] {arg1, arg2});
+  }
+
+  default void log(@NotNull Class<?> clazz, Throwable thrown, String message, Object arg1, Object arg2, Object arg3) {
+    log(clazz, thrown, message, new Object[] {arg1, arg2, arg3});
+  }
+
+  default void log(@NotNull Class<?> clazz, Throwable thrown, String message, Object arg1, Object arg2, Object arg3,
+      Object arg4) {
+    log(clazz, thrown, message, new Object[] {arg1, arg2, arg3, arg4});
+  }
+
   default void log(@NotNull Class<?> clazz, Throwable thrown) {
     log(clazz, "", thrown);
   }
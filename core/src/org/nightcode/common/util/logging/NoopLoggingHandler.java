@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.logging;
+
+import java.util.function.Supplier;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * LoggingHandler which discards all messages. Calls of its empty methods are inlined away
+ * by the JIT compiler, and {@link Log} reports levels handled by it as disabled.
+ */
+public enum NoopLoggingHandler implements LoggingHandler {
+  INSTANCE;
+
+  @Override public boolean isEnabled(@NotNull Class<?> clazz) {
+    return false;
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, String message) {
+    // do nothing
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, String message, Object... params) {
+    // do nothing
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, String message, @Nullable Throwable thrown) {
+    // do nothing
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, Supplier<String> supplier, @Nullable Throwable thrown) {
+    // do nothing
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, Throwable thrown, String message, Object... params) {
+    // do nothing
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, String message, Object arg) {
+    // do nothing
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, String message, Object arg1, Object arg2) {
+    // do nothing
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, String message, Object arg1, Object arg2, Object arg3) {
+    // do nothing
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, String message, Object arg1, Object arg2, Object arg3, Object arg4) {
+    // do nothing
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, Throwable thrown, String message, Object arg) {
+    // do nothing
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, Throwable thrown, String message, Object arg1, Object arg2) {
+    // do nothing
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, Throwable thrown, String message, Object arg1, Object arg2,
+      Object arg3) {
+    // do nothing
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, Throwable thrown, String message, Object arg1, Object arg2,
+      Object arg3, Object arg4) {
+    // do nothing
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, Throwable thrown) {
+    // do nothing
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, Supplier<String> supplier) {
+    // do nothing
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.logging;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Formats messages with {@code {}} placeholders which are replaced by arguments in order.
+ *
+ * <p>Positions of the placeholders of a message template are parsed once and cached, so that
+ * formatting a template is a series of appends to a thread-local {@code StringBuilder}. A template
+ * which has fewer placeholders than arguments ignores the extra arguments, placeholders left without
+ * arguments are kept as is. Up to 4096 templates are cached, further templates are parsed on each use.
+ * A message formatted while the thread-local builder is in use, e.g. by {@code toString()} of an argument
+ * which logs, is formatted with a new builder.
+ */
+final class PlaceholderFormatter {
+
+  /**
+   * A thread-local builder which is marked as in use while a message is formatted.
+   */
+  private static final class Builder {
+    StringBuilder sb = new StringBuilder(BUILDER_CAPACITY);
+    boolean inUse;
+  }
+
+  private static final String PLACEHOLDER = "{}";
+  private static final int MAX_TEMPLATES = 4096;
+  private static final int BUILDER_CAPACITY = 256;
+  private static final int MAX_BUILDER_CAPACITY = 8192;
+  private static final int[] NO_PLACEHOLDERS = {};
+
+  private static final ConcurrentMap<String, int[]> TEMPLATES = new ConcurrentHashMap<>();
+
+  private static final ThreadLocal<Builder> BUILDER = ThreadLocal.withInitial(Builder::new);
+
+  /**
+   * Appends the formatted message to the given builder.
+   *
+   * @param sb the builder
+   * @param template the message template
+   * @param args the arguments, {@code null} if the template isn't formatted
+   * @return the given builder
+   */
+  static StringBuilder appendTo(StringBuilder sb, @Nullable String template, @Nullable Object[] args) {
+    if (template == null || args == null || args.length == 0) {
+      return sb.append(template);
+    }
+    int[] placeholders = placeholders(template);
+    int from = 0;
+    for (int i = 0, n = Math.min(placeholders.length, args.length); i < n; i++) {
+      int index = placeholders[i];
+      sb.append(template, from, index).append(args[i]);
+      from = index + PLACEHOLDER.length();
+    }
+    return sb.append(template, from, template.length());
+  }
+
+  /**
+   * Returns the formatted message.
+   *
+   * @param template the message template
+   * @param args the arguments
+   * @return the formatted message
+   */
+  static String format(@Nullable String template, @Nullable Object... args) {
+    Builder builder = BUILDER.get();
+    if (builder.inUse) {
+      // a nested call mustn't clobber the message formatted by the outer one
+      return appendTo(new StringBuilder(BUILDER_CAPACITY), template, args).toString();
+    }
+    builder.inUse = true;
+    try {
+      StringBuilder sb = builder.sb;
+      sb.setLength(0);
+      String message = appendTo(sb, template, args).toString();
+      if (sb.capacity() > MAX_BUILDER_CAPACITY) {
+        // don't retain memory of a huge message
+        builder.sb = new StringBuilder(BUILDER_CAPACITY);
+      }
+      return message;
+    } finally {
+      builder.inUse = false;
+    }
+  }
+
+  /**
+   * Returns {@code true} if the given template has placeholders.
+   *
+   * @param template the message template
+   */
+  static boolean hasPlaceholders(String template) {
+    return placeholders(template).length > 0;
+  }
+
+  private static int[] parse(String template) {
+    int count = 0;
+    for (int index = template.indexOf(PLACEHOLDER); index >= 0; index = template.indexOf(PLACEHOLDER, index + 2)) {
+      count++;
+    }
+    if (count == 0) {
+      return NO_PLACEHOLDERS;
+    }
+    int[] placeholders = new int[count];
+    int index = template.indexOf(PLACEHOLDER);
+    for (int i = 0; i < count; i++) {
+      placeholders[i] = index;
+      index = template.indexOf(PLACEHOLDER, index + 2);
+    }
+    return placeholders;
+  }
+
+  private static int[] placeholders(String template) {
+    int[] placeholders = TEMPLATES.get(template);
+    if (placeholders == null) {
+      placeholders = parse(template);
+      if (TEMPLATES.size() < MAX_TEMPLATES) {
+        TEMPLATES.putIfAbsent(template, placeholders);
+      }
+    }
+    return placeholders;
+  }
+
+  private PlaceholderFormatter() {
+    // do nothing
+  }
+}
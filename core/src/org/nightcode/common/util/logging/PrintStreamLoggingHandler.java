@@ -21,7 +21,6 @@ import java.util.function.Supplier;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import static java.lang.String.format;
 import static java.lang.Thread.currentThread;
 
 /**
@@ -50,11 +49,11 @@ public enum PrintStreamLoggingHandler implements LoggingHandler {
   }
 
   @Override public void log(@NotNull Class<?> clazz, String message, Object... params) {
-    log(clazz, () -> format(message.replaceAll("\\{}", "%s"), params), null);
+    log(clazz, () -> PlaceholderFormatter.format(message, params), null);
   }
 
   @Override public void log(@NotNull Class<?> clazz, Throwable thrown, String message, Object... params) {
-    log(clazz, () -> format(message.replaceAll("\\{}", "%s"), params), thrown);
+    log(clazz, () -> PlaceholderFormatter.format(message, params), thrown);
   }
 
   @Override public void log(@NotNull Class<?> clazz, Supplier<String> message, @Nullable Throwable thrown) {
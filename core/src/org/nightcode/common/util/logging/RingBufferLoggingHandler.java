@@ -0,0 +1,428 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.logging;
+
+import org.nightcode.common.base.Objects;
+import org.nightcode.common.service.AbstractThreadService;
+import org.nightcode.common.service.WaitStrategy;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Base class of LoggingHandlers which write records on a background service thread, so that
+ * logging threads don't wait for I/O. Records have the same layout as the ones of
+ * {@link PrintStreamLoggingHandler}.
+ *
+ * <p>A logging thread claims a preallocated slot of a ring buffer and copies the timestamp,
+ * the thread, the class, the formatted message and the throwable into it without allocating
+ * memory besides the {@code toString()} of the arguments. The service thread encodes published
+ * records into a reusable byte buffer and passes them to {@link #write(byte[], int, int)} in batches,
+ * invoking {@link #flushOutput()} once the ring buffer is empty. A logging thread which finds the
+ * ring buffer full waits until the service thread frees a slot.
+ *
+ * <p>While the service isn't running, and on the service thread itself, records are written
+ * synchronously. When the service stops, the service thread waits until the logging threads
+ * which have claimed slots publish their records and writes them before closing the output.
+ * A logging thread which claims a slot while the service is stopping writes the published
+ * records itself, after the output may have been closed, as the records written synchronously.
+ */
+abstract class RingBufferLoggingHandler extends AbstractThreadService implements LoggingHandler {
+
+  /**
+   * A slot of the ring buffer.
+   */
+  private static final class Slot {
+    volatile long sequence; // equals to the position of the slot while the slot is free
+    long timestamp;
+    Thread thread;
+    Class<?> clazz;
+    final StringBuilder message = new StringBuilder(MESSAGE_CAPACITY);
+    Throwable thrown;
+
+    Slot(long sequence) {
+      this.sequence = sequence;
+    }
+  }
+
+  static final int DEFAULT_CAPACITY = 8192;
+  private static final int MAX_CAPACITY = 1 << 20;
+  private static final int MESSAGE_CAPACITY = 128;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final long POLL_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(100L);
+  private static final long BACK_OFF_NANOS = TimeUnit.MICROSECONDS.toNanos(10L);
+
+  private static final DateTimeFormatter SECONDS_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+  private static final ClassValue<byte[]> SIMPLE_NAMES = new ClassValue<byte[]>() {
+    @Override protected byte[] computeValue(Class<?> type) {
+      return type.getSimpleName().getBytes(StandardCharsets.UTF_8);
+    }
+  };
+
+  private final Slot[] slots;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong();
+  private final WaitStrategy waitStrategy;
+  private final BooleanSupplier published;
+
+  // guarded by lock
+  private final Object lock = new Object();
+  private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+  private final StringBuilder directMessage = new StringBuilder(MESSAGE_CAPACITY);
+  private final ZoneId zone = ZoneId.systemDefault();
+  private long head;
+  private long cachedSecond = Long.MIN_VALUE;
+  private byte[] cachedSecondBytes;
+
+  private volatile Thread serviceThread;
+
+  /**
+   * Creates a handler with the given capacity and service thread's wait strategy.
+   *
+   * @param serviceName the name of the service
+   * @param capacity the number of records in the ring buffer, rounded up to the next power of two
+   * @param waitStrategy the strategy of the service thread waiting for records
+   */
+  RingBufferLoggingHandler(String serviceName, int capacity, WaitStrategy waitStrategy) {
+    super(serviceName);
+    this.waitStrategy = java.util.Objects.requireNonNull(waitStrategy, "wait strategy");
+    Objects.validArgument(capacity > 0 && capacity <= MAX_CAPACITY
+        , "capacity <%s> must be in range [1, %s]", capacity, MAX_CAPACITY);
+    int size = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+    slots = new Slot[size];
+    for (int i = 0; i < size; i++) {
+      slots[i] = new Slot(i);
+    }
+    mask = size - 1;
+    published = () -> slots[(int) head & mask].sequence == head + 1;
+  }
+
+  static WaitStrategy defaultWaitStrategy() {
+    return WaitStrategy.backoffParking(50L, 10_000L, TimeUnit.MICROSECONDS);
+  }
+
+  @Override public boolean isEnabled(@NotNull Class<?> clazz) {
+    return true;
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, String message) {
+    publish(clazz, message, null, null, null);
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, String message, Object... params) {
+    publish(clazz, message, params, null, null);
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, String message, @Nullable Throwable thrown) {
+    publish(clazz, message, null, null, thrown);
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, Supplier<String> supplier, @Nullable Throwable thrown) {
+    publish(clazz, null, null, supplier, thrown);
+  }
+
+  @Override public void log(@NotNull Class<?> clazz, Throwable thrown, String message, Object... params) {
+    publish(clazz, message, params, null, thrown);
+  }
+
+  @Override protected final void onStart() {
+    serviceThread = Thread.currentThread();
+  }
+
+  @Override protected final void onStop() throws IOException {
+    try {
+      // waits for the slots claimed so far, a slot claimed after this loop has finished is written
+      // by its logging thread, the lock isn't held while waiting since a logging thread may write
+      // a record directly while filling a slot
+      for (;;) {
+        synchronized (lock) {
+          writeRecords();
+          if (head == tail.get()) {
+            break;
+          }
+        }
+        LockSupport.parkNanos(BACK_OFF_NANOS);
+      }
+    } finally {
+      synchronized (lock) {
+        closeOutput();
+      }
+    }
+  }
+
+  @Override protected final void service() throws Exception {
+    int iteration = 0;
+    while (isOperates()) {
+      int written;
+      synchronized (lock) {
+        written = writeRecords();
+      }
+      if (written > 0) {
+        iteration = 0;
+      } else {
+        waitStrategy.idle(iteration++, POLL_TIMEOUT_NANOS, published);
+      }
+    }
+  }
+
+  /**
+   * Invoked before a record is encoded, e.g. to switch the output.
+   *
+   * @param timestamp the timestamp of the record, in milliseconds since the epoch
+   * @throws IOException if an I/O error occurs
+   */
+  void beforeRecord(long timestamp) throws IOException {
+    // do nothing
+  }
+
+  /**
+   * Invoked once the service thread has stopped, after the published records are written.
+   *
+   * @throws IOException if an I/O error occurs
+   */
+  void closeOutput() throws IOException {
+    // do nothing
+  }
+
+  /**
+   * Returns the number of encoded bytes which haven't been written yet.
+   */
+  final int bufferedBytes() {
+    return buffer.position();
+  }
+
+  /**
+   * Writes the encoded records buffered so far.
+   *
+   * @throws IOException if an I/O error occurs
+   */
+  final void flush() throws IOException {
+    if (buffer.position() > 0) {
+      write(buffer.array(), 0, buffer.position());
+      ((Buffer) buffer).clear();
+    }
+  }
+
+  /**
+   * Flushes the output once the published records are written.
+   *
+   * @throws IOException if an I/O error occurs
+   */
+  abstract void flushOutput() throws IOException;
+
+  /**
+   * Writes encoded records.
+   *
+   * @param bytes the encoded records
+   * @param offset the offset of the records in the array
+   * @param length the length of the records
+   * @throws IOException if an I/O error occurs
+   */
+  abstract void write(byte[] bytes, int offset, int length) throws IOException;
+
+  private void fill(StringBuilder sb, String message, @Nullable Object[] params, @Nullable Supplier<String> supplier) {
+    sb.setLength(0);
+    if (supplier != null) {
+      sb.append(supplier.get());
+    } else {
+      PlaceholderFormatter.appendTo(sb, message, params);
+    }
+  }
+
+  private void publish(Class<?> clazz, @Nullable String message, @Nullable Object[] params,
+      @Nullable Supplier<String> supplier, @Nullable Throwable thrown) {
+    Thread thread = Thread.currentThread();
+    if (!isRunning() || thread == serviceThread) {
+      writeDirectly(System.currentTimeMillis(), thread, clazz, message, params, supplier, thrown);
+      return;
+    }
+    long position;
+    Slot slot;
+    for (;;) {
+      position = tail.get();
+      slot = slots[(int) position & mask];
+      long sequence = slot.sequence;
+      if (sequence == position) {
+        if (tail.compareAndSet(position, position + 1)) {
+          break;
+        }
+      } else if (sequence < position) {
+        // the ring buffer is full
+        if (!isRunning()) {
+          writeDirectly(System.currentTimeMillis(), thread, clazz, message, params, supplier, thrown);
+          return;
+        }
+        LockSupport.parkNanos(BACK_OFF_NANOS);
+      }
+    }
+    try {
+      slot.timestamp = System.currentTimeMillis();
+      slot.thread = thread;
+      slot.clazz = clazz;
+      slot.thrown = thrown;
+      fill(slot.message, message, params, supplier);
+    } finally {
+      slot.sequence = position + 1;
+      waitStrategy.signalAll();
+    }
+    if (!isRunning()) {
+      // the service may have stopped between the check and the claim of the slot
+      synchronized (lock) {
+        try {
+          writeRecords();
+        } catch (IOException ex) {
+          ex.printStackTrace();
+        }
+      }
+    }
+  }
+
+  private void put(CharSequence chars) throws IOException {
+    for (int i = 0, length = chars.length(); i < length; i++) {
+      if (buffer.remaining() < 4) {
+        flush();
+      }
+      char c = chars.charAt(i);
+      if (c < 0x80) {
+        buffer.put((byte) c);
+      } else if (c < 0x800) {
+        buffer.put((byte) (0xC0 | (c >> 6)));
+        buffer.put((byte) (0x80 | (c & 0x3F)));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+        buffer.put((byte) (0xF0 | (codePoint >> 18)));
+        buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+        buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+        buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+      } else if (Character.isSurrogate(c)) {
+        buffer.put((byte) '?');
+      } else {
+        buffer.put((byte) (0xE0 | (c >> 12)));
+        buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+        buffer.put((byte) (0x80 | (c & 0x3F)));
+      }
+    }
+  }
+
+  private void put(byte[] bytes) throws IOException {
+    if (buffer.remaining() < bytes.length) {
+      flush();
+    }
+    if (bytes.length > buffer.remaining()) {
+      write(bytes, 0, bytes.length);
+    } else {
+      buffer.put(bytes);
+    }
+  }
+
+  private void putTimestamp(long timestamp) throws IOException {
+    long second = Math.floorDiv(timestamp, 1000L);
+    if (second != cachedSecond) {
+      LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochSecond(second), zone);
+      cachedSecondBytes = SECONDS_FORMATTER.format(dateTime).getBytes(StandardCharsets.US_ASCII);
+      cachedSecond = second;
+    }
+    put(cachedSecondBytes);
+    if (buffer.remaining() < 4) {
+      flush();
+    }
+    int millis = (int) Math.floorMod(timestamp, 1000L);
+    buffer.put((byte) '.');
+    buffer.put((byte) ('0' + millis / 100));
+    buffer.put((byte) ('0' + millis / 10 % 10));
+    buffer.put((byte) ('0' + millis % 10));
+  }
+
+  private void writeDirectly(long timestamp, Thread thread, Class<?> clazz, @Nullable String message,
+      @Nullable Object[] params, @Nullable Supplier<String> supplier, @Nullable Throwable thrown) {
+    synchronized (lock) {
+      try {
+        // keep the order of records published before the service has stopped
+        writeRecords();
+        fill(directMessage, message, params, supplier);
+        writeRecord(timestamp, thread, clazz, directMessage, thrown);
+        flush();
+        flushOutput();
+      } catch (IOException ex) {
+        ex.printStackTrace();
+      }
+    }
+  }
+
+  private void writeRecord(long timestamp, Thread thread, Class<?> clazz, CharSequence message,
+      @Nullable Throwable thrown) throws IOException {
+    beforeRecord(timestamp);
+    putTimestamp(timestamp);
+    put(" [");
+    put(thread.getName());
+    put("/");
+    put(SIMPLE_NAMES.get(clazz));
+    put("]: ");
+    put(message);
+    put("\n");
+    if (thrown != null) {
+      StringWriter stackTrace = new StringWriter();
+      thrown.printStackTrace(new PrintWriter(stackTrace));
+      put(stackTrace.getBuffer());
+    }
+  }
+
+  /**
+   * Writes the published records and flushes the output.
+   *
+   * @return the number of written records
+   */
+  private int writeRecords() throws IOException {
+    int written = 0;
+    for (;;) {
+      Slot slot = slots[(int) head & mask];
+      if (slot.sequence != head + 1) {
+        break;
+      }
+      try {
+        writeRecord(slot.timestamp, slot.thread, slot.clazz, slot.message, slot.thrown);
+      } finally {
+        slot.thread = null;
+        slot.clazz = null;
+        slot.thrown = null;
+        slot.sequence = head + slots.length;
+        head++;
+      }
+      written++;
+    }
+    if (written > 0) {
+      flush();
+      flushOutput();
+    }
+    return written;
+  }
+}
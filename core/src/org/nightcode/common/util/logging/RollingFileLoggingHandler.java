@@ -0,0 +1,255 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.logging;
+
+import org.nightcode.common.annotations.Beta;
+import org.nightcode.common.base.Objects;
+import org.nightcode.common.io.MappedFiles;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * LoggingHandler which appends records to memory-mapped segment files on a background
+ * service thread, see {@link AsyncLoggingHandler} for how records get to the service thread.
+ * Records are copied into the mapped segment in batches without a system call per batch,
+ * the operating system writes the pages to the file.
+ *
+ * <p>Segments are named {@code <prefix>-<index>.log} and rolled once they exceed the segment
+ * size or the roll period has passed since the segment has been opened, a segment may exceed
+ * the size by one record. Closed segments are truncated to their records and optionally
+ * compressed to {@code <prefix>-<index>.log.gz} on a separate thread. The handler never appends
+ * to segments written before it has been created.
+ *
+ * <p>The mapping of a segment is released when the segment is closed, before it is truncated,
+ * so the disk space of compressed segments is reclaimed once their files are deleted.
+ */
+@Beta
+public final class RollingFileLoggingHandler extends RingBufferLoggingHandler {
+
+  private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+  private static final int MIN_SEGMENT_SIZE = 4096;
+  private static final int MAX_SEGMENT_SIZE = 1 << 30;
+  private static final String SUFFIX = ".log";
+  private static final String COMPRESSED_SUFFIX = ".gz";
+
+  private final Path directory;
+  private final String prefix;
+  private final Pattern segmentName;
+  private final int segmentSize;
+  private final long rollPeriodMillis;
+  private final boolean compress;
+  private final List<Thread> compressors = new ArrayList<>();
+
+  // guarded by the lock of the records
+  private MappedByteBuffer mapping; // null if no segment is open
+  private Path segment;
+  private Path suspended; // the segment closed after a synchronous write, reopened by the next write
+  private long position; // of the segment file
+  private long openedAt;
+
+  /**
+   * Creates a handler which rolls segments of 64 megabytes and doesn't compress them.
+   *
+   * @param serviceName the name of the service
+   * @param directory the directory of the segments
+   * @param prefix the prefix of the segment file names
+   * @throws IOException if unable to create the directory
+   */
+  public RollingFileLoggingHandler(String serviceName, Path directory, String prefix) throws IOException {
+    this(serviceName, directory, prefix, DEFAULT_SEGMENT_SIZE, 0L, TimeUnit.MILLISECONDS, false);
+  }
+
+  /**
+   * Creates a handler with the given rolling policy.
+   *
+   * @param serviceName the name of the service
+   * @param directory the directory of the segments
+   * @param prefix the prefix of the segment file names
+   * @param segmentSize the size of a segment which makes it roll
+   * @param rollPeriod the period after which a segment rolls, {@code 0} if segments roll by size only
+   * @param unit the time unit of the rollPeriod argument
+   * @param compress {@code true} if closed segments are compressed with gzip
+   * @throws IOException if unable to create the directory
+   */
+  public RollingFileLoggingHandler(String serviceName, Path directory, String prefix, int segmentSize,
+      long rollPeriod, TimeUnit unit, boolean compress) throws IOException {
+    super(serviceName, DEFAULT_CAPACITY, defaultWaitStrategy());
+    java.util.Objects.requireNonNull(directory, "directory");
+    java.util.Objects.requireNonNull(prefix, "prefix");
+    Objects.validArgument(!prefix.isEmpty() && prefix.indexOf('/') < 0 && prefix.indexOf('\\') < 0
+        , "prefix <%s> must be a non-empty file name", prefix);
+    Objects.validArgument(segmentSize >= MIN_SEGMENT_SIZE && segmentSize <= MAX_SEGMENT_SIZE
+        , "segment size <%s> must be in range [%s, %s]", segmentSize, MIN_SEGMENT_SIZE, MAX_SEGMENT_SIZE);
+    Objects.validArgument(rollPeriod >= 0L, "roll period <%s> must not be negative", rollPeriod);
+    this.directory = Files.createDirectories(directory);
+    this.prefix = prefix;
+    this.segmentName = Pattern.compile(Pattern.quote(prefix) + "-(\\d+)" + Pattern.quote(SUFFIX)
+        + "(" + Pattern.quote(COMPRESSED_SUFFIX) + ")?");
+    this.segmentSize = segmentSize;
+    this.rollPeriodMillis = unit.toMillis(rollPeriod);
+    this.compress = compress;
+  }
+
+  @Override void beforeRecord(long timestamp) throws IOException {
+    boolean opened = mapping != null || suspended != null;
+    boolean full = (opened ? position : 0L) + bufferedBytes() >= segmentSize;
+    boolean expired = opened && rollPeriodMillis > 0L && timestamp - openedAt >= rollPeriodMillis;
+    if (full || expired) {
+      flush();
+      if (mapping != null) {
+        closeSegment(true);
+      } else {
+        finish(suspended);
+        suspended = null;
+      }
+    }
+  }
+
+  @Override void closeOutput() throws IOException {
+    try {
+      if (mapping != null) {
+        closeSegment(true);
+      } else if (suspended != null) {
+        finish(suspended);
+        suspended = null;
+      }
+    } finally {
+      awaitCompressors();
+    }
+  }
+
+  @Override void flushOutput() throws IOException {
+    if (!isRunning() && mapping != null) {
+      // the record has been written synchronously, don't leave the segment padded
+      closeSegment(false);
+    }
+  }
+
+  @Override void write(byte[] bytes, int offset, int length) throws IOException {
+    if (mapping == null) {
+      openSegment();
+    }
+    while (length > 0) {
+      if (!mapping.hasRemaining()) {
+        map();
+      }
+      int n = Math.min(length, mapping.remaining());
+      mapping.put(bytes, offset, n);
+      position += n;
+      offset += n;
+      length -= n;
+    }
+  }
+
+  private void awaitCompressors() {
+    boolean interrupted = false;
+    for (Thread compressor : compressors) {
+      for (;;) {
+        try {
+          compressor.join();
+          break;
+        } catch (InterruptedException ex) {
+          interrupted = true;
+        }
+      }
+    }
+    compressors.clear();
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void closeSegment(boolean roll) throws IOException {
+    MappedByteBuffer closed = mapping;
+    mapping = null;
+    MappedFiles.unmap(closed);
+    MappedFiles.truncate(segment, position);
+    if (roll) {
+      finish(segment);
+    } else {
+      suspended = segment;
+    }
+  }
+
+  private void compress(Path path) {
+    Path target = path.resolveSibling(path.getFileName() + COMPRESSED_SUFFIX);
+    try {
+      try (InputStream in = Files.newInputStream(path);
+           OutputStream out = new GZIPOutputStream(Files.newOutputStream(target))) {
+        byte[] bytes = new byte[64 * 1024];
+        int n;
+        while ((n = in.read(bytes)) > 0) {
+          out.write(bytes, 0, n);
+        }
+      }
+      Files.delete(path);
+    } catch (IOException ex) {
+      // not logged since the records are written by this handler
+      ex.printStackTrace();
+    }
+  }
+
+  private void finish(Path path) {
+    if (!compress) {
+      return;
+    }
+    compressors.removeIf(compressor -> !compressor.isAlive());
+    Thread compressor = new Thread(() -> compress(path), serviceName() + "-compressor");
+    compressor.setDaemon(true);
+    compressor.start();
+    compressors.add(compressor);
+  }
+
+  private long lastIndex() throws IOException {
+    long last = -1L;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        Matcher matcher = segmentName.matcher(file.getFileName().toString());
+        if (matcher.matches()) {
+          last = Math.max(last, Long.parseLong(matcher.group(1)));
+        }
+      }
+    }
+    return last;
+  }
+
+  private void map() throws IOException {
+    mapping = MappedFiles.map(segment, position, segmentSize);
+  }
+
+  private void openSegment() throws IOException {
+    if (suspended != null) {
+      segment = suspended;
+      suspended = null;
+    } else {
+      segment = directory.resolve(String.format("%s-%08d%s", prefix, lastIndex() + 1, SUFFIX));
+      position = 0L;
+      openedAt = System.currentTimeMillis();
+    }
+    map();
+  }
+}
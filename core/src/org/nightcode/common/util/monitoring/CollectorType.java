@@ -36,6 +36,11 @@ public enum CollectorType {
     @Override public Collector create(MonitoringEngine engine, String name, String help, String... tagNames) {
       return engine.registerTimer(name, help, tagNames);
     }
+  },
+  METER {
+    @Override public Collector create(MonitoringEngine engine, String name, String help, String... tagNames) {
+      return engine.registerMeter(name, help, tagNames);
+    }
   };
 
   public abstract Collector create(MonitoringEngine engine, String name, String help, String... tagNames);
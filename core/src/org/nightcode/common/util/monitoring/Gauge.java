@@ -0,0 +1,31 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.monitoring;
+
+import org.nightcode.common.annotations.Beta;
+
+/**
+ * A gauge collector which reports an instantaneous value, e.g. the size of a queue,
+ * sampled from its source when the gauge is read.
+ */
+@Beta
+@FunctionalInterface
+public interface Gauge extends Collector {
+
+  /**
+   * Returns the current value of the gauge.
+   */
+  long value();
+}
@@ -0,0 +1,44 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.monitoring;
+
+/**
+ * Base class for collectors of {@link InMemoryMonitoringEngine}, see {@link TaggedInMemoryCollector}
+ * for collectors having tags.
+ */
+abstract class InMemoryCollector implements Collector {
+
+  private final String name;
+  private final String help;
+  private final String[] tagNames;
+
+  InMemoryCollector(String name, String help, String... tagNames) {
+    this.name = java.util.Objects.requireNonNull(name, "name");
+    this.help = (help != null) ? help : "";
+    this.tagNames = tagNames.clone();
+  }
+
+  final String name() {
+    return name;
+  }
+
+  final String help() {
+    return help;
+  }
+
+  final String[] tagNames() {
+    return tagNames;
+  }
+}
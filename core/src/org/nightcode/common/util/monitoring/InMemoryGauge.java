@@ -0,0 +1,37 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.monitoring;
+
+import org.nightcode.common.annotations.Beta;
+
+import java.util.function.LongSupplier;
+
+/**
+ * {@link Gauge} implementation of {@link InMemoryMonitoringEngine}.
+ */
+@Beta
+public final class InMemoryGauge extends InMemoryCollector implements Gauge {
+
+  private final LongSupplier supplier;
+
+  InMemoryGauge(LongSupplier supplier, String name, String help) {
+    super(name, help);
+    this.supplier = java.util.Objects.requireNonNull(supplier, "supplier");
+  }
+
+  @Override public long value() {
+    return supplier.getAsLong();
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.monitoring;
+
+import org.nightcode.common.annotations.Beta;
+
+/**
+ * {@link Histogram} implementation of {@link InMemoryMonitoringEngine} backed by {@link LogLinearHistogram}.
+ */
+@Beta
+public final class InMemoryHistogram extends TaggedInMemoryCollector<InMemoryHistogram.Cell> implements Histogram {
+
+  /**
+   * Histogram's child.
+   */
+  public static final class Cell implements Histogram.Child {
+
+    private final LogLinearHistogram histogram;
+
+    Cell(int precision, long highestTrackableValue) {
+      histogram = new LogLinearHistogram(precision, highestTrackableValue);
+    }
+
+    @Override public long count() {
+      return histogram.count();
+    }
+
+    @Override public void update(int value) {
+      histogram.record(value);
+    }
+
+    @Override public void update(long value) {
+      histogram.record(value);
+    }
+
+    public LogLinearHistogram.Snapshot snapshot() {
+      return histogram.snapshot();
+    }
+
+    public LogLinearHistogram.Snapshot snapshotAndReset() {
+      return histogram.snapshotAndReset();
+    }
+
+    LogLinearHistogram histogram() {
+      return histogram;
+    }
+  }
+
+  private final int precision;
+  private final long highestTrackableValue;
+  private final Cell cell;
+
+  InMemoryHistogram(int precision, long highestTrackableValue, String name, String help, String... tagNames) {
+    super(name, help, tagNames);
+    this.precision = precision;
+    this.highestTrackableValue = highestTrackableValue;
+    this.cell = new Cell(precision, highestTrackableValue);
+  }
+
+  @Override public long count() {
+    return cell.count();
+  }
+
+  @Override public Cell tags(String... tagValues) {
+    return child(tagValues);
+  }
+
+  @Override public void update(int value) {
+    cell.update(value);
+  }
+
+  @Override public void update(long value) {
+    cell.update(value);
+  }
+
+  public LogLinearHistogram.Snapshot snapshot() {
+    return cell.snapshot();
+  }
+
+  public LogLinearHistogram.Snapshot snapshotAndReset() {
+    return cell.snapshotAndReset();
+  }
+
+  Cell cell() {
+    return cell;
+  }
+
+  @Override Cell newChild(String[] tagValues) {
+    return new Cell(precision, highestTrackableValue);
+  }
+}
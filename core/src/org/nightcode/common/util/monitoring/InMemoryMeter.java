@@ -0,0 +1,207 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.monitoring;
+
+import org.nightcode.common.annotations.Beta;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link Meter} implementation of {@link InMemoryMonitoringEngine}.
+ *
+ * <p>Marking an event is a single striped add. Rates are never maintained by writers:
+ * the exponentially weighted averages are ticked every 5 seconds and the sliding window
+ * is sampled at most once per second, both lazily by the thread which reads a rate.
+ */
+@Beta
+public final class InMemoryMeter extends TaggedInMemoryCollector<InMemoryMeter.Cell> implements Meter {
+
+  private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+  private static final double TICK_SECONDS = 5.0;
+  private static final long SAMPLE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+  private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private static final double M1_DECAY = Math.exp(-TICK_SECONDS / TimeUnit.MINUTES.toSeconds(1));
+  private static final double M5_DECAY = Math.exp(-TICK_SECONDS / TimeUnit.MINUTES.toSeconds(5));
+  private static final double M15_DECAY = Math.exp(-TICK_SECONDS / TimeUnit.MINUTES.toSeconds(15));
+
+  /**
+   * Meter's child.
+   */
+  public static final class Cell implements Meter.Child {
+
+    private final LongAdder count = new LongAdder();
+    private final LongSupplier clock;
+    private final long window;
+
+    // guarded by this
+    private long lastTick;
+    private long lastTickCount;
+    private boolean initialized;
+    private double m1Rate;
+    private double m5Rate;
+    private double m15Rate;
+
+    // ring buffer of (time, cumulative count) samples, guarded by this
+    private final long[] sampleTimes;
+    private final long[] sampleCounts;
+    private int head;
+    private int size;
+
+    Cell(LongSupplier clock, int windowSeconds) {
+      this.clock = clock;
+      this.window = TimeUnit.SECONDS.toNanos(windowSeconds);
+      // one sample per second at most, plus the baseline just outside of the window
+      this.sampleTimes = new long[windowSeconds + 2];
+      this.sampleCounts = new long[windowSeconds + 2];
+      long now = clock.getAsLong();
+      this.lastTick = now;
+      sample(now, 0);
+    }
+
+    @Override public void mark() {
+      count.increment();
+    }
+
+    @Override public void mark(long n) {
+      count.add(n);
+    }
+
+    @Override public long count() {
+      return count.sum();
+    }
+
+    @Override public synchronized double oneMinuteRate() {
+      tick();
+      return m1Rate;
+    }
+
+    @Override public synchronized double fiveMinuteRate() {
+      tick();
+      return m5Rate;
+    }
+
+    @Override public synchronized double fifteenMinuteRate() {
+      tick();
+      return m15Rate;
+    }
+
+    @Override public synchronized double windowRate() {
+      long now = tick();
+      long current = count.sum();
+      // the newest sample at or before the window start, or the oldest one if the meter is younger than the window
+      int index = (head - size + sampleTimes.length) % sampleTimes.length;
+      for (int i = 1; i < size; i++) {
+        int next = (index + 1) % sampleTimes.length;
+        if (now - sampleTimes[next] < window) {
+          break;
+        }
+        index = next;
+      }
+      long span = now - sampleTimes[index];
+      return (span <= 0) ? 0.0 : (current - sampleCounts[index]) * NANOS_PER_SECOND / span;
+    }
+
+    private long tick() {
+      long now = clock.getAsLong();
+      long current = count.sum();
+      long age = now - lastTick;
+      if (age >= TICK_INTERVAL) {
+        long ticks = age / TICK_INTERVAL;
+        lastTick += ticks * TICK_INTERVAL;
+        // events since the last tick are spread evenly over the elapsed intervals
+        double rate = (current - lastTickCount) / (ticks * TICK_SECONDS);
+        lastTickCount = current;
+        if (initialized) {
+          m1Rate = decay(m1Rate, rate, M1_DECAY, ticks);
+          m5Rate = decay(m5Rate, rate, M5_DECAY, ticks);
+          m15Rate = decay(m15Rate, rate, M15_DECAY, ticks);
+        } else {
+          m1Rate = rate;
+          m5Rate = rate;
+          m15Rate = rate;
+          initialized = true;
+        }
+      }
+      int newest = (head - 1 + sampleTimes.length) % sampleTimes.length;
+      if (now - sampleTimes[newest] >= SAMPLE_INTERVAL) {
+        sample(now, current);
+      }
+      return now;
+    }
+
+    private void sample(long time, long value) {
+      sampleTimes[head] = time;
+      sampleCounts[head] = value;
+      head = (head + 1) % sampleTimes.length;
+      if (size < sampleTimes.length) {
+        size++;
+      }
+    }
+
+    private static double decay(double previous, double rate, double decay, long ticks) {
+      return rate + (previous - rate) * Math.pow(decay, ticks);
+    }
+  }
+
+  private final LongSupplier clock;
+  private final int windowSeconds;
+  private final Cell cell;
+
+  InMemoryMeter(LongSupplier clock, int windowSeconds, String name, String help, String... tagNames) {
+    super(name, help, tagNames);
+    this.clock = clock;
+    this.windowSeconds = windowSeconds;
+    this.cell = new Cell(clock, windowSeconds);
+  }
+
+  @Override public void mark() {
+    cell.mark();
+  }
+
+  @Override public void mark(long n) {
+    cell.mark(n);
+  }
+
+  @Override public long count() {
+    return cell.count();
+  }
+
+  @Override public double oneMinuteRate() {
+    return cell.oneMinuteRate();
+  }
+
+  @Override public double fiveMinuteRate() {
+    return cell.fiveMinuteRate();
+  }
+
+  @Override public double fifteenMinuteRate() {
+    return cell.fifteenMinuteRate();
+  }
+
+  @Override public double windowRate() {
+    return cell.windowRate();
+  }
+
+  @Override public Cell tags(String... tagValues) {
+    return child(tagValues);
+  }
+
+  @Override Cell newChild(String[] tagValues) {
+    return new Cell(clock, windowSeconds);
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.monitoring;
+
+import org.nightcode.common.annotations.Beta;
+import org.nightcode.common.base.Objects;
+import org.nightcode.common.util.logging.Log;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * In-process implementation of {@link MonitoringEngine} interface.
+ *
+ * <p>Counters are backed by striped cells, so concurrent updates from many threads
+ * do not contend on a single memory location. Children returned by {@code tags(..)}
+ * are cached and looked up without locking or allocation. Histograms and timers record
+ * into fixed-memory {@link LogLinearHistogram}s, meters compute their rates lazily on read.
+ */
+@Beta
+public final class InMemoryMonitoringEngine implements MonitoringEngine {
+
+  private static final char DEFAULT_NAME_SEPARATOR = '_';
+  private static final long TIMER_HIGHEST_TRACKABLE_VALUE = TimeUnit.HOURS.toNanos(1);
+  private static final int METER_WINDOW_SECONDS = 60;
+
+  private final char nameSeparator;
+  private final int histogramPrecision;
+
+  private final List<Collector> collectors = new CopyOnWriteArrayList<>();
+  private final ConcurrentMap<String, Collector> namedCollectors = new ConcurrentHashMap<>();
+
+  public InMemoryMonitoringEngine() {
+    this(DEFAULT_NAME_SEPARATOR);
+  }
+
+  public InMemoryMonitoringEngine(char nameSeparator) {
+    this(nameSeparator, LogLinearHistogram.DEFAULT_PRECISION);
+  }
+
+  /**
+   * Creates a new engine.
+   *
+   * @param nameSeparator name separator
+   * @param histogramPrecision the number of bits of sub-bucket resolution of histograms and timers
+   */
+  public InMemoryMonitoringEngine(char nameSeparator, int histogramPrecision) {
+    Objects.validArgument(histogramPrecision > 0 && histogramPrecision <= LogLinearHistogram.MAX_PRECISION
+        , "histogram precision <%s> must be in range [1, %s]", histogramPrecision, LogLinearHistogram.MAX_PRECISION);
+    this.nameSeparator = nameSeparator;
+    this.histogramPrecision = histogramPrecision;
+  }
+
+  @Override public boolean deregister(Collector collector) {
+    java.util.Objects.requireNonNull(collector, "collector");
+    if (collector instanceof InMemoryCollector) {
+      namedCollectors.remove(((InMemoryCollector) collector).name(), collector);
+    }
+    return collectors.remove(collector);
+  }
+
+  @Override public <C extends Collector> C register(Supplier<C> supplier) {
+    java.util.Objects.requireNonNull(supplier, "supplier");
+    C collector = supplier.get();
+    java.util.Objects.requireNonNull(collector, "collector");
+    if (collector instanceof InMemoryCollector) {
+      String name = ((InMemoryCollector) collector).name();
+      if (namedCollectors.putIfAbsent(name, collector) != null) {
+        throw new IllegalStateException("collector <" + name + "> has already been registered");
+      }
+    }
+    collectors.add(collector);
+    return collector;
+  }
+
+  @Override public <C extends Collector> void registerSilent(Supplier<C> supplier) {
+    try {
+      register(supplier);
+    } catch (IllegalStateException ex) {
+      Log.debug().log(getClass(), "[InMemoryMonitoringEngine]: {}", ex.getMessage());
+    }
+  }
+
+  @Override public Counter registerCounter(String name, String help, String... tagNames) {
+    return register(() -> new StripedCounter(name, help, tagNames));
+  }
+
+  @Override public InMemoryGauge registerGauge(String name, String help, LongSupplier supplier) {
+    return register(() -> new InMemoryGauge(supplier, name, help));
+  }
+
+  @Override public InMemoryHistogram registerHistogram(String name, String help, String... tagNames) {
+    return register(() -> new InMemoryHistogram(histogramPrecision, Long.MAX_VALUE, name, help, tagNames));
+  }
+
+  /**
+   * Registers a meter, its sliding window covers the last minute.
+   */
+  @Override public InMemoryMeter registerMeter(String name, String help, String... tagNames) {
+    return register(() -> new InMemoryMeter(System::nanoTime, METER_WINDOW_SECONDS, name, help, tagNames));
+  }
+
+  /**
+   * Registers a timer, durations longer than one hour are clamped.
+   */
+  @Override public InMemoryTimer registerTimer(String name, String help, String... tagNames) {
+    return register(() -> new InMemoryTimer(histogramPrecision, TIMER_HIGHEST_TRACKABLE_VALUE, name, help, tagNames));
+  }
+
+  @Override public char nameSeparator() {
+    return nameSeparator;
+  }
+
+  List<Collector> collectors() {
+    return collectors;
+  }
+}
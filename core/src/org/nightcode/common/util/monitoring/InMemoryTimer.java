@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.monitoring;
+
+import org.nightcode.common.annotations.Beta;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Timer} implementation of {@link InMemoryMonitoringEngine} backed by {@link LogLinearHistogram},
+ * durations are kept in nanoseconds.
+ */
+@Beta
+public final class InMemoryTimer extends TaggedInMemoryCollector<InMemoryTimer.Cell> implements Timer {
+
+  /**
+   * Timer's child.
+   */
+  public static final class Cell implements Timer.Child {
+
+    private final LogLinearHistogram histogram;
+
+    Cell(int precision, long highestTrackableValue) {
+      histogram = new LogLinearHistogram(precision, highestTrackableValue);
+    }
+
+    @Override public long count() {
+      return histogram.count();
+    }
+
+    @Override public Context startTimer() {
+      final long start = System.nanoTime();
+      return () -> end(start);
+    }
+
+    @Override public long end(long start) {
+      long duration = System.nanoTime() - start;
+      histogram.record(duration);
+      return duration;
+    }
+
+    @Override public void update(long duration, TimeUnit unit) {
+      histogram.record(unit.toNanos(duration));
+    }
+
+    /**
+     * Returns a snapshot of durations, in nanoseconds.
+     */
+    public LogLinearHistogram.Snapshot snapshot() {
+      return histogram.snapshot();
+    }
+
+    /**
+     * Returns a snapshot of durations, in nanoseconds, and resets the timer.
+     */
+    public LogLinearHistogram.Snapshot snapshotAndReset() {
+      return histogram.snapshotAndReset();
+    }
+
+    LogLinearHistogram histogram() {
+      return histogram;
+    }
+  }
+
+  private final int precision;
+  private final long highestTrackableValue;
+  private final Cell cell;
+
+  InMemoryTimer(int precision, long highestTrackableValue, String name, String help, String... tagNames) {
+    super(name, help, tagNames);
+    this.precision = precision;
+    this.highestTrackableValue = highestTrackableValue;
+    this.cell = new Cell(precision, highestTrackableValue);
+  }
+
+  @Override public long count() {
+    return cell.count();
+  }
+
+  @Override public Cell tags(String... tagValues) {
+    return child(tagValues);
+  }
+
+  @Override public Context startTimer() {
+    return cell.startTimer();
+  }
+
+  @Override public long end(long start) {
+    return cell.end(start);
+  }
+
+  @Override public void update(long duration, TimeUnit unit) {
+    cell.update(duration, unit);
+  }
+
+  /**
+   * Returns a snapshot of durations, in nanoseconds.
+   */
+  public LogLinearHistogram.Snapshot snapshot() {
+    return cell.snapshot();
+  }
+
+  /**
+   * Returns a snapshot of durations, in nanoseconds, and resets the timer.
+   */
+  public LogLinearHistogram.Snapshot snapshotAndReset() {
+    return cell.snapshotAndReset();
+  }
+
+  Cell cell() {
+    return cell;
+  }
+
+  @Override Cell newChild(String[] tagValues) {
+    return new Cell(precision, highestTrackableValue);
+  }
+}
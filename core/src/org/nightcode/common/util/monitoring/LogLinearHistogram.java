@@ -0,0 +1,360 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.monitoring;
+
+import org.nightcode.common.annotations.Beta;
+import org.nightcode.common.base.Objects;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed-memory histogram with log-linear buckets.
+ *
+ * <p>Values below {@code 2^precision} are counted exactly, every following power of two
+ * is split into {@code 2^precision} linear sub-buckets, so the relative error of a
+ * reported value never exceeds {@code 2^-precision}. Negative values are recorded as zero,
+ * values above the highest trackable value are recorded into the last bucket.
+ *
+ * <p>Recording is lock-free. Threads record into stripes selected by their ids, so a stripe
+ * may be shared by several threads, the stripes are merged when a {@link Snapshot} is taken.
+ * The number of stripes is the number of available processors rounded up to a power of two,
+ * at most 64, and a stripe is allocated on first use. A stripe holds a {@code long} per bucket,
+ * with the default precision and highest trackable value that's 3712 buckets, about 29 kilobytes,
+ * so a histogram recorded by many threads of a 64-processor machine takes about 1.9 megabytes.
+ * A lower precision or highest trackable value reduces the number of buckets.
+ */
+@Beta
+public final class LogLinearHistogram {
+
+  /**
+   * An immutable view of histogram's distribution.
+   */
+  public static final class Snapshot {
+
+    private final int precision;
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    Snapshot(int precision, long[] counts, long sum, long max) {
+      this.precision = precision;
+      this.counts = counts;
+      long total = 0;
+      int highest = -1;
+      for (int i = 0; i < counts.length; i++) {
+        if (counts[i] != 0) {
+          total += counts[i];
+          highest = i;
+        }
+      }
+      this.count = total;
+      this.sum = sum;
+      // a concurrent reset can leave max behind the recorded buckets
+      this.max = (highest < 0) ? 0 : Math.max(max, lowestEquivalentValue(precision, highest));
+    }
+
+    public long count() {
+      return count;
+    }
+
+    public long sum() {
+      return sum;
+    }
+
+    public long max() {
+      return max;
+    }
+
+    public double mean() {
+      return (count == 0) ? 0.0 : (double) sum / count;
+    }
+
+    public long p50() {
+      return valueAtPercentile(50.0);
+    }
+
+    public long p99() {
+      return valueAtPercentile(99.0);
+    }
+
+    public long p999() {
+      return valueAtPercentile(99.9);
+    }
+
+    /**
+     * Returns the value that the given percentage of recorded values are less than or equal to.
+     *
+     * @param percentile the percentile, from 0.0 to 100.0
+     * @return the value at the given percentile
+     */
+    public long valueAtPercentile(double percentile) {
+      Objects.validArgument(percentile >= 0.0 && percentile <= 100.0
+          , "percentile <%s> must be in range [0, 100]", percentile);
+      return LogLinearHistogram.valueAtPercentile(precision, counts, counts.length, count, max, percentile);
+    }
+
+    /**
+     * Returns a new snapshot which combines this snapshot and the given one.
+     *
+     * @param other snapshot of a histogram with the same layout
+     * @return combined snapshot
+     */
+    public Snapshot merge(Snapshot other) {
+      Objects.validArgument(precision == other.precision && counts.length == other.counts.length
+          , "snapshots have different layouts");
+      long[] merged = counts.clone();
+      for (int i = 0; i < merged.length; i++) {
+        merged[i] += other.counts[i];
+      }
+      return new Snapshot(precision, merged, sum + other.sum, Math.max(max, other.max));
+    }
+
+    @Override public String toString() {
+      return "Snapshot{count=" + count + ", mean=" + mean() + ", p50=" + p50() + ", p99=" + p99()
+          + ", p999=" + p999() + ", max=" + max + '}';
+    }
+  }
+
+  private static final class Stripe {
+    final AtomicLongArray counts;
+    final AtomicLong count = new AtomicLong();
+    final AtomicLong sum = new AtomicLong();
+    final AtomicLong max = new AtomicLong();
+
+    Stripe(int length) {
+      counts = new AtomicLongArray(length);
+    }
+
+    void record(int index, long value) {
+      counts.getAndIncrement(index);
+      count.getAndIncrement();
+      sum.getAndAdd(value);
+      long m;
+      while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+        // retry
+      }
+    }
+  }
+
+  public static final int DEFAULT_PRECISION = 6;
+  public static final int MAX_PRECISION = 14;
+
+  private static final int MAX_STRIPES = 64;
+  private static final int STRIPES = stripes();
+
+  private static int stripes() {
+    int n = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() - 1) << 1;
+    return Math.min(Math.max(n, 1), MAX_STRIPES);
+  }
+
+  static long lowestEquivalentValue(int precision, int index) {
+    int subBucketCount = 1 << precision;
+    if (index < subBucketCount) {
+      return index;
+    }
+    int shift = (index >>> precision) - 1;
+    long subBucket = index & (subBucketCount - 1);
+    return (subBucketCount + subBucket) << shift;
+  }
+
+  static long valueAtPercentile(int precision, long[] counts, int length, long count, long max, double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * count));
+    long accumulated = 0;
+    for (int i = 0; i < length; i++) {
+      accumulated += counts[i];
+      if (accumulated >= rank) {
+        return Math.min(highestEquivalentValue(precision, i), max);
+      }
+    }
+    return max;
+  }
+
+  static long highestEquivalentValue(int precision, int index) {
+    int subBucketCount = 1 << precision;
+    if (index < subBucketCount) {
+      return index;
+    }
+    int shift = (index >>> precision) - 1;
+    return lowestEquivalentValue(precision, index) + (1L << shift) - 1;
+  }
+
+  private final int precision;
+  private final long subBucketCount;
+  private final long highestTrackableValue;
+  private final int length;
+
+  private final AtomicReferenceArray<Stripe> stripes = new AtomicReferenceArray<>(STRIPES);
+
+  /**
+   * Creates a new histogram with the default precision which tracks all positive long values.
+   */
+  public LogLinearHistogram() {
+    this(DEFAULT_PRECISION, Long.MAX_VALUE);
+  }
+
+  /**
+   * Creates a new histogram.
+   *
+   * @param precision the number of bits of sub-bucket resolution, from 1 to {@link #MAX_PRECISION}
+   * @param highestTrackableValue the highest value to be tracked without clamping
+   */
+  public LogLinearHistogram(int precision, long highestTrackableValue) {
+    Objects.validArgument(precision > 0 && precision <= MAX_PRECISION
+        , "precision <%s> must be in range [1, %s]", precision, MAX_PRECISION);
+    Objects.validArgument(highestTrackableValue > 0
+        , "highest trackable value <%s> must be greater than 0", highestTrackableValue);
+    this.precision = precision;
+    this.subBucketCount = 1L << precision;
+    this.highestTrackableValue = highestTrackableValue;
+    this.length = index(highestTrackableValue) + 1;
+  }
+
+  /**
+   * Returns a count of recorded values.
+   */
+  public long count() {
+    long count = 0;
+    for (int i = 0; i < STRIPES; i++) {
+      Stripe stripe = stripes.get(i);
+      if (stripe != null) {
+        count += stripe.count.get();
+      }
+    }
+    return count;
+  }
+
+  public int precision() {
+    return precision;
+  }
+
+  /**
+   * Records a value.
+   *
+   * @param value the value to record
+   */
+  public void record(long value) {
+    long v = (value < 0) ? 0 : value;
+    stripe().record(index(Math.min(v, highestTrackableValue)), v);
+  }
+
+  /**
+   * Returns a snapshot of the current distribution.
+   */
+  public Snapshot snapshot() {
+    return snapshot(false);
+  }
+
+  /**
+   * Returns a snapshot of the current distribution and resets the histogram.
+   * Every value recorded concurrently is counted either by this snapshot or by the next one.
+   */
+  public Snapshot snapshotAndReset() {
+    return snapshot(true);
+  }
+
+  /**
+   * Adds the counts of all stripes to {@code counts} without allocating a snapshot.
+   *
+   * @param counts an array of at least {@link #length()} elements
+   */
+  void collect(long[] counts) {
+    for (int i = 0; i < STRIPES; i++) {
+      Stripe stripe = stripes.get(i);
+      if (stripe != null) {
+        for (int j = 0; j < length; j++) {
+          counts[j] += stripe.counts.get(j);
+        }
+      }
+    }
+  }
+
+  int length() {
+    return length;
+  }
+
+  long max() {
+    long max = 0;
+    for (int i = 0; i < STRIPES; i++) {
+      Stripe stripe = stripes.get(i);
+      if (stripe != null) {
+        max = Math.max(max, stripe.max.get());
+      }
+    }
+    return max;
+  }
+
+  long sum() {
+    long sum = 0;
+    for (int i = 0; i < STRIPES; i++) {
+      Stripe stripe = stripes.get(i);
+      if (stripe != null) {
+        sum += stripe.sum.get();
+      }
+    }
+    return sum;
+  }
+
+  private int index(long value) {
+    if (value < subBucketCount) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - precision;
+    return ((shift + 1) << precision) + (int) ((value >>> shift) - subBucketCount);
+  }
+
+  private Snapshot snapshot(boolean reset) {
+    long[] counts = new long[length];
+    long sum = 0;
+    long max = 0;
+    for (int i = 0; i < STRIPES; i++) {
+      Stripe stripe = stripes.get(i);
+      if (stripe == null) {
+        continue;
+      }
+      long swapped = 0;
+      for (int j = 0; j < length; j++) {
+        long c = reset ? stripe.counts.getAndSet(j, 0) : stripe.counts.get(j);
+        counts[j] += c;
+        swapped += c;
+      }
+      if (reset) {
+        // the count follows the swapped buckets, a concurrent record doesn't leave it drifted
+        stripe.count.getAndAdd(-swapped);
+        sum += stripe.sum.getAndSet(0);
+        max = Math.max(max, stripe.max.getAndSet(0));
+      } else {
+        sum += stripe.sum.get();
+        max = Math.max(max, stripe.max.get());
+      }
+    }
+    return new Snapshot(precision, counts, sum, max);
+  }
+
+  private Stripe stripe() {
+    int i = (int) Thread.currentThread().getId() & (STRIPES - 1);
+    Stripe stripe = stripes.get(i);
+    if (stripe == null) {
+      Stripe created = new Stripe(length);
+      stripe = stripes.compareAndSet(i, null, created) ? created : stripes.get(i);
+    }
+    return stripe;
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.monitoring;
+
+import org.nightcode.common.annotations.Beta;
+
+/**
+ * A meter collector which measures the rate of events: exponentially weighted
+ * 1, 5 and 15-minute rates and the rate over a sliding window.
+ */
+@Beta
+public interface Meter extends Collector {
+
+  /**
+   * An interface for Meter's child.
+   */
+  interface Child extends Collector {
+
+    /**
+     * Marks the occurrence of an event.
+     */
+    void mark();
+
+    /**
+     * Marks the occurrence of {@code n} events.
+     *
+     * @param n the number of events, must not be negative
+     */
+    void mark(long n);
+
+    /**
+     * Returns a count of events.
+     */
+    long count();
+
+    /**
+     * Returns the one-minute exponentially weighted rate, in events per second.
+     */
+    double oneMinuteRate();
+
+    /**
+     * Returns the five-minute exponentially weighted rate, in events per second.
+     */
+    double fiveMinuteRate();
+
+    /**
+     * Returns the fifteen-minute exponentially weighted rate, in events per second.
+     */
+    double fifteenMinuteRate();
+
+    /**
+     * Returns the rate over the sliding window, in events per second.
+     */
+    double windowRate();
+  }
+
+  /**
+   * Marks the occurrence of an event.
+   */
+  void mark();
+
+  /**
+   * Marks the occurrence of {@code n} events.
+   *
+   * @param n the number of events, must not be negative
+   */
+  void mark(long n);
+
+  /**
+   * Returns a count of events.
+   */
+  long count();
+
+  /**
+   * Returns the one-minute exponentially weighted rate, in events per second.
+   */
+  double oneMinuteRate();
+
+  /**
+   * Returns the five-minute exponentially weighted rate, in events per second.
+   */
+  double fiveMinuteRate();
+
+  /**
+   * Returns the fifteen-minute exponentially weighted rate, in events per second.
+   */
+  double fifteenMinuteRate();
+
+  /**
+   * Returns the rate over the sliding window, in events per second.
+   */
+  double windowRate();
+
+  /**
+   * Set tag values.
+   *
+   * @param tagValues tag values
+   * @return meter
+   */
+  Child tags(String... tagValues);
+}
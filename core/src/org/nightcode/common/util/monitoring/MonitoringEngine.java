@@ -16,6 +16,7 @@ package org.nightcode.common.util.monitoring;
 
 import org.nightcode.common.annotations.Beta;
 
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 
 /**
@@ -32,8 +33,24 @@ public interface MonitoringEngine {
 
   Counter registerCounter(String name, String help, String... tagNames);
 
+  /**
+   * Registers a gauge. Engines which don't support gauges return a gauge which reads the supplier
+   * but isn't exported.
+   */
+  default Gauge registerGauge(String name, String help, LongSupplier supplier) {
+    java.util.Objects.requireNonNull(supplier, "supplier");
+    return supplier::getAsLong;
+  }
+
   Histogram registerHistogram(String name, String help, String... tagNames);
 
+  /**
+   * Registers a meter. Engines which don't support meters return a meter which discards marks.
+   */
+  default Meter registerMeter(String name, String help, String... tagNames) {
+    return NoopMonitoringEngine.NOOP_METER;
+  }
+
   Timer registerTimer(String name, String help, String... tagNames);
 
   char nameSeparator();
@@ -17,6 +17,7 @@ package org.nightcode.common.util.monitoring;
 import org.nightcode.common.annotations.Beta;
 
 import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 
 /**
@@ -25,6 +26,77 @@ import java.util.function.Supplier;
 @Beta
 public final class NoopMonitoringEngine implements MonitoringEngine {
 
+  /**
+   * A meter which discards marks, shared since it has no state.
+   */
+  static final Meter NOOP_METER = new NoopMeter();
+
+  private static final class NoopMeterChild implements Meter.Child {
+    @Override public void mark() {
+      // do nothing
+    }
+
+    @Override public void mark(long n) {
+      // do nothing
+    }
+
+    @Override public long count() {
+      return 0;
+    }
+
+    @Override public double oneMinuteRate() {
+      return 0;
+    }
+
+    @Override public double fiveMinuteRate() {
+      return 0;
+    }
+
+    @Override public double fifteenMinuteRate() {
+      return 0;
+    }
+
+    @Override public double windowRate() {
+      return 0;
+    }
+  }
+
+  private static final class NoopMeter implements Meter {
+    private static final Child CHILD = new NoopMeterChild();
+
+    @Override public void mark() {
+      // do nothing
+    }
+
+    @Override public void mark(long n) {
+      // do nothing
+    }
+
+    @Override public long count() {
+      return 0;
+    }
+
+    @Override public double oneMinuteRate() {
+      return 0;
+    }
+
+    @Override public double fiveMinuteRate() {
+      return 0;
+    }
+
+    @Override public double fifteenMinuteRate() {
+      return 0;
+    }
+
+    @Override public double windowRate() {
+      return 0;
+    }
+
+    @Override public Child tags(String... tagValues) {
+      return CHILD;
+    }
+  }
+
   @Override public boolean deregister(Collector collector) {
     return true;
   }
@@ -85,6 +157,10 @@ public final class NoopMonitoringEngine implements MonitoringEngine {
     };
   }
 
+  @Override public Gauge registerGauge(String name, String help, LongSupplier supplier) {
+    return () -> 0;
+  }
+
   @Override public Histogram registerHistogram(String name, String help, String... tagNames) {
     return new Histogram() {
       @Override public Child tags(String... tagValues) {
@@ -117,6 +193,10 @@ public final class NoopMonitoringEngine implements MonitoringEngine {
     };
   }
 
+  @Override public Meter registerMeter(String name, String help, String... tagNames) {
+    return NOOP_METER;
+  }
+
   @Override public Timer registerTimer(String name, String help, String... tagNames) {
     return new Timer() {
       @Override public Child tags(String... tagValues) {
@@ -129,6 +209,14 @@ public final class NoopMonitoringEngine implements MonitoringEngine {
             return () -> 0;
           }
 
+          @Override public long begin() {
+            return 0;
+          }
+
+          @Override public long end(long start) {
+            return 0;
+          }
+
           @Override public void update(long duration, TimeUnit unit) {
             // do nothing
           }
@@ -143,6 +231,14 @@ public final class NoopMonitoringEngine implements MonitoringEngine {
         return () -> 0;
       }
 
+      @Override public long begin() {
+        return 0;
+      }
+
+      @Override public long end(long start) {
+        return 0;
+      }
+
       @Override public void update(long duration, TimeUnit unit) {
         // do nothing
       }
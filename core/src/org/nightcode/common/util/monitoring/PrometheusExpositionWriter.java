@@ -0,0 +1,383 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.monitoring;
+
+import org.nightcode.common.annotations.Beta;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes collectors of {@link InMemoryMonitoringEngine} in Prometheus text exposition format (version 0.0.4).
+ *
+ * <p>Counters are exposed as gauges since they may be decremented, while a Prometheus counter
+ * must be monotonic. Meters are exposed as counters of marked events
+ * (Prometheus derives rates itself), histograms and timers
+ * are exposed as summaries with 0.5, 0.99, 0.999 and 1 (max) quantiles, timers in seconds.
+ * Collectors which do not belong to the in-memory engine are skipped. Characters of metric and
+ * label names which Prometheus doesn't allow, e.g. the '-' of a service name or the engine's '.'
+ * name separator, are replaced by '_'.
+ *
+ * <p>Output is encoded into an internal buffer which is reused between calls,
+ * so no intermediate strings are built while walking the series.
+ */
+@Beta
+public final class PrometheusExpositionWriter {
+
+  public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private static final int INITIAL_CAPACITY = 8192;
+  private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+  private static final byte[] HELP = ascii("# HELP ");
+  private static final byte[] TYPE = ascii("# TYPE ");
+  private static final byte[] COUNTER = ascii(" counter\n");
+  private static final byte[] GAUGE = ascii(" gauge\n");
+  private static final byte[] SUMMARY = ascii(" summary\n");
+  private static final byte[] QUANTILE = ascii("quantile=\"");
+  private static final byte[] SUM = ascii("_sum");
+  private static final byte[] COUNT = ascii("_count");
+
+  private static final double[] PERCENTILES = {50.0, 99.0, 99.9, 100.0};
+  private static final byte[][] QUANTILES = {ascii("0.5"), ascii("0.99"), ascii("0.999"), ascii("1")};
+
+  private static byte[] ascii(String value) {
+    return value.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private final InMemoryMonitoringEngine engine;
+
+  private byte[] buffer = new byte[INITIAL_CAPACITY];
+  private int position;
+  private long[] counts = new long[0];
+
+  public PrometheusExpositionWriter(InMemoryMonitoringEngine engine) {
+    this.engine = java.util.Objects.requireNonNull(engine, "engine");
+  }
+
+  /**
+   * Writes all registered collectors to the given stream.
+   *
+   * @param out output stream
+   * @throws IOException if an I/O error occurs
+   */
+  public synchronized void write(OutputStream out) throws IOException {
+    encode();
+    out.write(buffer, 0, position);
+  }
+
+  /**
+   * Writes all registered collectors and returns a buffer which remains valid until the next call.
+   *
+   * @return a read-only view of the internal buffer
+   */
+  public synchronized ByteBuffer write() {
+    encode();
+    return ByteBuffer.wrap(buffer, 0, position).asReadOnlyBuffer();
+  }
+
+  private void encode() {
+    position = 0;
+    for (Collector collector : engine.collectors()) {
+      if (collector instanceof StripedCounter) {
+        writeCounter((StripedCounter) collector);
+      } else if (collector instanceof InMemoryHistogram) {
+        writeHistogram((InMemoryHistogram) collector);
+      } else if (collector instanceof InMemoryTimer) {
+        writeTimer((InMemoryTimer) collector);
+      } else if (collector instanceof InMemoryMeter) {
+        writeMeter((InMemoryMeter) collector);
+      } else if (collector instanceof InMemoryGauge) {
+        writeGauge((InMemoryGauge) collector);
+      }
+    }
+  }
+
+  private void writeCounter(StripedCounter counter) {
+    writeHeader(counter, GAUGE);
+    String[] tagNames = counter.tagNames();
+    long parentCount = counter.getCount();
+    if (tagNames.length == 0 || parentCount != 0) {
+      writeSample(counter.name(), tagNames, null, parentCount);
+    }
+    counter.forEachChild((tagValues, cell) -> writeSample(counter.name(), tagNames, tagValues, cell.getCount()));
+  }
+
+  private void writeGauge(InMemoryGauge gauge) {
+    writeHeader(gauge, GAUGE);
+    writeSample(gauge.name(), gauge.tagNames(), null, gauge.value());
+  }
+
+  private void writeMeter(InMemoryMeter meter) {
+    writeHeader(meter, COUNTER);
+    String[] tagNames = meter.tagNames();
+    long parentCount = meter.count();
+    if (tagNames.length == 0 || parentCount != 0) {
+      writeSample(meter.name(), tagNames, null, parentCount);
+    }
+    meter.forEachChild((tagValues, cell) -> writeSample(meter.name(), tagNames, tagValues, cell.count()));
+  }
+
+  private void writeHistogram(InMemoryHistogram histogram) {
+    writeHeader(histogram, SUMMARY);
+    String[] tagNames = histogram.tagNames();
+    LogLinearHistogram parent = histogram.cell().histogram();
+    if (tagNames.length == 0 || parent.count() != 0) {
+      writeSummary(histogram.name(), tagNames, null, parent, false);
+    }
+    histogram.forEachChild((tagValues, cell) -> writeSummary(histogram.name(), tagNames, tagValues, cell.histogram(), false));
+  }
+
+  private void writeTimer(InMemoryTimer timer) {
+    writeHeader(timer, SUMMARY);
+    String[] tagNames = timer.tagNames();
+    LogLinearHistogram parent = timer.cell().histogram();
+    if (tagNames.length == 0 || parent.count() != 0) {
+      writeSummary(timer.name(), tagNames, null, parent, true);
+    }
+    timer.forEachChild((tagValues, cell) -> writeSummary(timer.name(), tagNames, tagValues, cell.histogram(), true));
+  }
+
+  private void writeHeader(InMemoryCollector collector, byte[] type) {
+    if (!collector.help().isEmpty()) {
+      writeBytes(HELP);
+      writeIdentifier(collector.name(), true);
+      writeByte(' ');
+      writeEscaped(collector.help(), false);
+      writeByte('\n');
+    }
+    writeBytes(TYPE);
+    writeIdentifier(collector.name(), true);
+    writeBytes(type);
+  }
+
+  private void writeSummary(String name, String[] tagNames, String[] tagValues, LogLinearHistogram histogram,
+      boolean seconds) {
+    int length = histogram.length();
+    if (counts.length < length) {
+      counts = new long[length];
+    } else {
+      Arrays.fill(counts, 0, length, 0L);
+    }
+    histogram.collect(counts);
+    long count = 0;
+    for (int i = 0; i < length; i++) {
+      count += counts[i];
+    }
+    long max = histogram.max();
+    for (int i = 0; i < PERCENTILES.length; i++) {
+      long value = LogLinearHistogram.valueAtPercentile(histogram.precision(), counts, length, count, max, PERCENTILES[i]);
+      writeName(name, null);
+      writeTags(tagNames, tagValues, QUANTILES[i]);
+      writeValue(value, seconds);
+    }
+    writeName(name, SUM);
+    writeTags(tagNames, tagValues, null);
+    writeValue(histogram.sum(), seconds);
+    writeName(name, COUNT);
+    writeTags(tagNames, tagValues, null);
+    writeValue(count, false);
+  }
+
+  private void writeSample(String name, String[] tagNames, String[] tagValues, long value) {
+    writeName(name, null);
+    writeTags(tagNames, tagValues, null);
+    writeValue(value, false);
+  }
+
+  private void writeName(String name, byte[] suffix) {
+    writeIdentifier(name, true);
+    if (suffix != null) {
+      writeBytes(suffix);
+    }
+  }
+
+  private void writeTags(String[] tagNames, String[] tagValues, byte[] quantile) {
+    boolean tagged = tagValues != null && tagValues.length > 0;
+    if (!tagged && quantile == null) {
+      return;
+    }
+    writeByte('{');
+    if (tagged) {
+      for (int i = 0; i < tagValues.length; i++) {
+        if (i > 0) {
+          writeByte(',');
+        }
+        writeIdentifier(tagNames[i], false);
+        writeByte('=');
+        writeByte('"');
+        writeEscaped(tagValues[i], true);
+        writeByte('"');
+      }
+    }
+    if (quantile != null) {
+      if (tagged) {
+        writeByte(',');
+      }
+      writeBytes(QUANTILE);
+      writeBytes(quantile);
+      writeByte('"');
+    }
+    writeByte('}');
+  }
+
+  private void writeValue(long value, boolean seconds) {
+    writeByte(' ');
+    if (seconds) {
+      writeSeconds(value);
+    } else {
+      writeLong(value);
+    }
+    writeByte('\n');
+  }
+
+  private void writeSeconds(long nanos) {
+    if (nanos < 0) {
+      writeByte('-');
+      nanos = -nanos;
+    }
+    writeLong(nanos / NANOS_PER_SECOND);
+    long fraction = nanos % NANOS_PER_SECOND;
+    if (fraction == 0) {
+      return;
+    }
+    writeByte('.');
+    int digits = 9;
+    while (fraction % 10 == 0) {
+      fraction /= 10;
+      digits--;
+    }
+    ensureCapacity(digits);
+    for (int i = position + digits - 1; i >= position; i--) {
+      buffer[i] = (byte) ('0' + fraction % 10);
+      fraction /= 10;
+    }
+    position += digits;
+  }
+
+  private void writeLong(long value) {
+    if (value == Long.MIN_VALUE) {
+      writeString("-9223372036854775808");
+      return;
+    }
+    ensureCapacity(20);
+    if (value < 0) {
+      buffer[position++] = '-';
+      value = -value;
+    }
+    int digits = 1;
+    for (long v = value / 10; v != 0; v /= 10) {
+      digits++;
+    }
+    for (int i = position + digits - 1; i >= position; i--) {
+      buffer[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    position += digits;
+  }
+
+  private void writeEscaped(String value, boolean labelValue) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '\\') {
+        writeByte('\\');
+        writeByte('\\');
+      } else if (c == '\n') {
+        writeByte('\\');
+        writeByte('n');
+      } else if (c == '"' && labelValue) {
+        writeByte('\\');
+        writeByte('"');
+      } else {
+        i = writeChar(value, i);
+      }
+    }
+  }
+
+  /**
+   * Writes a metric name, matching {@code [a-zA-Z_:][a-zA-Z0-9_:]*}, or a label name, matching
+   * {@code [a-zA-Z_][a-zA-Z0-9_]*}: other characters are replaced by '_' and a leading digit
+   * is preceded by '_'.
+   */
+  private void writeIdentifier(String name, boolean metricName) {
+    ensureCapacity(name.length() + 1);
+    if (name.isEmpty() || (name.charAt(0) >= '0' && name.charAt(0) <= '9')) {
+      buffer[position++] = '_';
+    }
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_'
+          || (c == ':' && metricName);
+      buffer[position++] = (byte) (valid ? c : '_');
+    }
+  }
+
+  private void writeString(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      i = writeChar(value, i);
+    }
+  }
+
+  /**
+   * Encodes the character at the given index as UTF-8.
+   *
+   * @return the index of the last consumed character
+   */
+  private int writeChar(String value, int index) {
+    char c = value.charAt(index);
+    ensureCapacity(4);
+    if (c < 0x80) {
+      buffer[position++] = (byte) c;
+    } else if (c < 0x800) {
+      buffer[position++] = (byte) (0xC0 | (c >> 6));
+      buffer[position++] = (byte) (0x80 | (c & 0x3F));
+    } else if (Character.isHighSurrogate(c) && index + 1 < value.length()
+        && Character.isLowSurrogate(value.charAt(index + 1))) {
+      int cp = Character.toCodePoint(c, value.charAt(index + 1));
+      buffer[position++] = (byte) (0xF0 | (cp >> 18));
+      buffer[position++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+      buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+      buffer[position++] = (byte) (0x80 | (cp & 0x3F));
+      return index + 1;
+    } else if (Character.isSurrogate(c)) {
+      buffer[position++] = '?';
+    } else {
+      buffer[position++] = (byte) (0xE0 | (c >> 12));
+      buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+      buffer[position++] = (byte) (0x80 | (c & 0x3F));
+    }
+    return index;
+  }
+
+  private void writeByte(char c) {
+    ensureCapacity(1);
+    buffer[position++] = (byte) c;
+  }
+
+  private void writeBytes(byte[] bytes) {
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, buffer, position, bytes.length);
+    position += bytes.length;
+  }
+
+  private void ensureCapacity(int length) {
+    if (position + length > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, position + length));
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.monitoring;
+
+import org.nightcode.common.annotations.Beta;
+import org.nightcode.common.util.logging.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A minimal HTTP endpoint which exposes {@link InMemoryMonitoringEngine} collectors
+ * for local Prometheus scraping. Requests are served by a single dispatcher thread.
+ */
+@Beta
+public final class PrometheusHttpServer implements AutoCloseable {
+
+  public static final String DEFAULT_PATH = "/metrics";
+
+  private final HttpServer server;
+  private final PrometheusExpositionWriter writer;
+
+  public PrometheusHttpServer(InMemoryMonitoringEngine engine, InetSocketAddress address) throws IOException {
+    this(engine, address, DEFAULT_PATH);
+  }
+
+  /**
+   * Creates a new server bound to the given address, the server does not accept requests
+   * until {@link #start()} is called.
+   *
+   * @param engine monitoring engine
+   * @param address the address to bind
+   * @param path the context path of metrics
+   * @throws IOException if the server cannot be bound
+   */
+  public PrometheusHttpServer(InMemoryMonitoringEngine engine, InetSocketAddress address, String path)
+      throws IOException {
+    this.writer = new PrometheusExpositionWriter(engine);
+    this.server = HttpServer.create(address, 0);
+    this.server.createContext(path, this::handle);
+  }
+
+  public InetSocketAddress address() {
+    return server.getAddress();
+  }
+
+  public void start() {
+    server.start();
+  }
+
+  @Override public void close() {
+    server.stop(0);
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      exchange.getResponseHeaders().set("Content-Type", PrometheusExpositionWriter.CONTENT_TYPE);
+      exchange.sendResponseHeaders(200, 0);
+      try (OutputStream out = exchange.getResponseBody()) {
+        writer.write(out);
+      }
+    } catch (IOException | RuntimeException ex) {
+      Log.warn().log(getClass(), ex, "[PrometheusHttpServer]: unable to serve metrics");
+      throw ex;
+    } finally {
+      exchange.close();
+    }
+  }
+}
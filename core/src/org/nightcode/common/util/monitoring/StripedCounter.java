@@ -0,0 +1,82 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.monitoring;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link Counter} implementation which spreads contended updates over striped cells.
+ */
+final class StripedCounter extends TaggedInMemoryCollector<StripedCounter.Cell> implements Counter {
+
+  static final class Cell implements Counter.Child {
+
+    private final LongAdder adder = new LongAdder();
+
+    @Override public void inc() {
+      adder.increment();
+    }
+
+    @Override public void inc(long value) {
+      adder.add(value);
+    }
+
+    @Override public void dec() {
+      adder.decrement();
+    }
+
+    @Override public void dec(long value) {
+      adder.add(-value);
+    }
+
+    @Override public long getCount() {
+      return adder.sum();
+    }
+  }
+
+  private final Cell cell = new Cell();
+
+  StripedCounter(String name, String help, String... tagNames) {
+    super(name, help, tagNames);
+  }
+
+  @Override public void inc() {
+    cell.inc();
+  }
+
+  @Override public void inc(long value) {
+    cell.inc(value);
+  }
+
+  @Override public void dec() {
+    cell.dec();
+  }
+
+  @Override public void dec(long value) {
+    cell.dec(value);
+  }
+
+  @Override public long getCount() {
+    return cell.getCount();
+  }
+
+  @Override public Child tags(String... tagValues) {
+    return child(tagValues);
+  }
+
+  @Override Cell newChild(String[] tagValues) {
+    return new Cell();
+  }
+}
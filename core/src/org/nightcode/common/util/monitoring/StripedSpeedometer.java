@@ -0,0 +1,128 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.monitoring;
+
+import org.nightcode.common.annotations.Beta;
+import org.nightcode.common.base.Objects;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A lock-free object that measures the magnitude of speed.
+ *
+ * <p>Unlike {@link Speedometer} producers never serialize: units are accumulated
+ * in striped cells and {@link #mark(double)} neither takes a lock nor reads the clock.
+ * The averaging window is an immutable object which is rotated with a single CAS
+ * by whichever thread observes that the averaging period has elapsed. Within a period
+ * the reported speed blends the speed of the previous period with the units accumulated
+ * so far, as {@link Speedometer} does.
+ */
+@Beta
+public final class StripedSpeedometer {
+
+  private static final class Window {
+    final long startTime;
+    final double startTotal;
+    final double speed; // units per micro
+
+    Window(long startTime, double startTotal, double speed) {
+      this.startTime = startTime;
+      this.startTotal = startTotal;
+      this.speed = speed;
+    }
+  }
+
+  // Constants for conversion
+  private static final long C0 = 1000L;
+  private static final long C1 = C0 * 1000L;
+
+  private final long averagingPeriod;
+  private final LongSupplier nanoClock;
+
+  private final DoubleAdder total = new DoubleAdder();
+  private final AtomicReference<Window> window;
+
+  /**
+   * Creates a new speedometer, using the predefined averaging period equals to 1 second.
+   */
+  public StripedSpeedometer() {
+    this(1L, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Creates a new speedometer, using the specified averaging period.
+   *
+   * @param averagingPeriod the averaging period
+   * @param timeUnit the time unit of the averaging period argument
+   */
+  public StripedSpeedometer(long averagingPeriod, TimeUnit timeUnit) {
+    this(averagingPeriod, timeUnit, System::nanoTime);
+  }
+
+  StripedSpeedometer(long averagingPeriod, TimeUnit timeUnit, LongSupplier nanoClock) {
+    Objects.validArgument(averagingPeriod > 0L, "averaging period <%s> must be greater than 0"
+        , averagingPeriod);
+    java.util.Objects.requireNonNull(timeUnit, "time unit");
+    this.averagingPeriod = timeUnit.toMicros(averagingPeriod);
+    this.nanoClock = nanoClock;
+    this.window = new AtomicReference<>(new Window(nanoClock.getAsLong(), 0.0, 0.0));
+  }
+
+  /**
+   * Returns the value of current speed (units per second).
+   *
+   * @return the value of current speed
+   */
+  public double getSpeed() {
+    final long currentTime = nanoClock.getAsLong();
+    for (;;) {
+      Window w = window.get();
+      double t = total.sum();
+      long elapsedTime = (currentTime - w.startTime) / C0; // nanoseconds to micros
+      double quantity = t - w.startTotal;
+      if (elapsedTime < averagingPeriod) {
+        double speed = (w.speed * (averagingPeriod - Math.max(elapsedTime, 0L)) + quantity) / averagingPeriod;
+        return speed * C1; // units per micro to units per second
+      }
+      double speed = quantity / elapsedTime;
+      if (window.compareAndSet(w, new Window(currentTime, t, speed))) {
+        return speed * C1;
+      }
+    }
+  }
+
+  /**
+   * Adds units without computing the speed.
+   *
+   * @param units units
+   */
+  public void mark(double units) {
+    total.add(units);
+  }
+
+  /**
+   * Updates speed value.
+   *
+   * @param units units
+   * @return the current speed value (units per second)
+   */
+  public double update(final double units) {
+    total.add(units);
+    return getSpeed();
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.monitoring;
+
+import org.nightcode.common.base.Objects;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A concurrent lookup of collector's children by tag values.
+ *
+ * <p>Lookups are lock-free and do not allocate: the table is an open-addressing
+ * array of immutable entries which is probed with the caller's tag values array.
+ * Only the insertion of a new child takes the lock.
+ *
+ * @param <C> the type of child
+ */
+final class TaggedChildren<C> {
+
+  private static final class Entry<C> {
+    final String[] tagValues;
+    final int hash;
+    final C child;
+
+    Entry(String[] tagValues, int hash, C child) {
+      this.tagValues = tagValues;
+      this.hash = hash;
+      this.child = child;
+    }
+  }
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private static int hash(String[] tagValues) {
+    int h = Arrays.hashCode(tagValues);
+    return h ^ (h >>> 16);
+  }
+
+  private final int tagCount;
+  private final Function<String[], C> factory;
+
+  private volatile Entry<C>[] table;
+  private int size; // guarded by this
+
+  TaggedChildren(int tagCount, Function<String[], C> factory) {
+    this.tagCount = tagCount;
+    this.factory = factory;
+    this.table = newTable(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Returns the child associated with the given tag values, creating it if needed.
+   *
+   * @param tagValues tag values
+   * @return the child
+   */
+  C get(String[] tagValues) {
+    int hash = hash(tagValues);
+    Entry<C>[] tab = table;
+    int mask = tab.length - 1;
+    for (int i = hash & mask; ; i = (i + 1) & mask) {
+      Entry<C> e = tab[i];
+      if (e == null) {
+        break;
+      }
+      if (e.hash == hash && Arrays.equals(e.tagValues, tagValues)) {
+        return e.child;
+      }
+    }
+    return putIfAbsent(tagValues, hash);
+  }
+
+  void forEach(BiConsumer<String[], ? super C> action) {
+    for (Entry<C> e : table) {
+      if (e != null) {
+        action.accept(e.tagValues, e.child);
+      }
+    }
+  }
+
+  int size() {
+    synchronized (this) {
+      return size;
+    }
+  }
+
+  private synchronized C putIfAbsent(String[] tagValues, int hash) {
+    Objects.validArgument(tagValues.length == tagCount, "expected %s tag values but was %s"
+        , tagCount, tagValues.length);
+    for (String tagValue : tagValues) {
+      java.util.Objects.requireNonNull(tagValue, "tag value");
+    }
+
+    Entry<C>[] tab = table;
+    int mask = tab.length - 1;
+    int i = hash & mask;
+    for (Entry<C> e; (e = tab[i]) != null; i = (i + 1) & mask) {
+      if (e.hash == hash && Arrays.equals(e.tagValues, tagValues)) {
+        return e.child;
+      }
+    }
+
+    String[] copy = tagValues.clone();
+    C child = factory.apply(copy);
+    Entry<C> entry = new Entry<>(copy, hash, child);
+    if ((size + 1) << 1 > tab.length) {
+      Entry<C>[] newTab = newTable(tab.length << 1);
+      insert(newTab, entry);
+      for (Entry<C> e : tab) {
+        if (e != null) {
+          insert(newTab, e);
+        }
+      }
+      table = newTab;
+    } else {
+      // entries have only final fields, so readers observe them fully constructed
+      tab[i] = entry;
+    }
+    size++;
+    return child;
+  }
+
+  private static <C> void insert(Entry<C>[] tab, Entry<C> entry) {
+    int mask = tab.length - 1;
+    int i = entry.hash & mask;
+    while (tab[i] != null) {
+      i = (i + 1) & mask;
+    }
+    tab[i] = entry;
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static <C> Entry<C>[] newTable(int capacity) {
+    return (Entry<C>[]) new Entry[capacity];
+  }
+}
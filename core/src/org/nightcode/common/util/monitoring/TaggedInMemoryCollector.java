@@ -0,0 +1,42 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.monitoring;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Base class for collectors of {@link InMemoryMonitoringEngine} which have tagged children.
+ *
+ * @param <C> the type of collector's child
+ */
+abstract class TaggedInMemoryCollector<C> extends InMemoryCollector {
+
+  private final TaggedChildren<C> children;
+
+  TaggedInMemoryCollector(String name, String help, String... tagNames) {
+    super(name, help, tagNames);
+    this.children = new TaggedChildren<>(tagNames.length, this::newChild);
+  }
+
+  final C child(String[] tagValues) {
+    return children.get(tagValues);
+  }
+
+  final void forEachChild(BiConsumer<String[], ? super C> action) {
+    children.forEach(action);
+  }
+
+  abstract C newChild(String[] tagValues);
+}
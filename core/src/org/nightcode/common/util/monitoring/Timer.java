@@ -60,15 +60,36 @@ public interface Timer extends Collector {
      */
     void update(long duration, TimeUnit unit);
 
+    /**
+     * Returns a start time to be passed to {@link #end(long)}, unlike
+     * {@link #startTimer()} it does not allocate a context.
+     */
+    default long begin() {
+      return System.nanoTime();
+    }
+
+    /**
+     * Updates the timer with the difference between current time and {@code start}
+     * obtained from {@link #begin()}.
+     *
+     * @param start start time
+     * @return the duration in nanoseconds
+     */
+    default long end(long start) {
+      long duration = System.nanoTime() - start;
+      update(duration, TimeUnit.NANOSECONDS);
+      return duration;
+    }
+
     /**
      * Executes callable code.
      */
     default <E> E time(Callable<E> event) throws Exception {
-      Timer.Context context = startTimer();
+      long start = begin();
       try {
         return event.call();
       } finally {
-        context.stop();
+        end(start);
       }
     }
 
@@ -76,11 +97,11 @@ public interface Timer extends Collector {
      * Executes runnable code.
      */
     default void time(Runnable event) {
-      Timer.Context context = startTimer();
+      long start = begin();
       try {
         event.run();
       } finally {
-        context.stop();
+        end(start);
       }
     }
   }
@@ -108,15 +129,36 @@ public interface Timer extends Collector {
    */
   void update(long duration, TimeUnit unit);
 
+  /**
+   * Returns a start time to be passed to {@link #end(long)}, unlike
+   * {@link #startTimer()} it does not allocate a context.
+   */
+  default long begin() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Updates the timer with the difference between current time and {@code start}
+   * obtained from {@link #begin()}.
+   *
+   * @param start start time
+   * @return the duration in nanoseconds
+   */
+  default long end(long start) {
+    long duration = System.nanoTime() - start;
+    update(duration, TimeUnit.NANOSECONDS);
+    return duration;
+  }
+
   /**
    * Executes callable code.
    */
   default <E> E time(Callable<E> event) throws Exception {
-    Context context = startTimer();
+    long start = begin();
     try {
       return event.call();
     } finally {
-      context.stop();
+      end(start);
     }
   }
 
@@ -124,11 +166,11 @@ public interface Timer extends Collector {
    * Executes runnable code.
    */
   default void time(Runnable event) {
-    Context context = startTimer();
+    long start = begin();
     try {
       event.run();
     } finally {
-      context.stop();
+      end(start);
     }
   }
 }
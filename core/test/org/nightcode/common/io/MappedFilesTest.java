@@ -0,0 +1,49 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.io;
+
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Unit test for {@link MappedFiles}.
+ */
+public class MappedFilesTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test public void mapUnmapAndTruncate() throws Exception {
+    Path file = folder.getRoot().toPath().resolve("segment");
+    MappedByteBuffer buffer = MappedFiles.map(file, 0L, 4096);
+    assertEquals(4096L, Files.size(file));
+    buffer.putLong(42L);
+    MappedFiles.unmap(buffer);
+    MappedFiles.truncate(file, Long.BYTES);
+
+    MappedByteBuffer reopened = MappedFiles.map(file, 0L, Long.BYTES);
+    assertEquals(42L, reopened.getLong(0));
+    MappedFiles.unmap(reopened);
+    Files.delete(file);
+    assertFalse(Files.exists(file));
+  }
+}
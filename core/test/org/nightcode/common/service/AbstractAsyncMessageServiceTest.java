@@ -16,24 +16,40 @@
 
 package org.nightcode.common.service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import org.easymock.EasyMock;
+import org.nightcode.common.util.monitoring.InMemoryMonitoringEngine;
+import org.nightcode.common.util.monitoring.PrometheusExpositionWriter;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Unit test for {@link AbstractAsyncMessageService}.
  */
 public class AbstractAsyncMessageServiceTest {
 
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
   @Test public void submit() throws Exception {    
     @SuppressWarnings("unchecked")
     BlockingQueue<Boolean> mockQueue = EasyMock.createMock(BlockingQueue.class);
@@ -93,4 +109,581 @@ public class AbstractAsyncMessageServiceTest {
 
     Assert.assertFalse(cf.get(1000, TimeUnit.MILLISECONDS));
   }
+
+  @Test public void batchMode() throws Exception {
+    CountDownLatch firstBatch = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(11);
+    List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+    AbstractAsyncMessageService<Integer> service = new AbstractAsyncMessageService<Integer>("test") {
+      {
+        setBatchMode(4, 0, TimeUnit.MILLISECONDS);
+      }
+
+      @Override protected void process(Integer message) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override protected void process(List<Integer> messages) throws Exception {
+        batches.add(new ArrayList<>(messages));
+        firstBatch.countDown();
+        release.await();
+        for (int i = 0; i < messages.size(); i++) {
+          done.countDown();
+        }
+      }
+    };
+    service.start().get();
+    assertTrue(service.submit(0));
+    assertTrue(firstBatch.await(1, TimeUnit.SECONDS));
+    for (int i = 1; i <= 10; i++) {
+      assertTrue(service.submit(i));
+    }
+    release.countDown();
+    assertTrue(done.await(1, TimeUnit.SECONDS));
+    service.stop().get();
+
+    assertEquals(Arrays.asList(
+        Arrays.asList(0), Arrays.asList(1, 2, 3, 4), Arrays.asList(5, 6, 7, 8), Arrays.asList(9, 10)), batches);
+  }
+
+  @Test public void batchLatency() throws Exception {
+    CountDownLatch done = new CountDownLatch(1);
+    List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+    AbstractAsyncMessageService<Integer> service = new AbstractAsyncMessageService<Integer>("test") {
+      {
+        setBatchMode(100, 1, TimeUnit.SECONDS);
+      }
+
+      @Override protected void process(Integer message) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override protected void process(List<Integer> messages) {
+        batches.add(new ArrayList<>(messages));
+        done.countDown();
+      }
+    };
+    service.start().get();
+    for (int i = 0; i < 3; i++) {
+      assertTrue(service.submit(i));
+      Thread.sleep(10);
+    }
+    assertTrue(done.await(2, TimeUnit.SECONDS));
+    service.stop().get();
+
+    assertEquals(Arrays.asList(Arrays.asList(0, 1, 2)), batches);
+  }
+
+  @Test public void batchInterruptedWhileFilling() throws Exception {
+    List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+    AbstractAsyncMessageService<Integer> service = new AbstractAsyncMessageService<Integer>("test") {
+      {
+        setBatchMode(100, 1, TimeUnit.MINUTES);
+      }
+
+      @Override protected void process(Integer message) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override protected void process(List<Integer> messages) {
+        batches.add(new ArrayList<>(messages));
+      }
+    };
+    service.start().get();
+    assertTrue(service.submit(1));
+    assertTrue(service.submit(2));
+    while (!service.queue.isEmpty()) {
+      Thread.yield();
+    }
+    // the consumer is waiting for the batch to fill up, stop() interrupts it
+    service.stop().get();
+
+    assertEquals(Arrays.asList(Arrays.asList(1, 2)), batches);
+  }
+
+  @Test public void batchModeDefaultsToSingleMessages() throws Exception {
+    CountDownLatch done = new CountDownLatch(3);
+    List<Integer> messages = new CopyOnWriteArrayList<>();
+    AbstractAsyncMessageService<Integer> service = new AbstractAsyncMessageService<Integer>("test") {
+      {
+        setBatchMode(2, 0, TimeUnit.MILLISECONDS);
+      }
+
+      @Override protected void process(Integer message) {
+        messages.add(message);
+        done.countDown();
+      }
+    };
+    service.start().get();
+    for (int i = 0; i < 3; i++) {
+      assertTrue(service.submit(i));
+    }
+    assertTrue(done.await(1, TimeUnit.SECONDS));
+    service.stop().get();
+
+    assertEquals(Arrays.asList(0, 1, 2), messages);
+  }
+
+  @Test public void waitStrategies() throws Exception {
+    List<WaitStrategy> waitStrategies = Arrays.asList(WaitStrategy.busySpin(), WaitStrategy.spinThenYield(100)
+        , WaitStrategy.backoffParking(1, 1000, TimeUnit.MICROSECONDS), WaitStrategy.blocking());
+    for (WaitStrategy waitStrategy : waitStrategies) {
+      CountDownLatch done = new CountDownLatch(100);
+      AbstractAsyncMessageService<Integer> service = new AbstractAsyncMessageService<Integer>("test") {
+        {
+          setWaitStrategy(waitStrategy);
+        }
+
+        @Override protected void process(Integer message) {
+          done.countDown();
+        }
+      };
+      service.start().get();
+      for (int i = 0; i < 100; i++) {
+        assertTrue(service.submit(i));
+        if (i % 10 == 0) {
+          Thread.sleep(1);
+        }
+      }
+      assertTrue(done.await(1, TimeUnit.SECONDS));
+      service.stop().get(1, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test public void consumerPool() throws Exception {
+    int consumers = 4;
+    CyclicBarrier barrier = new CyclicBarrier(consumers);
+    CountDownLatch done = new CountDownLatch(consumers * 10);
+    List<Thread> threads = new CopyOnWriteArrayList<>();
+    AbstractAsyncMessageService<Integer> service
+        = new AbstractAsyncMessageService<Integer>("test", new LinkedBlockingQueue<>(), consumers) {
+      @Override protected void process(Integer message) throws Exception {
+        if (!threads.contains(Thread.currentThread())) {
+          threads.add(Thread.currentThread());
+        }
+        // passes only if all consumers process messages at the same time
+        barrier.await(1, TimeUnit.SECONDS);
+        done.countDown();
+      }
+    };
+    service.start().get();
+    for (int i = 0; i < consumers * 10; i++) {
+      assertTrue(service.submit(i));
+    }
+    assertTrue(done.await(1, TimeUnit.SECONDS));
+    assertEquals(0, service.awaitProcessingCount());
+    service.stop().get(1, TimeUnit.SECONDS);
+
+    assertEquals(consumers, threads.size());
+    for (Thread thread : threads) {
+      thread.join(1000);
+      assertFalse(thread.isAlive());
+    }
+  }
+
+  @Test public void singleConsumerQueue() {
+    try {
+      new AbstractAsyncMessageService<Integer>("test", new RingBufferBlockingQueue<>(16), 2) {
+        @Override protected void process(Integer message) {
+          // do nothing
+        }
+      };
+      fail("must throw IllegalArgumentException");
+    } catch (IllegalArgumentException ex) {
+      assertEquals("number of consumers <2> of single-consumer queue <RingBufferBlockingQueue> must be 1", ex.getMessage());
+    }
+  }
+
+  @Test public void submitAsync() throws Exception {
+    CountDownLatch taken = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(6);
+    List<Integer> received = new CopyOnWriteArrayList<>();
+    AbstractAsyncMessageService<Integer> service
+        = new AbstractAsyncMessageService<Integer>("test", new ArrayBlockingQueue<>(2)) {
+      @Override protected void process(Integer message) throws Exception {
+        taken.countDown();
+        release.await();
+        received.add(message);
+        done.countDown();
+      }
+    };
+    assertFalse(service.submitAsync(0).toCompletableFuture().get());
+    service.start().get();
+
+    // the consumer holds the first message, the queue holds the next two
+    assertTrue(service.submitAsync(0).toCompletableFuture().get());
+    assertTrue(taken.await(1, TimeUnit.SECONDS));
+    CompletableFuture<Integer> available = service.demand().toCompletableFuture();
+    List<CompletableFuture<Boolean>> accepted = new ArrayList<>();
+    for (int i = 1; i < 6; i++) {
+      accepted.add(service.submitAsync(i).toCompletableFuture());
+    }
+    assertTrue(accepted.get(0).isDone());
+    assertFalse(accepted.get(4).isDone());
+    assertEquals(-1, service.trySubmit(6));
+    CompletableFuture<Integer> demand = service.demand().toCompletableFuture();
+    assertFalse(demand.isDone());
+
+    release.countDown();
+    for (CompletableFuture<Boolean> future : accepted) {
+      assertTrue(future.get(1, TimeUnit.SECONDS));
+    }
+    assertTrue(available.get(1, TimeUnit.SECONDS) > 0);
+    assertTrue(demand.get(1, TimeUnit.SECONDS) > 0);
+    assertTrue(done.await(1, TimeUnit.SECONDS));
+    service.stop().get(1, TimeUnit.SECONDS);
+    assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), received);
+  }
+
+  @Test public void trySubmit() throws Exception {
+    CountDownLatch taken = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AbstractAsyncMessageService<Integer> service
+        = new AbstractAsyncMessageService<Integer>("test", new ArrayBlockingQueue<>(3)) {
+      @Override protected void process(Integer message) throws Exception {
+        taken.countDown();
+        release.await();
+      }
+    };
+    assertEquals(-1, service.trySubmit(0));
+    service.start().get();
+    assertEquals(3, (int) service.demand().toCompletableFuture().get());
+    // the consumer may take the message before the remaining capacity is read
+    int remaining = service.trySubmit(0);
+    assertTrue(String.valueOf(remaining), remaining == 2 || remaining == 3);
+    assertTrue(taken.await(1, TimeUnit.SECONDS));
+    assertEquals(2, service.trySubmit(1));
+    assertEquals(1, service.trySubmit(2));
+    assertEquals(0, service.trySubmit(3));
+    assertEquals(-1, service.trySubmit(4));
+    release.countDown();
+    service.stop().get(1, TimeUnit.SECONDS);
+  }
+
+  @Test public void pendingRejectedOnStop() throws Exception {
+    CountDownLatch taken = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AbstractAsyncMessageService<Integer> service
+        = new AbstractAsyncMessageService<Integer>("test", new ArrayBlockingQueue<>(1)) {
+      @Override protected void process(Integer message) throws Exception {
+        taken.countDown();
+        release.await();
+      }
+    };
+    service.start().get();
+    assertTrue(service.submitAsync(0).toCompletableFuture().get());
+    assertTrue(taken.await(1, TimeUnit.SECONDS));
+    assertTrue(service.submitAsync(1).toCompletableFuture().get());
+    CompletionStage<Boolean> pending = service.submitAsync(2);
+    CompletionStage<Integer> demand = service.demand();
+
+    service.stop().get(1, TimeUnit.SECONDS);
+    assertFalse(pending.toCompletableFuture().get(1, TimeUnit.SECONDS));
+    assertEquals(0, (int) demand.toCompletableFuture().get(1, TimeUnit.SECONDS));
+    assertFalse(service.submitAsync(3).toCompletableFuture().get());
+    assertEquals(0, (int) service.demand().toCompletableFuture().get());
+  }
+
+  @Test public void pendingLimit() throws Exception {
+    CountDownLatch taken = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    InMemoryMonitoringEngine engine = new InMemoryMonitoringEngine();
+    AbstractAsyncMessageService<Integer> service
+        = new AbstractAsyncMessageService<Integer>("pending", new ArrayBlockingQueue<>(1)) {
+      {
+        setMaxPendingMessages(2);
+        setMonitoringEngine(engine);
+      }
+
+      @Override protected void process(Integer message) throws Exception {
+        taken.countDown();
+        release.await();
+      }
+    };
+    service.start().get();
+    assertTrue(service.submitAsync(0).toCompletableFuture().get());
+    assertTrue(taken.await(1, TimeUnit.SECONDS));
+    assertTrue(service.submitAsync(1).toCompletableFuture().get());
+    CompletableFuture<Boolean> second = service.submitAsync(2).toCompletableFuture();
+    CompletableFuture<Boolean> third = service.submitAsync(3).toCompletableFuture();
+    CompletableFuture<Boolean> fourth = service.submitAsync(4).toCompletableFuture();
+    assertTrue(fourth.isDone());
+    assertFalse(fourth.get());
+
+    release.countDown();
+    assertTrue(second.get(1, TimeUnit.SECONDS));
+    assertTrue(third.get(1, TimeUnit.SECONDS));
+    service.stop().get(1, TimeUnit.SECONDS);
+    String text = StandardCharsets.UTF_8.decode(new PrometheusExpositionWriter(engine).write()).toString();
+    assertTrue(text, text.contains("pending_dropped{reason=\"pending\"} 1\n"));
+  }
+
+  @Test public void dropNewestAndOldest() throws Exception {
+    InMemoryMonitoringEngine engine = new InMemoryMonitoringEngine();
+    assertEquals(Arrays.asList(0, 1, 2), overflow(OverflowPolicy.dropNewest(), engine, "newest"));
+    assertEquals(Arrays.asList(0, 3, 4), overflow(OverflowPolicy.dropOldest(), engine, "oldest"));
+    String text = StandardCharsets.UTF_8.decode(new PrometheusExpositionWriter(engine).write()).toString();
+    assertTrue(text, text.contains("newest_dropped{reason=\"newest\"} 2\n"));
+    assertTrue(text, text.contains("oldest_dropped{reason=\"oldest\"} 2\n"));
+  }
+
+  @Test public void coalesceByKey() throws Exception {
+    InMemoryMonitoringEngine engine = new InMemoryMonitoringEngine();
+    // messages are coalesced by parity, 3 replaces 1 and 4 replaces 2
+    assertEquals(Arrays.asList(0, 3, 4), overflow(OverflowPolicy.coalesceByKey(m -> m % 2), engine, "coalesce"));
+    String text = StandardCharsets.UTF_8.decode(new PrometheusExpositionWriter(engine).write()).toString();
+    assertTrue(text, text.contains("coalesce_dropped{reason=\"coalesced\"} 2\n"));
+  }
+
+  @Test public void blockWithTimeout() throws Exception {
+    InMemoryMonitoringEngine engine = new InMemoryMonitoringEngine();
+    long start = System.nanoTime();
+    assertEquals(Arrays.asList(0, 1, 2)
+        , overflow(OverflowPolicy.blockWithTimeout(20, TimeUnit.MILLISECONDS), engine, "block"));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+    String text = StandardCharsets.UTF_8.decode(new PrometheusExpositionWriter(engine).write()).toString();
+    assertTrue(text, text.contains("block_dropped{reason=\"timeout\"} 2\n"));
+  }
+
+  @Test public void spillToCaller() throws Exception {
+    List<Integer> received = overflow(OverflowPolicy.spillToCaller(), new InMemoryMonitoringEngine(), "spill");
+    // the caller processes messages overflowing the queue ahead of the queued ones
+    assertEquals(Arrays.asList(3, 4, 0, 1, 2), received);
+  }
+
+  @Test public void overflowPolicyOfSingleConsumerQueue() {
+    for (OverflowPolicy<Integer> policy : Arrays.<OverflowPolicy<Integer>>asList(
+        OverflowPolicy.dropOldest(), OverflowPolicy.coalesceByKey(m -> m))) {
+      try {
+        new AbstractAsyncMessageService<Integer>("test", new RingBufferBlockingQueue<>(16)) {
+          {
+            setOverflowPolicy(policy);
+          }
+
+          @Override protected void process(Integer message) {
+            // do nothing
+          }
+        };
+        fail("must throw IllegalArgumentException");
+      } catch (IllegalArgumentException ex) {
+        assertTrue(ex.getMessage(), ex.getMessage().endsWith("isn't supported by single-consumer queue <RingBufferBlockingQueue>"));
+      }
+    }
+  }
+
+  /**
+   * Submits 5 messages while the consumer holds the first one and the queue
+   * has capacity for 2, returns processed messages.
+   */
+  private static List<Integer> overflow(OverflowPolicy<Integer> policy, InMemoryMonitoringEngine engine, String name)
+      throws Exception {
+    Thread caller = Thread.currentThread();
+    CountDownLatch taken = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    List<Integer> received = new CopyOnWriteArrayList<>();
+    AbstractAsyncMessageService<Integer> service
+        = new AbstractAsyncMessageService<Integer>(name, new LinkedBlockingQueue<>(2)) {
+      {
+        setOverflowPolicy(policy);
+        setMonitoringEngine(engine);
+      }
+
+      @Override protected void process(Integer message) throws Exception {
+        if (Thread.currentThread() != caller) {
+          taken.countDown();
+          release.await();
+        }
+        received.add(message);
+      }
+    };
+    service.start().get();
+    assertTrue(service.submit(0));
+    assertTrue(taken.await(1, TimeUnit.SECONDS));
+    for (int i = 1; i < 5; i++) {
+      service.submit(i);
+    }
+    release.countDown();
+    // the drain processes the queued messages before the service terminates
+    assertEquals(0L, service.drain(1, TimeUnit.SECONDS).get().dropped());
+    return received;
+  }
+
+  @Test public void metrics() throws Exception {
+    InMemoryMonitoringEngine engine = new InMemoryMonitoringEngine();
+    CountDownLatch done = new CountDownLatch(10);
+    AbstractAsyncMessageService<Integer> service
+        = new AbstractAsyncMessageService<Integer>("async", new LinkedBlockingQueue<>(10)) {
+      {
+        setMonitoringEngine(engine);
+      }
+
+      @Override protected void process(Integer message) throws Exception {
+        Thread.sleep(1);
+        done.countDown();
+      }
+    };
+    service.start().get();
+    for (int i = 0; i < 10; i++) {
+      assertTrue(service.submit(i));
+    }
+    assertTrue(done.await(1, TimeUnit.SECONDS));
+    service.stop().get(1, TimeUnit.SECONDS);
+    assertFalse(service.submit(10));
+
+    String text = StandardCharsets.UTF_8.decode(new PrometheusExpositionWriter(engine).write()).toString();
+    assertTrue(text, text.contains("# TYPE async_queue_depth gauge\nasync_queue_depth 0\n"));
+    assertTrue(text, text.contains("async_process_count 10\n"));
+    assertTrue(text, text.contains("async_messages 10\n"));
+    assertTrue(text, text.contains("async_rejected 1\n"));
+    assertTrue(text, text.contains("async_restarts 0\n"));
+    assertTrue(text, text.contains("async_queue_latency_count"));
+    assertFalse(text, text.contains("async_queue_latency_count 0\n"));
+  }
+
+  @Test public void metricsOfHyphenatedServiceName() throws Exception {
+    InMemoryMonitoringEngine engine = new InMemoryMonitoringEngine();
+    AbstractAsyncMessageService<Integer> service
+        = new AbstractAsyncMessageService<Integer>("order-service", new LinkedBlockingQueue<>()) {
+      {
+        setMonitoringEngine(engine);
+      }
+
+      @Override protected void process(Integer message) {
+        // do nothing
+      }
+    };
+    service.start().get();
+    service.stop().get(1, TimeUnit.SECONDS);
+
+    String text = StandardCharsets.UTF_8.decode(new PrometheusExpositionWriter(engine).write()).toString();
+    assertTrue(text, text.contains("# TYPE order_service_queue_depth gauge\norder_service_queue_depth 0\n"));
+    assertTrue(text, text.contains("order_service_restarts 0\n"));
+    assertFalse(text, text.contains("order-service"));
+  }
+
+  @Test public void queueLatencyOfDecodedMessages() throws Exception {
+    InMemoryMonitoringEngine engine = new InMemoryMonitoringEngine();
+    CountDownLatch done = new CountDownLatch(10);
+    JournalBlockingQueue<String> queue
+        = new JournalBlockingQueue<>(folder.getRoot().toPath(), JournalBlockingQueue.Codec.utf8());
+    AbstractAsyncMessageService<String> service = new AbstractAsyncMessageService<String>("journal", queue) {
+      {
+        setMonitoringEngine(engine);
+      }
+
+      @Override protected void process(String message) throws Exception {
+        done.countDown();
+      }
+    };
+    service.start().get();
+    for (int i = 0; i < 10; i++) {
+      assertTrue(service.submit("message-" + i));
+    }
+    assertTrue(done.await(1, TimeUnit.SECONDS));
+    service.stop().get(1, TimeUnit.SECONDS);
+    queue.close();
+
+    // the queue returns decoded copies of the submitted messages
+    String text = StandardCharsets.UTF_8.decode(new PrometheusExpositionWriter(engine).write()).toString();
+    assertTrue(text, text.contains("journal_queue_latency_count"));
+    assertFalse(text, text.contains("journal_queue_latency_count 0\n"));
+  }
+
+  @Test public void drain() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch stopped = new CountDownLatch(1);
+    List<Integer> received = new CopyOnWriteArrayList<>();
+    AbstractAsyncMessageService<Integer> service
+        = new AbstractAsyncMessageService<Integer>("test", new LinkedBlockingQueue<>(), 2) {
+      @Override protected void onStop() {
+        stopped.countDown();
+      }
+
+      @Override protected void process(Integer message) throws Exception {
+        release.await();
+        received.add(message);
+      }
+    };
+    service.start().get();
+    for (int i = 0; i < 20; i++) {
+      assertTrue(service.submit(i));
+    }
+    CompletableFuture<DrainResult> drained = service.drain(1, TimeUnit.SECONDS);
+    assertFalse(service.submit(20));
+    release.countDown();
+
+    DrainResult result = drained.get(1, TimeUnit.SECONDS);
+    assertEquals(20, result.flushed());
+    assertEquals(0, result.dropped());
+    assertEquals(20, received.size());
+    assertTrue(stopped.await(1, TimeUnit.SECONDS));
+    assertEquals(Service.State.TERMINATED, service.stop().get(1, TimeUnit.SECONDS));
+  }
+
+  @Test public void drainDeadline() throws Exception {
+    for (int batchSize : new int[] {0, 4}) {
+      CountDownLatch release = new CountDownLatch(1);
+      AbstractAsyncMessageService<Integer> service
+          = new AbstractAsyncMessageService<Integer>("test", new LinkedBlockingQueue<>()) {
+        {
+          if (batchSize > 0) {
+            setBatchMode(batchSize, 0, TimeUnit.MILLISECONDS);
+          }
+        }
+
+        @Override protected void process(Integer message) throws Exception {
+          release.await();
+          Thread.sleep(10);
+        }
+      };
+      service.start().get();
+      for (int i = 0; i < 100; i++) {
+        assertTrue(service.submit(i));
+      }
+      // no message is processed before the drain, so each one is either flushed or dropped
+      CompletableFuture<DrainResult> drained = service.drain(50, TimeUnit.MILLISECONDS);
+      release.countDown();
+      DrainResult result = drained.get(1, TimeUnit.SECONDS);
+      assertTrue(result.toString(), result.flushed() > 0);
+      assertTrue(result.toString(), result.dropped() > 0);
+      assertEquals(result.toString(), 100, result.flushed() + result.dropped());
+    }
+  }
+
+  @Test public void stopDoesNotFlush() throws Exception {
+    CountDownLatch taken = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    List<Integer> received = new CopyOnWriteArrayList<>();
+    AbstractAsyncMessageService<Integer> service
+        = new AbstractAsyncMessageService<Integer>("test", new LinkedBlockingQueue<>()) {
+      @Override protected void process(Integer message) throws Exception {
+        taken.countDown();
+        release.await();
+        received.add(message);
+      }
+    };
+    service.start().get();
+    for (int i = 0; i < 10; i++) {
+      assertTrue(service.submit(i));
+    }
+    assertTrue(taken.await(1, TimeUnit.SECONDS));
+    service.shutdown();
+    release.countDown();
+    service.stopFuture().get(1, TimeUnit.SECONDS);
+    // without a drain the service terminates once the message being processed is completed
+    assertEquals(Arrays.asList(0), received);
+  }
+
+  @Test public void drainNotRunning() throws Exception {
+    AbstractAsyncMessageService<Integer> service = new AbstractAsyncMessageService<Integer>("test") {
+      @Override protected void process(Integer message) {
+        // do nothing
+      }
+    };
+    DrainResult result = service.drain(0, TimeUnit.SECONDS).get(1, TimeUnit.SECONDS);
+    assertEquals(0, result.flushed());
+    assertEquals(0, result.dropped());
+  }
 }
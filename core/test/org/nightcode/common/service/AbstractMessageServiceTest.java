@@ -17,7 +17,10 @@
 package org.nightcode.common.service;
 
 import org.nightcode.common.base.Throwables;
+import org.nightcode.common.util.monitoring.InMemoryMonitoringEngine;
+import org.nightcode.common.util.monitoring.PrometheusExpositionWriter;
 
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -25,6 +28,8 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Unit test for {@link AbstractMessageService}.
@@ -107,4 +112,36 @@ public class AbstractMessageServiceTest {
     assertEquals(1, counter.get());
     service.stop().get();
   }
+
+  @Test public void metrics() throws Exception {
+    InMemoryMonitoringEngine engine = new InMemoryMonitoringEngine();
+    MessageService<Boolean> service = new AbstractMessageService<Boolean>("sync") {
+      {
+        setMonitoringEngine(engine);
+      }
+
+      @Override protected void doStart() {
+        started();
+      }
+
+      @Override protected void doStop() {
+        stopped();
+      }
+
+      @Override protected void process(Boolean message) {
+        // do nothing
+      }
+    };
+    service.start().get();
+    for (int i = 0; i < 3; i++) {
+      assertTrue(service.submit(Boolean.TRUE));
+    }
+    service.stop().get();
+    assertFalse(service.submit(Boolean.TRUE));
+
+    String text = StandardCharsets.UTF_8.decode(new PrometheusExpositionWriter(engine).write()).toString();
+    assertTrue(text, text.contains("sync_process_count 3\n"));
+    assertTrue(text, text.contains("sync_messages 3\n"));
+    assertTrue(text, text.contains("sync_rejected 1\n"));
+  }
 }
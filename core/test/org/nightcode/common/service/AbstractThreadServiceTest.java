@@ -15,7 +15,14 @@
 package org.nightcode.common.service;
 
 import org.nightcode.common.service.Service.State;
+import org.nightcode.common.util.monitoring.InMemoryMonitoringEngine;
+import org.nightcode.common.util.monitoring.PrometheusExpositionWriter;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -301,4 +308,162 @@ public class AbstractThreadServiceTest {
       // do nothing
     }
   }
+
+  @Test public void restartWaitStrategy() throws Exception {
+    for (WaitStrategy waitStrategy : new WaitStrategy[] {WaitStrategy.busySpin(), WaitStrategy.blocking()}) {
+      CountDownLatch failed = new CountDownLatch(1);
+      AtomicInteger attempts = new AtomicInteger();
+      AbstractThreadService service = new AbstractThreadService("test") {
+        {
+          setRestartTimeout(TimeUnit.HOURS.toMillis(1));
+          setWaitStrategy(waitStrategy);
+        }
+
+        @Override protected void service() throws Exception {
+          attempts.incrementAndGet();
+          failed.countDown();
+          throw new IllegalStateException("service failed");
+        }
+      };
+      service.start().get();
+      assertTrue(failed.await(1, TimeUnit.SECONDS));
+      // stopping doesn't wait for the restart timeout
+      assertEquals(State.TERMINATED, service.stop().get(1, TimeUnit.SECONDS));
+      assertEquals(1, attempts.get());
+    }
+  }
+
+  @Test public void restartsCounted() throws Exception {
+    InMemoryMonitoringEngine engine = new InMemoryMonitoringEngine();
+    CountDownLatch restarted = new CountDownLatch(2);
+    AbstractThreadService service = new AbstractThreadService("test") {
+      {
+        setRestartTimeout(1);
+        setMonitoringEngine(engine);
+      }
+
+      @Override protected void service() throws Exception {
+        restarted.countDown();
+        if (restarted.getCount() > 0) {
+          throw new IllegalStateException("service failed");
+        }
+        Thread.sleep(Long.MAX_VALUE);
+      }
+    };
+    service.start().get();
+    assertTrue(restarted.await(1, TimeUnit.SECONDS));
+    service.stop().get(1, TimeUnit.SECONDS);
+    String text = StandardCharsets.UTF_8.decode(new PrometheusExpositionWriter(engine).write()).toString();
+    assertTrue(text, text.contains("test_restarts 1\n"));
+  }
+
+  @Test public void multipleThreads() throws Exception {
+    AtomicInteger onStart = new AtomicInteger();
+    AtomicInteger onStop = new AtomicInteger();
+    CountDownLatch serviced = new CountDownLatch(3);
+    AbstractThreadService service = new AbstractThreadService("test", 3) {
+      @Override protected void onStart() {
+        onStart.incrementAndGet();
+      }
+
+      @Override protected void onStop() {
+        onStop.incrementAndGet();
+      }
+
+      @Override protected void service() throws Exception {
+        serviced.countDown();
+        Thread.sleep(Long.MAX_VALUE);
+      }
+    };
+    assertEquals(State.RUNNING, service.start().get());
+    assertEquals(3, onStart.get());
+    assertTrue(serviced.await(1, TimeUnit.SECONDS));
+    assertEquals(State.TERMINATED, service.stop().get(1, TimeUnit.SECONDS));
+    assertEquals(3, onStop.get());
+  }
+
+  @Test public void multipleThreadsStartFailed() throws Exception {
+    AtomicInteger threadIndex = new AtomicInteger();
+    AbstractThreadService service = new AbstractThreadService("test", 3) {
+      @Override protected void onStart() {
+        if (threadIndex.getAndIncrement() == 1) {
+          throw new IllegalStateException("onStart failed");
+        }
+      }
+
+      @Override protected void service() throws Exception {
+        Thread.sleep(Long.MAX_VALUE);
+      }
+    };
+    try {
+      service.start().get(1, TimeUnit.SECONDS);
+      fail("should throw exception");
+    } catch (ExecutionException ex) {
+      assertEquals("onStart failed", ex.getCause().getMessage());
+    }
+    assertEquals(0x20, service.state());
+  }
+
+  @Test public void threadStartFailed() throws Exception {
+    AtomicInteger created = new AtomicInteger();
+    CountDownLatch onStop = new CountDownLatch(2);
+    AbstractThreadService service = new AbstractThreadService("test", 3) {
+      {
+        setThreadFactory(runnable -> {
+          if (created.getAndIncrement() < 2) {
+            return new Thread(runnable);
+          }
+          return new Thread(runnable) {
+            @Override public synchronized void start() {
+              throw new IllegalStateException("unable to start thread");
+            }
+          };
+        });
+      }
+
+      @Override protected void onStop() {
+        onStop.countDown();
+      }
+
+      @Override protected void service() throws Exception {
+        Thread.sleep(Long.MAX_VALUE);
+      }
+    };
+    try {
+      service.start().get(1, TimeUnit.SECONDS);
+      fail("should throw exception");
+    } catch (ExecutionException ex) {
+      assertEquals("unable to start thread", ex.getCause().getMessage());
+    }
+    // the started threads don't wait for the third one forever
+    assertTrue(onStop.await(1, TimeUnit.SECONDS));
+    assertEquals(0x20, service.state());
+  }
+
+  @Test public void threadFactory() throws Exception {
+    AtomicInteger created = new AtomicInteger();
+    CountDownLatch serviced = new CountDownLatch(2);
+    List<String> threadNames = new CopyOnWriteArrayList<>();
+    AbstractThreadService service = new AbstractThreadService("test", 2) {
+      {
+        setThreadFactory(runnable -> {
+          created.incrementAndGet();
+          return ThreadFactories.virtual().newThread(runnable);
+        });
+      }
+
+      @Override protected void service() throws Exception {
+        threadNames.add(Thread.currentThread().getName());
+        serviced.countDown();
+        Thread.sleep(Long.MAX_VALUE);
+      }
+    };
+    assertEquals(0, created.get());
+    service.start().get();
+    assertTrue(serviced.await(1, TimeUnit.SECONDS));
+    assertEquals(State.TERMINATED, service.stop().get(1, TimeUnit.SECONDS));
+    assertEquals(2, created.get());
+    Collections.sort(threadNames);
+    assertEquals(Arrays.asList("test-0", "test-1"), threadNames);
+  }
 }
@@ -0,0 +1,226 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link JournalBlockingQueue}.
+ */
+public class JournalBlockingQueueTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test public void replayUncommitted() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    JournalBlockingQueue<String> queue = new JournalBlockingQueue<>(directory, JournalBlockingQueue.Codec.utf8());
+    for (int i = 0; i < 10; i++) {
+      assertTrue(queue.offer("message-" + i));
+    }
+    assertEquals(10, queue.size());
+    assertEquals(Integer.MAX_VALUE, queue.remainingCapacity());
+    for (int i = 0; i < 4; i++) {
+      assertEquals("message-" + i, queue.poll());
+    }
+    queue.commit();
+    assertEquals("message-4", queue.peek());
+    assertEquals("message-4", queue.poll());
+    assertEquals("message-5", queue.poll());
+    queue.close();
+
+    // taken but not committed messages are delivered again
+    queue = new JournalBlockingQueue<>(directory, JournalBlockingQueue.Codec.utf8());
+    assertEquals(6, queue.size());
+    for (int i = 4; i < 10; i++) {
+      assertEquals("message-" + i, queue.poll());
+    }
+    assertNull(queue.poll());
+    queue.commit();
+    queue.close();
+
+    queue = new JournalBlockingQueue<>(directory, JournalBlockingQueue.Codec.utf8());
+    assertEquals(0, queue.size());
+    assertNull(queue.poll());
+    assertTrue(queue.offer(""));
+    assertEquals("", queue.poll());
+    queue.close();
+  }
+
+  @Test public void segmentRollover() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    JournalBlockingQueue<String> queue = newQueue(directory, JournalBlockingQueue.FsyncPolicy.everyWrites(3));
+    for (int i = 0; i < 100; i++) {
+      queue.offer("message-" + i);
+    }
+    assertTrue(segmentFiles() > 10);
+    for (int i = 0; i < 50; i++) {
+      assertEquals("message-" + i, queue.poll());
+    }
+    queue.commit();
+    queue.close();
+
+    queue = newQueue(directory, JournalBlockingQueue.FsyncPolicy.always());
+    assertEquals(50, queue.size());
+    for (int i = 100; i < 110; i++) {
+      queue.offer("message-" + i);
+    }
+    List<String> drained = new ArrayList<>();
+    assertEquals(60, queue.drainTo(drained));
+    assertEquals("message-50", drained.get(0));
+    assertEquals("message-109", drained.get(59));
+    queue.commit();
+    // segments preceding the committed position are deleted
+    assertEquals(1, segmentFiles());
+    queue.close();
+  }
+
+  @Test public void takeWakesUp() throws Exception {
+    JournalBlockingQueue<String> queue = newQueue(folder.getRoot().toPath()
+        , JournalBlockingQueue.FsyncPolicy.interval(10, TimeUnit.MILLISECONDS));
+    CompletableFuture<String> taken = new CompletableFuture<>();
+    Thread consumer = new Thread(() -> {
+      try {
+        taken.complete(queue.take());
+      } catch (InterruptedException ex) {
+        taken.completeExceptionally(ex);
+      }
+    });
+    consumer.start();
+    Thread.sleep(20);
+    queue.put("message");
+    assertEquals("message", taken.get(1, TimeUnit.SECONDS));
+    assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+    queue.close();
+  }
+
+  @Test public void messageServiceBackend() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    CountDownLatch processed = new CountDownLatch(3);
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> received = new CopyOnWriteArrayList<>();
+    JournalBlockingQueue<String> queue = new JournalBlockingQueue<>(directory, JournalBlockingQueue.Codec.utf8());
+    AbstractAsyncMessageService<String> service = new AbstractAsyncMessageService<String>("test", queue) {
+      @Override protected void process(String message) throws Exception {
+        if (processed.getCount() == 0) {
+          release.await();
+        }
+        received.add(message);
+        processed.countDown();
+      }
+    };
+    service.start().get();
+    for (int i = 0; i < 5; i++) {
+      assertTrue(service.submit("message-" + i));
+    }
+    assertTrue(processed.await(1, TimeUnit.SECONDS));
+    // the service is stopped while processing the fourth message
+    service.stop().get(1, TimeUnit.SECONDS);
+    queue.close();
+    assertEquals(Arrays.asList("message-0", "message-1", "message-2"), received);
+
+    queue = new JournalBlockingQueue<>(directory, JournalBlockingQueue.Codec.utf8());
+    assertEquals("message-3", queue.poll());
+    assertEquals("message-4", queue.poll());
+    queue.close();
+  }
+
+  @Test public void closedQueue() throws Exception {
+    JournalBlockingQueue<String> queue = newQueue(folder.getRoot().toPath(), JournalBlockingQueue.FsyncPolicy.never());
+    AbstractAsyncMessageService<String> service = new AbstractAsyncMessageService<String>("test", queue) {
+      @Override protected void process(String message) throws Exception {
+        // do nothing
+      }
+    };
+    service.start().get();
+    queue.close();
+    assertFalse(queue.offer("message"));
+    assertFalse(queue.offer("message", 1, TimeUnit.SECONDS));
+    try {
+      queue.put("message");
+      fail("put must throw IllegalStateException");
+    } catch (IllegalStateException ex) {
+      assertEquals("queue has been closed", ex.getMessage());
+    }
+    assertFalse(service.submit("message"));
+    service.stop().get(1, TimeUnit.SECONDS);
+  }
+
+  @Test public void corruptedHeader() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    JournalBlockingQueue<String> queue = newQueue(directory, JournalBlockingQueue.FsyncPolicy.always());
+    assertTrue(queue.offer("message"));
+    queue.close();
+    File[] segments = folder.getRoot().listFiles((dir, name) -> name.endsWith(".journal"));
+    assertEquals(1, segments.length);
+    for (int header : new int[] {1000, -2}) {
+      try (RandomAccessFile file = new RandomAccessFile(segments[0], "rw")) {
+        file.writeInt(header);
+      }
+      try {
+        newQueue(directory, JournalBlockingQueue.FsyncPolicy.never());
+        fail("constructor must throw IOException");
+      } catch (IOException ex) {
+        assertTrue(ex.getMessage(), ex.getMessage().endsWith("is corrupted: invalid header <" + header + "> at offset <0>"));
+      }
+    }
+  }
+
+  @Test public void invalidArguments() throws Exception {
+    try {
+      newQueue(folder.getRoot().toPath(), JournalBlockingQueue.FsyncPolicy.never()).offer(new String(new char[64]));
+      fail("offer must throw IllegalArgumentException");
+    } catch (IllegalArgumentException ex) {
+      assertEquals("encoded element of <64> bytes doesn't fit into a segment of <64> bytes", ex.getMessage());
+    }
+    try {
+      new JournalBlockingQueue<>(folder.newFolder().toPath(), JournalBlockingQueue.Codec.utf8(), 1
+          , JournalBlockingQueue.FsyncPolicy.never(), WaitStrategy.blocking());
+      fail("constructor must throw IllegalArgumentException");
+    } catch (IllegalArgumentException ex) {
+      assertEquals("segment size <1> must be in range [64, 1073741824]", ex.getMessage());
+    }
+  }
+
+  private static JournalBlockingQueue<String> newQueue(Path directory, JournalBlockingQueue.FsyncPolicy fsyncPolicy)
+      throws Exception {
+    return new JournalBlockingQueue<>(directory, JournalBlockingQueue.Codec.utf8(), 64, fsyncPolicy
+        , WaitStrategy.blocking());
+  }
+
+  private int segmentFiles() {
+    File[] files = folder.getRoot().listFiles((dir, name) -> name.endsWith(".journal"));
+    return (files != null) ? files.length : 0;
+  }
+}
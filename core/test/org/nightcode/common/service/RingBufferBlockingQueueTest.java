@@ -0,0 +1,211 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link RingBufferBlockingQueue}.
+ */
+public class RingBufferBlockingQueueTest {
+
+  @Test public void offerAndPoll() {
+    RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(3);
+    assertEquals(4, queue.capacity());
+    assertTrue(queue.isEmpty());
+    assertNull(queue.poll());
+    assertNull(queue.peek());
+
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < 4; i++) {
+        assertTrue(queue.offer(i));
+      }
+      assertFalse(queue.offer(4));
+      assertEquals(4, queue.size());
+      assertEquals(0, queue.remainingCapacity());
+      assertEquals(Integer.valueOf(0), queue.peek());
+      for (int i = 0; i < 4; i++) {
+        assertEquals(Integer.valueOf(i), queue.poll());
+      }
+      assertNull(queue.poll());
+      assertEquals(4, queue.remainingCapacity());
+    }
+  }
+
+  @Test public void drainTo() {
+    RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(8);
+    for (int i = 0; i < 5; i++) {
+      queue.add(i);
+    }
+    List<Integer> target = new ArrayList<>();
+    assertEquals(3, queue.drainTo(target, 3));
+    assertEquals(2, queue.drainTo(target));
+    assertEquals(Arrays.asList(0, 1, 2, 3, 4), target);
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test public void remove() {
+    RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(4);
+    for (int i = 0; i < 4; i++) {
+      queue.add(i);
+    }
+    assertTrue(queue.remove(0));
+    assertTrue(queue.remove(2));
+    assertFalse(queue.remove(2));
+    assertFalse(queue.remove(5));
+    assertFalse(queue.remove(null));
+
+    assertEquals(Integer.valueOf(1), queue.peek());
+    assertEquals(Integer.valueOf(1), queue.poll());
+    assertEquals(Integer.valueOf(3), queue.poll());
+    assertNull(queue.poll());
+    assertTrue(queue.isEmpty());
+
+    queue.add(4);
+    assertTrue(queue.remove(4));
+    assertNull(queue.peek());
+    assertEquals(4, queue.remainingCapacity());
+  }
+
+  @Test public void pollTimeout() throws Exception {
+    for (WaitStrategy waitStrategy : waitStrategies()) {
+      RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(2, waitStrategy);
+      long start = System.nanoTime();
+      assertNull(queue.poll(50, TimeUnit.MILLISECONDS));
+      assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+      assertTrue(queue.offer(1, 10, TimeUnit.MILLISECONDS));
+      assertTrue(queue.offer(2, 10, TimeUnit.MILLISECONDS));
+      assertFalse(queue.offer(3, 10, TimeUnit.MILLISECONDS));
+    }
+  }
+
+  @Test public void takeWakesUp() throws Exception {
+    for (WaitStrategy waitStrategy : waitStrategies()) {
+      RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(2, waitStrategy);
+      CompletableFuture<Integer> taken = new CompletableFuture<>();
+      Thread consumer = new Thread(() -> {
+        try {
+          taken.complete(queue.take());
+        } catch (InterruptedException ex) {
+          taken.completeExceptionally(ex);
+        }
+      });
+      consumer.start();
+      Thread.sleep(20);
+      queue.put(7);
+      assertEquals(Integer.valueOf(7), taken.get(1, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test public void takeIsInterruptible() throws Exception {
+    for (WaitStrategy waitStrategy : waitStrategies()) {
+      RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(2, waitStrategy);
+      AtomicReference<Throwable> thrown = new AtomicReference<>();
+      Thread consumer = new Thread(() -> {
+        try {
+          queue.take();
+        } catch (Throwable th) {
+          thrown.set(th);
+        }
+      });
+      consumer.start();
+      Thread.sleep(20);
+      consumer.interrupt();
+      consumer.join(1000);
+      assertTrue(thrown.get() instanceof InterruptedException);
+    }
+  }
+
+  @Test public void multipleProducers() throws Exception {
+    int producers = 4;
+    int messages = 100_000;
+    RingBufferBlockingQueue<long[]> queue = new RingBufferBlockingQueue<>(64, WaitStrategy.yielding());
+    CountDownLatch latch = new CountDownLatch(producers);
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      new Thread(() -> {
+        try {
+          for (int i = 0; i < messages; i++) {
+            queue.put(new long[] {producer, i});
+          }
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        latch.countDown();
+      }).start();
+    }
+
+    long[] expected = new long[producers];
+    for (int i = 0; i < producers * messages; i++) {
+      long[] message = queue.poll(1, TimeUnit.SECONDS);
+      if (message == null) {
+        fail("message has not been received");
+      }
+      // each producer's messages are received in order
+      assertEquals(expected[(int) message[0]]++, message[1]);
+    }
+    assertTrue(latch.await(1, TimeUnit.SECONDS));
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test public void messageServiceBackend() throws Exception {
+    CountDownLatch latch = new CountDownLatch(1000);
+    List<Integer> received = new ArrayList<>();
+    MessageService<Integer> service = new AbstractAsyncMessageService<Integer>("test", new RingBufferBlockingQueue<>(16)) {
+      @Override protected void process(Integer message) {
+        received.add(message);
+        latch.countDown();
+      }
+    };
+    service.start().get();
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(service.submit(i));
+    }
+    assertTrue(latch.await(1, TimeUnit.SECONDS));
+    service.stop().get();
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(Integer.valueOf(i), received.get(i));
+    }
+  }
+
+  @Test public void invalidCapacity() {
+    try {
+      new RingBufferBlockingQueue<>(0);
+      fail("constructor must throw IllegalArgumentException");
+    } catch (IllegalArgumentException ex) {
+      assertEquals("capacity <0> must be in range [1, 1073741824]", ex.getMessage());
+    }
+  }
+
+  private static List<WaitStrategy> waitStrategies() {
+    return Arrays.asList(WaitStrategy.busySpin(), WaitStrategy.yielding()
+        , WaitStrategy.parking(100, TimeUnit.MICROSECONDS), WaitStrategy.blocking());
+  }
+}
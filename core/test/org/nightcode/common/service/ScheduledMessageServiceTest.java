@@ -0,0 +1,153 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link ScheduledMessageService}.
+ */
+public class ScheduledMessageServiceTest {
+
+  private static final class Recorder extends ScheduledMessageService<Long> {
+    final List<Long> received = new CopyOnWriteArrayList<>();
+    final List<Long> lateness = new CopyOnWriteArrayList<>();
+    volatile long base; // delays are measured from this time
+    final CountDownLatch done;
+
+    Recorder(int wheelSize, int expected) {
+      super("test", 1L, TimeUnit.MILLISECONDS, wheelSize);
+      done = new CountDownLatch(expected);
+    }
+
+    Timeout<Long> scheduleAt(long delayMillis) {
+      long delay = TimeUnit.MILLISECONDS.toNanos(delayMillis) - (System.nanoTime() - base);
+      return schedule(delayMillis, delay, TimeUnit.NANOSECONDS);
+    }
+
+    @Override protected void process(Long message) {
+      long elapsed = System.nanoTime() - base;
+      lateness.add(elapsed - TimeUnit.MILLISECONDS.toNanos(message));
+      received.add(message);
+      done.countDown();
+    }
+  }
+
+  @Test public void delays() throws Exception {
+    // a wheel of 4 buckets makes the longer delays cascade through several wheels
+    Recorder service = new Recorder(4, 6);
+    service.start().get();
+    service.base = System.nanoTime();
+    long[] delays = {250L, 10L, 70L, 0L, 130L, 30L};
+    for (long delay : delays) {
+      assertTrue(service.scheduleAt(delay) != null);
+    }
+    assertTrue(service.done.await(2, TimeUnit.SECONDS));
+    service.stop().get();
+
+    assertEquals(java.util.Arrays.asList(0L, 10L, 30L, 70L, 130L, 250L), service.received);
+    for (long lateness : service.lateness) {
+      assertTrue("processed " + lateness + "ns before the deadline", lateness >= 0L);
+    }
+    assertEquals(0, service.awaitProcessingCount());
+  }
+
+  @Test public void cancel() throws Exception {
+    Recorder service = new Recorder(8, 2);
+    service.start().get();
+    service.base = System.nanoTime();
+    ScheduledMessageService.Timeout<Long> cancelled = service.scheduleAt(40L);
+    ScheduledMessageService.Timeout<Long> expired = service.scheduleAt(20L);
+    service.scheduleAt(60L);
+    assertEquals(3, service.awaitProcessingCount());
+
+    assertTrue(cancelled.cancel());
+    assertFalse(cancelled.cancel());
+    assertTrue(cancelled.isCancelled());
+    assertEquals(2, service.awaitProcessingCount());
+
+    assertTrue(service.done.await(1, TimeUnit.SECONDS));
+    service.stop().get();
+    assertEquals(java.util.Arrays.asList(20L, 60L), service.received);
+    assertTrue(expired.isExpired());
+    assertFalse(expired.cancel());
+  }
+
+  @Test public void idle() throws Exception {
+    Recorder service = new Recorder(8, 2);
+    service.start().get();
+    // the idle service thread waits until a message is scheduled
+    Thread.sleep(20);
+    service.base = System.nanoTime();
+    service.scheduleAt(0L);
+    service.scheduleAt(10L);
+    assertTrue(service.done.await(1, TimeUnit.SECONDS));
+    assertEquals(0, service.awaitProcessingCount());
+    service.stop().get(1, TimeUnit.SECONDS);
+    assertEquals(java.util.Arrays.asList(0L, 10L), service.received);
+  }
+
+  @Test public void processFailure() throws Exception {
+    CountDownLatch done = new CountDownLatch(1);
+    ScheduledMessageService<String> service = new ScheduledMessageService<String>("test") {
+      @Override protected void process(String message) {
+        if ("fail".equals(message)) {
+          throw new IllegalStateException(message);
+        }
+        done.countDown();
+      }
+    };
+    service.start().get();
+    assertTrue(service.submit("fail"));
+    service.schedule("ok", 5L, TimeUnit.MILLISECONDS);
+    assertTrue(done.await(1, TimeUnit.SECONDS));
+    service.stop().get();
+  }
+
+  @Test public void notRunning() throws Exception {
+    Recorder service = new Recorder(8, 1);
+    assertNull(service.scheduleAt(0L));
+    service.start().get();
+    service.base = System.nanoTime();
+    service.scheduleAt(TimeUnit.HOURS.toMillis(1L));
+    service.scheduleAt(Long.MAX_VALUE / 2);
+    assertEquals(2, service.awaitProcessingCount());
+    service.stop().get();
+
+    assertFalse(service.submit(0L));
+    assertEquals(0, service.awaitProcessingCount());
+    assertTrue(service.received.isEmpty());
+  }
+
+  @Test public void invalidArguments() {
+    try {
+      new Recorder(6, 1);
+      fail("wheel size must be a power of two");
+    } catch (IllegalArgumentException expected) {
+      assertEquals("wheel size <6> must be a power of two greater than 1", expected.getMessage());
+    }
+  }
+}
@@ -14,7 +14,11 @@
 
 package org.nightcode.common.service;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -24,7 +28,9 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -133,4 +139,120 @@ public class ServiceManagerTest {
 
     Assert.assertEquals(stateFuture.get(), Service.State.TERMINATED);
   }
+
+  @Test public void dependencyOrder() throws Exception {
+    List<String> events = new CopyOnWriteArrayList<>();
+    Service db = new RecordingService("db", events);
+    Service cache = new RecordingService("cache", events);
+    Service api = new RecordingService("api", events);
+    ServiceManager serviceManager = new ServiceManager();
+    for (Service service : Arrays.asList(api, cache, db)) {
+      serviceManager.addShutdownHook(service);
+    }
+    serviceManager.addDependency(api, cache);
+    serviceManager.addDependency(cache, db);
+    serviceManager.addDependency(api, db);
+
+    serviceManager.startAll(1, TimeUnit.SECONDS).get(1, TimeUnit.SECONDS);
+    assertEquals(Arrays.asList("start db", "start cache", "start api"), events);
+
+    events.clear();
+    serviceManager.shutdownAll(1, TimeUnit.SECONDS);
+    assertEquals(Arrays.asList("stop api", "stop cache", "stop db"), events);
+  }
+
+  @Test public void parallelStart() throws Exception {
+    CyclicBarrier barrier = new CyclicBarrier(3);
+    ServiceManager serviceManager = new ServiceManager();
+    for (int i = 0; i < 3; i++) {
+      serviceManager.addShutdownHook(new AbstractService("service-" + i) {
+        @Override protected void doStart() {
+          try {
+            // passes only if independent services are started at the same time
+            barrier.await(1, TimeUnit.SECONDS);
+            started();
+          } catch (Exception ex) {
+            serviceFailed(ex);
+          }
+        }
+
+        @Override protected void doStop() {
+          stopped();
+        }
+      });
+    }
+    serviceManager.startAll(2, TimeUnit.SECONDS).get(2, TimeUnit.SECONDS);
+    serviceManager.stopAll(1, TimeUnit.SECONDS).get(1, TimeUnit.SECONDS);
+  }
+
+  @Test public void startTimeout() throws Exception {
+    List<String> events = new CopyOnWriteArrayList<>();
+    Service stuck = new AbstractService("stuck") {
+      @Override protected void doStart() {
+        // never started
+      }
+
+      @Override protected void doStop() {
+        stopped();
+      }
+    };
+    RecordingService dependent = new RecordingService("dependent", events);
+    Service independent = new RecordingService("independent", events);
+    ServiceManager serviceManager = new ServiceManager();
+    serviceManager.addShutdownHook(stuck);
+    serviceManager.addShutdownHook(dependent);
+    serviceManager.addShutdownHook(independent);
+    serviceManager.addDependency(dependent, stuck);
+
+    CompletableFuture<Void> future = serviceManager.startAll(50, TimeUnit.MILLISECONDS);
+    try {
+      future.get(1, TimeUnit.SECONDS);
+      fail("startAll must complete exceptionally");
+    } catch (ExecutionException ex) {
+      assertTrue(ex.getCause() instanceof TimeoutException);
+      assertEquals("service <stuck> hasn't been started in 50 MILLISECONDS", ex.getCause().getMessage());
+    }
+    assertEquals(Arrays.asList("start independent"), events);
+    assertFalse(dependent.isRunning());
+  }
+
+  @Test public void dependencyCycle() {
+    Service a = new RecordingService("a", new CopyOnWriteArrayList<>());
+    Service b = new RecordingService("b", new CopyOnWriteArrayList<>());
+    ServiceManager serviceManager = new ServiceManager();
+    serviceManager.addShutdownHook(a);
+    try {
+      serviceManager.addDependency(a, b);
+      fail("addDependency must throw IllegalStateException");
+    } catch (IllegalStateException ex) {
+      assertEquals("service <b> has never been added", ex.getMessage());
+    }
+    serviceManager.addShutdownHook(b);
+    serviceManager.addDependency(a, b);
+    try {
+      serviceManager.addDependency(b, a);
+      fail("addDependency must throw IllegalStateException");
+    } catch (IllegalStateException ex) {
+      assertEquals("dependency of service <b> on service <a> forms a cycle", ex.getMessage());
+    }
+  }
+
+  private static final class RecordingService extends AbstractService {
+    private final List<String> events;
+
+    RecordingService(String serviceName, List<String> events) {
+      super(serviceName);
+      this.events = events;
+    }
+
+    @Override protected void doStart() {
+      events.add("start " + serviceName());
+      started();
+    }
+
+    @Override protected void doStop() {
+      events.add("stop " + serviceName());
+      stopped();
+    }
+  }
 }
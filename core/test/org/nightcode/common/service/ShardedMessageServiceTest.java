@@ -0,0 +1,164 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link ShardedMessageService}.
+ */
+public class ShardedMessageServiceTest {
+
+  private static final class Shard extends AbstractAsyncMessageService<long[]> {
+    final Map<Long, List<Long>> received;
+    final Map<Long, Thread> threads;
+    final CountDownLatch done;
+
+    Shard(int index, Map<Long, List<Long>> received, Map<Long, Thread> threads, CountDownLatch done) {
+      super("shard-" + index);
+      this.received = received;
+      this.threads = threads;
+      this.done = done;
+    }
+
+    @Override protected void process(long[] message) {
+      received.computeIfAbsent(message[0], key -> new ArrayList<>()).add(message[1]);
+      Thread previous = threads.putIfAbsent(message[0], Thread.currentThread());
+      if (previous != null && previous != Thread.currentThread()) {
+        fail("key " + message[0] + " has been processed by two threads");
+      }
+      done.countDown();
+    }
+  }
+
+  @Test public void perKeyOrdering() throws Exception {
+    int keys = 16;
+    int messages = 1000;
+    Map<Long, List<Long>> received = new ConcurrentHashMap<>();
+    Map<Long, Thread> threads = new ConcurrentHashMap<>();
+    CountDownLatch done = new CountDownLatch(keys * messages);
+    ShardedMessageService<long[]> service = new ShardedMessageService<>("sharded", 4
+        , message -> message[0], index -> new Shard(index, received, threads, done));
+
+    assertEquals(Service.State.RUNNING, service.start().get(1, TimeUnit.SECONDS));
+    for (long seq = 0; seq < messages; seq++) {
+      for (long key = 0; key < keys; key++) {
+        assertTrue(service.submit(new long[] {key, seq}));
+      }
+    }
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(Service.State.TERMINATED, service.stop().get(1, TimeUnit.SECONDS));
+
+    assertEquals(keys, received.size());
+    for (List<Long> sequence : received.values()) {
+      assertEquals(messages, sequence.size());
+      for (int i = 0; i < messages; i++) {
+        assertEquals(Long.valueOf(i), sequence.get(i));
+      }
+    }
+    // keys are spread over all shards
+    assertEquals(4, threads.values().stream().distinct().count());
+  }
+
+  @Test public void awaitProcessingCount() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    ShardedMessageService<Integer> service = new ShardedMessageService<>("sharded", 2, message -> message
+        , index -> new AbstractAsyncMessageService<Integer>("shard-" + index) {
+          @Override protected void process(Integer message) throws Exception {
+            release.await();
+          }
+        });
+    assertFalse(service.submit(1));
+    service.start().get(1, TimeUnit.SECONDS);
+    for (int i = 0; i < 10; i++) {
+      assertTrue(service.submit(i));
+    }
+    Thread.sleep(100);
+    // one message of each shard is being processed
+    assertEquals(8, service.awaitProcessingCount());
+    release.countDown();
+    service.stop().get(1, TimeUnit.SECONDS);
+    assertFalse(service.submit(1));
+  }
+
+  @Test public void stoppedByServiceManager() throws Exception {
+    ShardedMessageService<Integer> service = new ShardedMessageService<>("sharded", 3, message -> message
+        , index -> new AbstractAsyncMessageService<Integer>("shard-" + index) {
+          @Override protected void process(Integer message) {
+            // do nothing
+          }
+        });
+    service.start().get(1, TimeUnit.SECONDS);
+
+    ServiceManager serviceManager = new ServiceManager();
+    serviceManager.addShutdownHook(service);
+    serviceManager.shutdownAll(1, TimeUnit.SECONDS);
+
+    for (MessageService<Integer> shard : service.shards()) {
+      assertEquals(Service.State.TERMINATED, shard.stop().get());
+    }
+    assertEquals(Service.State.TERMINATED, service.stop().get());
+  }
+
+  @Test public void shardFailedToStart() throws Exception {
+    List<MessageService<Integer>> shards = new ArrayList<>();
+    shards.add(new AbstractAsyncMessageService<Integer>("shard-0") {
+      @Override protected void process(Integer message) {
+        // do nothing
+      }
+    });
+    shards.add(new AbstractAsyncMessageService<Integer>("shard-1") {
+      @Override protected void onStart() {
+        throw new IllegalStateException("shard failed");
+      }
+
+      @Override protected void process(Integer message) {
+        // do nothing
+      }
+    });
+    ShardedMessageService<Integer> service = new ShardedMessageService<>("sharded", message -> message, shards);
+    try {
+      service.start().get(1, TimeUnit.SECONDS);
+      fail("should throw exception");
+    } catch (ExecutionException ex) {
+      assertEquals("shard failed", ex.getCause().getMessage());
+    }
+    assertEquals(Service.State.TERMINATED, shards.get(0).stop().get(1, TimeUnit.SECONDS));
+  }
+
+  @Test public void sameKeySameShard() {
+    ShardedMessageService<String> service = new ShardedMessageService<>("sharded", 5, message -> message.substring(0, 1)
+        , index -> new AbstractAsyncMessageService<String>("shard-" + index) {
+          @Override protected void process(String message) {
+            // do nothing
+          }
+        });
+    assertEquals(service.shardIndex("a1"), service.shardIndex("a2"));
+    assertEquals(service.shardIndex("b1"), service.shardIndex("b2"));
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.logging;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link AsyncLoggingHandler}.
+ */
+public class AsyncLoggingHandlerTest {
+
+  private static final String RECORD = "\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}\\.\\d{3} \\[%s/AsyncLoggingHandlerTest\\]: %s";
+
+  @Test public void concurrentRecords() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    AsyncLoggingHandler handler = new AsyncLoggingHandler("logger", out, 16,
+        org.nightcode.common.service.WaitStrategy.yielding());
+    handler.start().get();
+
+    int threads = 4;
+    int records = 1000;
+    CountDownLatch done = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      int thread = t;
+      new Thread(() -> {
+        for (int i = 0; i < records; i++) {
+          handler.log(AsyncLoggingHandlerTest.class, "record <{}> of <{}>", i, thread);
+        }
+        done.countDown();
+      }, "writer-" + t).start();
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    handler.stop().get();
+
+    String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+    assertEquals(threads * records, lines.length);
+    int[] next = new int[threads];
+    for (String line : lines) {
+      int thread = line.charAt(line.length() - 2) - '0';
+      assertTrue(line, line.matches(String.format(RECORD, "writer-" + thread, "record <" + next[thread] + "> of <" + thread + ">")));
+      next[thread]++;
+    }
+  }
+
+  @Test public void formats() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    AsyncLoggingHandler handler = new AsyncLoggingHandler("logger", out);
+    handler.start().get();
+    handler.log(AsyncLoggingHandlerTest.class, "{} and {}", "one");
+    handler.log(AsyncLoggingHandlerTest.class, "{}", "two", "three");
+    handler.log(AsyncLoggingHandlerTest.class, () -> "\u00e9t\u00e9 \u20ac \ud83d\ude00", null);
+    handler.log(AsyncLoggingHandlerTest.class, new IllegalStateException("failure"), "<{}>", 4);
+    handler.stop().get();
+
+    List<String> lines = new ArrayList<>(Arrays.asList(new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")));
+    String thread = Thread.currentThread().getName();
+    assertTrue(lines.get(0), lines.get(0).matches(String.format(RECORD, thread, "one and \\{}")));
+    assertTrue(lines.get(1), lines.get(1).matches(String.format(RECORD, thread, "two")));
+    assertTrue(lines.get(2), lines.get(2).endsWith(": \u00e9t\u00e9 \u20ac \ud83d\ude00"));
+    assertTrue(lines.get(3), lines.get(3).endsWith(": <4>"));
+    assertEquals("java.lang.IllegalStateException: failure", lines.get(4));
+  }
+
+  @Test public void recordClaimedBeforeStop() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    AsyncLoggingHandler handler = new AsyncLoggingHandler("logger", out);
+    handler.start().get();
+    CountDownLatch filling = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Object slow = new Object() {
+      @Override public String toString() {
+        filling.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        return "slow";
+      }
+    };
+    Thread thread = new Thread(() -> handler.log(AsyncLoggingHandlerTest.class, "<{}>", slow));
+    thread.start();
+    assertTrue(filling.await(1, TimeUnit.SECONDS));
+    // the record is published after the service has been asked to stop
+    CompletableFuture<?> stopped = handler.stop();
+    Thread.sleep(20);
+    release.countDown();
+    stopped.get(1, TimeUnit.SECONDS);
+    thread.join();
+    assertTrue(new String(out.toByteArray(), StandardCharsets.UTF_8).endsWith("]: <slow>\n"));
+  }
+
+  @Test public void notRunning() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    AsyncLoggingHandler handler = new AsyncLoggingHandler("logger", out);
+    handler.log(AsyncLoggingHandlerTest.class, "before start");
+    assertTrue(new String(out.toByteArray(), StandardCharsets.UTF_8).endsWith("]: before start\n"));
+
+    // the service logs its own state through the handler
+    Log.setLoggingHandler(handler, handler, handler, handler, handler, handler);
+    try {
+      handler.start().get();
+      handler.stop().get();
+    } finally {
+      Log.setLoggingHandler(PrintStreamLoggingHandler.OUT, PrintStreamLoggingHandler.OUT, PrintStreamLoggingHandler.OUT,
+          PrintStreamLoggingHandler.ERR, PrintStreamLoggingHandler.ERR, PrintStreamLoggingHandler.ERR);
+    }
+    handler.log(AsyncLoggingHandlerTest.class, "after stop");
+
+    Set<String> messages = new HashSet<>();
+    for (String line : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+      messages.add(line.substring(line.indexOf("]: ") + 3));
+    }
+    assertTrue(messages.toString(), messages.contains("[logger]: service has been started"));
+    assertTrue(messages.toString(), messages.contains("[logger]: service has been stopped"));
+    assertTrue(messages.toString(), messages.contains("after stop"));
+  }
+}
@@ -0,0 +1,253 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.logging;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link BinaryLogWriter}.
+ */
+public class BinaryLogWriterTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static List<Path> segments(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.sorted().collect(Collectors.toList());
+    }
+  }
+
+  private static List<String> decode(Path segment) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    BinaryLogDecoder.decode(segment, sb);
+    return sb.length() == 0 ? new ArrayList<>() : new ArrayList<>(Arrays.asList(sb.toString().split("\n")));
+  }
+
+  private static String message(String line) {
+    return line.substring(line.indexOf("]: ") + 3);
+  }
+
+  @Test public void roundTrip() throws Exception {
+    Path directory = folder.newFolder().toPath();
+    try (BinaryLogWriter writer = new BinaryLogWriter(directory, "app")) {
+      writer.info().log(BinaryLogWriterTest.class, "plain {}");
+      writer.debug().log(BinaryLogWriterTest.class, "int {}, long {}, double {}", 42, 1L << 40, 0.5d);
+      writer.warn().log(BinaryLogWriterTest.class, "{} {} {} {} {} {}", true, 'c', (byte) 7, (short) 8, 1.5f, null);
+      writer.error().log(BinaryLogWriterTest.class, "text <{}>, object <{}>", "\u00e9\u4e2d\uD83D\uDE00", Arrays.asList(1, 2));
+      writer.trace().log(BinaryLogWriterTest.class, () -> "supplied {}");
+      writer.fatal().log(BinaryLogWriterTest.class, new IllegalStateException("failure"), "failed <{}>", 1);
+    }
+
+    List<Path> segments = segments(directory);
+    assertEquals(1, segments.size());
+    assertEquals("app-00000000.blog", segments.get(0).getFileName().toString());
+
+    List<String> lines = decode(segments.get(0));
+    String prefix = " [" + Thread.currentThread().getName() + "/BinaryLogWriterTest]: ";
+    assertTrue(lines.get(0), lines.get(0).matches("\\d{4}-\\d\\d-\\d\\dT\\d\\d:\\d\\d:\\d\\d\\.\\d{9} INFO .*"));
+    assertTrue(lines.get(0), lines.get(0).endsWith(" INFO" + prefix + "plain {}"));
+    assertTrue(lines.get(1), lines.get(1).endsWith(" DEBUG" + prefix + "int 42, long 1099511627776, double 0.5"));
+    assertTrue(lines.get(2), lines.get(2).endsWith(" WARN" + prefix + "true c 7 8 1.5 null"));
+    assertTrue(lines.get(3), lines.get(3).endsWith(" ERROR" + prefix + "text <\u00e9\u4e2d\uD83D\uDE00>, object <[1, 2]>"));
+    assertTrue(lines.get(4), lines.get(4).endsWith(" TRACE" + prefix + "supplied {}"));
+    assertTrue(lines.get(5), lines.get(5).endsWith(" FATAL" + prefix + "failed <1>"));
+    assertEquals("java.lang.IllegalStateException: failure", lines.get(6));
+    assertTrue(lines.get(7), lines.get(7).contains("BinaryLogWriterTest.roundTrip"));
+  }
+
+  @Test public void truncateLongArguments() throws Exception {
+    Path directory = folder.newFolder().toPath();
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < BinaryLogWriter.MAX_STRING_BYTES; i++) {
+      sb.append('\u00e9');
+    }
+    Object[] args = new Object[BinaryLogWriter.MAX_ARGUMENTS + 1];
+    Arrays.fill(args, 1);
+    try (BinaryLogWriter writer = new BinaryLogWriter(directory, "app")) {
+      writer.info().log(BinaryLogWriterTest.class, "{}", sb);
+      writer.info().log(BinaryLogWriterTest.class, "many {}{}{}{}{}{}{}{}{}{}{}{}{}{}{}{}{}", args);
+    }
+    List<String> lines = decode(segments(directory).get(0));
+    assertEquals(sb.substring(0, BinaryLogWriter.MAX_STRING_BYTES / 2), message(lines.get(0)));
+    assertEquals("many 11111111111111111", message(lines.get(1)));
+  }
+
+  @Test public void rollSegments() throws Exception {
+    Path directory = folder.newFolder().toPath();
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 10_000; i++) {
+      sb.append('x');
+    }
+    String payload = sb.toString();
+    try (BinaryLogWriter writer = new BinaryLogWriter(directory, "app", 1024 * 1024)) {
+      for (int i = 0; i < 300; i++) {
+        writer.info().log(BinaryLogWriterTest.class, "record <{}> {}", i, payload);
+      }
+    }
+
+    List<Path> segments = segments(directory);
+    assertTrue(segments.toString(), segments.size() > 1);
+    List<String> messages = new ArrayList<>();
+    for (Path segment : segments) {
+      assertTrue(segment.toString(), Files.size(segment) < 1024 * 1024);
+      // every segment carries the definitions it refers to
+      for (String line : decode(segment)) {
+        messages.add(message(line));
+      }
+    }
+    assertEquals(300, messages.size());
+    for (int i = 0; i < 300; i++) {
+      assertEquals("record <" + i + "> " + payload, messages.get(i));
+    }
+  }
+
+  @Test public void rollFailure() throws Exception {
+    Path directory = folder.newFolder().toPath();
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 10_000; i++) {
+      sb.append('x');
+    }
+    String payload = sb.toString();
+    try (BinaryLogWriter writer = new BinaryLogWriter(directory, "app", 1024 * 1024)) {
+      // a directory in place of the next segment fails the roll
+      Path blocked = Files.createDirectory(directory.resolve("app-00000001.blog"));
+      for (int i = 0; i < 60; i++) {
+        writer.info().log(BinaryLogWriterTest.class, "record <{}> {}", i, payload);
+      }
+      Files.delete(blocked);
+      writer.info().log(BinaryLogWriterTest.class, "recovered");
+    }
+
+    List<Path> segments = segments(directory);
+    assertEquals(2, segments.size());
+    assertTrue(decode(segments.get(0)).size() < 60);
+    assertEquals("recovered", message(decode(segments.get(1)).get(0)));
+  }
+
+  @Test public void decodeOpenSegment() throws Exception {
+    Path directory = folder.newFolder().toPath();
+    try (BinaryLogWriter writer = new BinaryLogWriter(directory, "app", 1024 * 1024)) {
+      writer.info().log(BinaryLogWriterTest.class, "first");
+      writer.info().log(BinaryLogWriterTest.class, "second");
+      List<String> lines = decode(segments(directory).get(0));
+      assertEquals(2, lines.size());
+      assertEquals("second", message(lines.get(1)));
+    }
+  }
+
+  @Test public void newSegmentOnCreation() throws Exception {
+    Path directory = folder.newFolder().toPath();
+    try (BinaryLogWriter writer = new BinaryLogWriter(directory, "app")) {
+      writer.info().log(BinaryLogWriterTest.class, "first");
+    }
+    try (BinaryLogWriter writer = new BinaryLogWriter(directory, "app")) {
+      writer.info().log(BinaryLogWriterTest.class, "second");
+    }
+    List<Path> segments = segments(directory);
+    assertEquals(2, segments.size());
+    assertEquals("app-00000001.blog", segments.get(1).getFileName().toString());
+    assertEquals("second", message(decode(segments.get(1)).get(0)));
+  }
+
+  @Test public void recordsAfterCloseAreDiscarded() throws Exception {
+    Path directory = folder.newFolder().toPath();
+    BinaryLogWriter writer = new BinaryLogWriter(directory, "app");
+    writer.info().log(BinaryLogWriterTest.class, "first");
+    writer.close();
+    writer.info().log(BinaryLogWriterTest.class, "second");
+    assertEquals(1, decode(segments(directory).get(0)).size());
+  }
+
+  @Test public void decodeInvalidFile() throws Exception {
+    Path file = folder.newFile().toPath();
+    Files.write(file, "text".getBytes(StandardCharsets.UTF_8));
+    try {
+      BinaryLogDecoder.decode(file, new StringBuilder());
+      fail("must throw IOException");
+    } catch (IOException ex) {
+      assertTrue(ex.getMessage(), ex.getMessage().contains("isn't a binary log segment"));
+    }
+  }
+
+  @Test public void nestedLogging() throws Exception {
+    Path directory = folder.newFolder().toPath();
+    char[] payload = new char[10_000];
+    Arrays.fill(payload, 'x');
+    try (BinaryLogWriter writer = new BinaryLogWriter(directory, "app", 1024 * 1024)) {
+      Object nested = new Object() {
+        @Override public String toString() {
+          // enough records to roll the segment while the outer record is rendered
+          for (int i = 0; i < 60; i++) {
+            writer.info().log(BinaryLogWriterTest.class, "nested <{}> {}", i, new String(payload));
+          }
+          return "nested";
+        }
+      };
+      writer.info().log(BinaryLogWriterTest.class, "first");
+      writer.warn().log(BinaryLogWriterTest.class, new IllegalStateException("failure"), "outer <{}>", nested);
+      writer.info().log(BinaryLogWriterTest.class, "after");
+    }
+
+    List<Path> segments = segments(directory);
+    assertEquals(2, segments.size());
+    List<String> messages = new ArrayList<>();
+    for (Path segment : segments) {
+      for (String line : decode(segment)) {
+        if (line.contains("]: ")) {
+          messages.add(message(line));
+        }
+      }
+    }
+    assertEquals(63, messages.size());
+    assertEquals("first", messages.get(0));
+    for (int i = 0; i < 60; i++) {
+      assertTrue(messages.get(i + 1), messages.get(i + 1).startsWith("nested <" + i + "> xxx"));
+    }
+    assertEquals("outer <nested>", messages.get(61));
+    assertEquals("after", messages.get(62));
+  }
+
+  @Test public void invalidArguments() throws Exception {
+    Path directory = folder.newFolder().toPath();
+    try {
+      new BinaryLogWriter(directory, "", 1024 * 1024);
+      fail("must throw IllegalArgumentException");
+    } catch (IllegalArgumentException ex) {
+      assertEquals("prefix <> must be a non-empty file name", ex.getMessage());
+    }
+    try {
+      new BinaryLogWriter(directory, "app", 4096);
+      fail("must throw IllegalArgumentException");
+    } catch (IllegalArgumentException ex) {
+      assertEquals("segment size <4096> must be in range [1048576, 1073741824]", ex.getMessage());
+    }
+  }
+}
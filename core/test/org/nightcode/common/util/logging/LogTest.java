@@ -0,0 +1,96 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.logging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link Log}.
+ */
+public class LogTest {
+
+  private static final class RecordingHandler implements LoggingHandler {
+    final List<String> records = new ArrayList<>();
+
+    @Override public boolean isEnabled(@NotNull Class<?> clazz) {
+      return true;
+    }
+
+    @Override public void log(@NotNull Class<?> clazz, String message) {
+      records.add(message);
+    }
+
+    @Override public void log(@NotNull Class<?> clazz, String message, Object... params) {
+      records.add(message + Arrays.toString(params));
+    }
+
+    @Override public void log(@NotNull Class<?> clazz, String message, Throwable thrown) {
+      records.add(message + ' ' + thrown.getMessage());
+    }
+
+    @Override public void log(@NotNull Class<?> clazz, Supplier<String> supplier, Throwable thrown) {
+      records.add(supplier.get());
+    }
+
+    @Override public void log(@NotNull Class<?> clazz, Throwable thrown, String message, Object... params) {
+      records.add(thrown.getMessage() + ' ' + message + Arrays.toString(params));
+    }
+  }
+
+  @Test public void enabledLevels() {
+    LoggingHandler noop = NoopLoggingHandler.INSTANCE;
+    LoggingHandler out = PrintStreamLoggingHandler.OUT;
+    LoggingHandler err = PrintStreamLoggingHandler.ERR;
+    try {
+      Log.setLoggingHandler(noop, noop, out, err, err, err);
+      assertFalse(Log.isTraceEnabled());
+      assertFalse(Log.isDebugEnabled());
+      assertTrue(Log.isInfoEnabled());
+      assertTrue(Log.isWarnEnabled());
+      assertTrue(Log.isErrorEnabled());
+      assertTrue(Log.isFatalEnabled());
+      assertFalse(Log.debug().isEnabled(LogTest.class));
+      Log.debug().log(LogTest.class, "discarded {} {} {} {}", 1, 2, 3, 4);
+    } finally {
+      Log.setLoggingHandler(out, out, out, err, err, err);
+    }
+    assertTrue(Log.isTraceEnabled());
+    assertTrue(Log.isDebugEnabled());
+  }
+
+  @Test public void fixedArity() {
+    RecordingHandler handler = new RecordingHandler();
+    Exception ex = new Exception("ex");
+    handler.log(LogTest.class, "a", 1);
+    handler.log(LogTest.class, "b", 1, 2);
+    handler.log(LogTest.class, "c", 1, 2, 3);
+    handler.log(LogTest.class, "d", 1, 2, 3, 4);
+    handler.log(LogTest.class, "e", ex);
+    handler.log(LogTest.class, ex, "f", 1);
+    handler.log(LogTest.class, ex, "g", 1, 2, 3, 4);
+    assertEquals(Arrays.asList("a[1]", "b[1, 2]", "c[1, 2, 3]", "d[1, 2, 3, 4]", "e ex", "ex f[1]", "ex g[1, 2, 3, 4]"),
+        handler.records);
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.logging;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link PlaceholderFormatter}.
+ */
+public class PlaceholderFormatterTest {
+
+  @Test public void format() {
+    assertEquals("a 1, b 2", PlaceholderFormatter.format("a {}, b {}", 1, 2));
+    assertEquals("1 and {}", PlaceholderFormatter.format("{} and {}", 1));
+    assertEquals("[1]", PlaceholderFormatter.format("[{}]", 1, 2));
+    assertEquals("null {}", PlaceholderFormatter.format("{} {}", (Object) null));
+    assertEquals("no placeholders", PlaceholderFormatter.format("no placeholders", 1));
+    assertEquals("100% {}", PlaceholderFormatter.format("100% {}"));
+    assertEquals("null", PlaceholderFormatter.format(null, 1));
+    assertEquals("{1}{}", PlaceholderFormatter.format("{{}}{}", 1));
+  }
+
+  @Test public void appendTo() {
+    StringBuilder sb = new StringBuilder("> ");
+    PlaceholderFormatter.appendTo(sb, "<{}><{}>", new Object[] {"x", 'y'});
+    assertEquals("> <x><y>", sb.toString());
+  }
+
+  @Test public void hasPlaceholders() {
+    assertTrue(PlaceholderFormatter.hasPlaceholders("{}"));
+    assertFalse(PlaceholderFormatter.hasPlaceholders("%s { }"));
+  }
+
+  @Test public void nestedFormat() {
+    Object nested = new Object() {
+      @Override public String toString() {
+        return PlaceholderFormatter.format("<{}>", "inner");
+      }
+    };
+    assertEquals("outer <inner> 2", PlaceholderFormatter.format("outer {} {}", nested, 2));
+    assertEquals("outer 1", PlaceholderFormatter.format("outer {}", 1));
+  }
+
+  @Test public void largeMessage() {
+    StringBuilder arg = new StringBuilder();
+    for (int i = 0; i < 10_000; i++) {
+      arg.append('x');
+    }
+    assertEquals(10_002, PlaceholderFormatter.format("<{}>", arg).length());
+    assertEquals("<y>", PlaceholderFormatter.format("<{}>", "y"));
+  }
+}
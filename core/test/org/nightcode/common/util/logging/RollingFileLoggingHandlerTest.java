@@ -0,0 +1,141 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.logging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link RollingFileLoggingHandler}.
+ */
+public class RollingFileLoggingHandlerTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static List<Path> segments(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.sorted().collect(Collectors.toList());
+    }
+  }
+
+  private static List<String> messages(Path directory) throws IOException {
+    List<String> messages = new ArrayList<>();
+    for (Path segment : segments(directory)) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (InputStream in = segment.toString().endsWith(".gz")
+          ? new GZIPInputStream(Files.newInputStream(segment)) : Files.newInputStream(segment)) {
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+          bytes.write(buffer, 0, n);
+        }
+      }
+      for (String line : new String(bytes.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+        messages.add(line.substring(line.indexOf("]: ") + 3));
+      }
+    }
+    return messages;
+  }
+
+  @Test public void rollBySize() throws Exception {
+    Path directory = folder.newFolder().toPath();
+    RollingFileLoggingHandler handler = new RollingFileLoggingHandler("logger", directory, "app", 4096, 0L,
+        TimeUnit.MILLISECONDS, true);
+    handler.start().get();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      handler.log(RollingFileLoggingHandlerTest.class, "record <{}>", i);
+      expected.add("record <" + i + ">");
+    }
+    handler.stop().get();
+
+    List<Path> segments = segments(directory);
+    assertTrue(segments.toString(), segments.size() > 5);
+    for (Path segment : segments) {
+      assertTrue(segment.toString(), segment.getFileName().toString().matches("app-\\d{8}\\.log\\.gz"));
+    }
+    assertEquals(expected, messages(directory));
+  }
+
+  @Test public void rollByTime() throws Exception {
+    Path directory = folder.newFolder().toPath();
+    RollingFileLoggingHandler handler = new RollingFileLoggingHandler("logger", directory, "app", 1 << 20, 50L,
+        TimeUnit.MILLISECONDS, false);
+    handler.start().get();
+    handler.log(RollingFileLoggingHandlerTest.class, "first");
+    Thread.sleep(100L);
+    handler.log(RollingFileLoggingHandlerTest.class, "second");
+    handler.stop().get();
+    handler.log(RollingFileLoggingHandlerTest.class, "after stop");
+
+    // records written after the service has stopped go to a new segment
+    List<Path> segments = segments(directory);
+    assertEquals(3, segments.size());
+    assertEquals("app-00000000.log", segments.get(0).getFileName().toString());
+    assertEquals("app-00000002.log", segments.get(2).getFileName().toString());
+    // closed segments are truncated to their records
+    List<String> messages = messages(directory);
+    assertEquals(3, messages.size());
+    assertEquals("first", messages.get(0));
+    assertTrue(messages.toString(), messages.contains("second"));
+    assertEquals("after stop", messages.get(2));
+  }
+
+  @Test public void newSegmentOnCreation() throws Exception {
+    Path directory = folder.newFolder().toPath();
+    for (int i = 0; i < 2; i++) {
+      RollingFileLoggingHandler handler = new RollingFileLoggingHandler("logger", directory, "app");
+      handler.start().get();
+      handler.log(RollingFileLoggingHandlerTest.class, "handler <{}>", i);
+      handler.stop().get();
+    }
+    assertEquals(2, segments(directory).size());
+    assertEquals("[handler <0>, handler <1>]", messages(directory).toString());
+  }
+
+  @Test public void invalidArguments() throws IOException {
+    Path directory = folder.newFolder().toPath();
+    try {
+      new RollingFileLoggingHandler("logger", directory, "app", 1024, 0L, TimeUnit.MILLISECONDS, false);
+      fail("segment size must be validated");
+    } catch (IllegalArgumentException expected) {
+      assertEquals("segment size <1024> must be in range [4096, 1073741824]", expected.getMessage());
+    }
+    try {
+      new RollingFileLoggingHandler("logger", directory, "a/b");
+      fail("prefix must be validated");
+    } catch (IllegalArgumentException expected) {
+      assertEquals("prefix <a/b> must be a non-empty file name", expected.getMessage());
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.monitoring;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link InMemoryMeter}.
+ */
+public class InMemoryMeterTest {
+
+  @Test public void ewmaRates() {
+    AtomicLong clock = new AtomicLong();
+    InMemoryMeter meter = new InMemoryMeter(clock::get, 60, "events", "events");
+
+    meter.mark(50);
+    assertEquals(0.0, meter.oneMinuteRate(), 0.0);
+
+    clock.set(TimeUnit.SECONDS.toNanos(5));
+    assertEquals(10.0, meter.oneMinuteRate(), 0.0001);
+    assertEquals(10.0, meter.fiveMinuteRate(), 0.0001);
+    assertEquals(10.0, meter.fifteenMinuteRate(), 0.0001);
+
+    // a minute without events decays the one-minute rate by e
+    clock.set(TimeUnit.SECONDS.toNanos(65));
+    assertEquals(10.0 / Math.E, meter.oneMinuteRate(), 0.0001);
+    assertEquals(10.0 * Math.exp(-0.2), meter.fiveMinuteRate(), 0.0001);
+    assertEquals(10.0 * Math.exp(-1.0 / 15), meter.fifteenMinuteRate(), 0.0001);
+    assertEquals(50, meter.count());
+  }
+
+  @Test public void windowRate() {
+    AtomicLong clock = new AtomicLong();
+    InMemoryMeter meter = new InMemoryMeter(clock::get, 10, "events", "events");
+
+    for (int second = 1; second <= 30; second++) {
+      meter.mark(second <= 20 ? 100 : 10);
+      clock.set(TimeUnit.SECONDS.toNanos(second));
+      meter.windowRate();
+    }
+    assertEquals(10.0, meter.windowRate(), 0.0001);
+
+    clock.set(TimeUnit.SECONDS.toNanos(35));
+    assertEquals(5.0, meter.windowRate(), 0.0001);
+  }
+
+  @Test public void youngerThanWindow() {
+    AtomicLong clock = new AtomicLong();
+    InMemoryMeter meter = new InMemoryMeter(clock::get, 60, "events", "events");
+    assertEquals(0.0, meter.windowRate(), 0.0);
+
+    meter.mark(30);
+    clock.set(TimeUnit.SECONDS.toNanos(3));
+    assertEquals(10.0, meter.windowRate(), 0.0001);
+  }
+
+  @Test public void registeredThroughEngine() {
+    InMemoryMonitoringEngine engine = new InMemoryMonitoringEngine();
+    Meter meter = (Meter) CollectorType.METER.create(engine, "messages", "messages", "queue");
+    meter.tags("input").mark();
+    meter.tags("input").mark(2);
+    assertEquals(3, meter.tags("input").count());
+    assertTrue(meter.tags("input").windowRate() >= 0.0);
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.monitoring;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link InMemoryMonitoringEngine}.
+ */
+public class InMemoryMonitoringEngineTest {
+
+  @Test public void counter() {
+    MonitoringEngine engine = new InMemoryMonitoringEngine();
+    Counter counter = engine.registerCounter("requests", "total requests", "method");
+
+    counter.inc();
+    counter.inc(5);
+    counter.dec(2);
+    assertEquals(4, counter.getCount());
+
+    Counter.Child get = counter.tags("GET");
+    get.inc();
+    get.inc();
+    assertSame(get, counter.tags("GET"));
+    assertEquals(2, counter.tags("GET").getCount());
+    assertEquals(0, counter.tags("POST").getCount());
+    assertEquals(4, counter.getCount());
+  }
+
+  @Test public void counterConcurrentUpdates() throws Exception {
+    MonitoringEngine engine = new InMemoryMonitoringEngine();
+    Counter counter = engine.registerCounter("events", "events", "type");
+
+    int threads = 8;
+    int iterations = 100_000;
+    CountDownLatch latch = new CountDownLatch(threads);
+    for (int i = 0; i < threads; i++) {
+      final String type = (i & 1) == 0 ? "even" : "odd";
+      new Thread(() -> {
+        for (int j = 0; j < iterations; j++) {
+          counter.tags(type).inc();
+        }
+        latch.countDown();
+      }).start();
+    }
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+    assertEquals(threads / 2 * iterations, counter.tags("even").getCount());
+    assertEquals(threads / 2 * iterations, counter.tags("odd").getCount());
+  }
+
+  @Test public void manyChildren() {
+    MonitoringEngine engine = new InMemoryMonitoringEngine();
+    Counter counter = engine.registerCounter("connections", "connections", "host", "port");
+    for (int i = 0; i < 1000; i++) {
+      counter.tags("host" + i, Integer.toString(i)).inc(i);
+    }
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i, counter.tags("host" + i, Integer.toString(i)).getCount());
+    }
+  }
+
+  @Test public void wrongNumberOfTags() {
+    MonitoringEngine engine = new InMemoryMonitoringEngine();
+    Counter counter = engine.registerCounter("requests", "total requests", "method");
+    try {
+      counter.tags("GET", "200");
+      fail("tags must throw IllegalArgumentException");
+    } catch (IllegalArgumentException ex) {
+      assertEquals("expected 1 tag values but was 2", ex.getMessage());
+    }
+  }
+
+  @Test public void registerTwice() {
+    MonitoringEngine engine = new InMemoryMonitoringEngine();
+    Counter counter = engine.registerCounter("requests", "total requests");
+    try {
+      engine.registerHistogram("requests", "total requests");
+      fail("registerHistogram must throw IllegalStateException");
+    } catch (IllegalStateException ex) {
+      assertEquals("collector <requests> has already been registered", ex.getMessage());
+    }
+
+    engine.registerSilent(() -> new StripedCounter("requests", "total requests"));
+
+    assertTrue(engine.deregister(counter));
+    assertFalse(engine.deregister(counter));
+    engine.registerHistogram("requests", "total requests");
+  }
+
+  @Test public void timer() throws Exception {
+    MonitoringEngine engine = new InMemoryMonitoringEngine();
+    Timer timer = engine.registerTimer("latency", "latency", "op");
+
+    timer.update(10, TimeUnit.MILLISECONDS);
+    timer.time(() -> { });
+    Timer.Context context = timer.tags("read").startTimer();
+    Thread.sleep(1);
+    context.stop();
+
+    assertEquals(2, timer.count());
+    assertEquals(1, timer.tags("read").count());
+  }
+
+  @Test public void timerBeginEnd() throws Exception {
+    InMemoryMonitoringEngine engine = new InMemoryMonitoringEngine();
+    InMemoryTimer timer = engine.registerTimer("latency", "latency", "op");
+
+    long start = timer.begin();
+    Thread.sleep(2);
+    long duration = timer.end(start);
+    assertTrue(duration >= TimeUnit.MILLISECONDS.toNanos(2));
+
+    Timer.Child child = timer.tags("write");
+    child.end(child.begin());
+    assertEquals(7, (int) child.time(() -> 7));
+
+    assertEquals(1, timer.count());
+    assertEquals(2, timer.tags("write").count());
+    assertTrue(timer.snapshot().max() >= TimeUnit.MILLISECONDS.toNanos(2));
+  }
+
+  @Test public void histogramSnapshot() {
+    InMemoryMonitoringEngine engine = new InMemoryMonitoringEngine();
+    InMemoryHistogram histogram = engine.registerHistogram("size", "message size", "queue");
+    for (int i = 1; i <= 100; i++) {
+      histogram.tags("input").update(i);
+    }
+    histogram.update(7);
+
+    LogLinearHistogram.Snapshot snapshot = histogram.tags("input").snapshotAndReset();
+    assertEquals(100, snapshot.count());
+    assertEquals(100, snapshot.max());
+    assertEquals(50, snapshot.p50());
+    assertEquals(0, histogram.tags("input").count());
+    assertEquals(1, histogram.snapshot().count());
+
+    InMemoryTimer timer = engine.registerTimer("latency", "latency");
+    timer.update(3, TimeUnit.MILLISECONDS);
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(3), timer.snapshot().max());
+  }
+}
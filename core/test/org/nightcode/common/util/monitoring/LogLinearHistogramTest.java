@@ -0,0 +1,177 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.monitoring;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link LogLinearHistogram}.
+ */
+public class LogLinearHistogramTest {
+
+  @Test public void percentiles() {
+    LogLinearHistogram histogram = new LogLinearHistogram(7, Long.MAX_VALUE);
+    for (int i = 1; i <= 10_000; i++) {
+      histogram.record(i);
+    }
+
+    LogLinearHistogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(10_000, snapshot.count());
+    assertEquals(10_000, snapshot.max());
+    assertEquals(5000.5, snapshot.mean(), 0.0);
+    assertWithin(5_000, snapshot.p50(), 1.0 / 128);
+    assertWithin(9_900, snapshot.p99(), 1.0 / 128);
+    assertWithin(9_990, snapshot.p999(), 1.0 / 128);
+    assertEquals(1, snapshot.valueAtPercentile(0.0));
+    assertEquals(10_000, snapshot.valueAtPercentile(100.0));
+  }
+
+  @Test public void exactLowValues() {
+    LogLinearHistogram histogram = new LogLinearHistogram(4, 1000);
+    for (int i = 0; i < 16; i++) {
+      histogram.record(i);
+    }
+    LogLinearHistogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(7, snapshot.p50());
+    assertEquals(15, snapshot.max());
+  }
+
+  @Test public void bucketBoundaries() {
+    for (int precision = 1; precision <= LogLinearHistogram.MAX_PRECISION; precision++) {
+      long previous = -1;
+      for (int i = 0; i < (64 - precision) << precision; i++) {
+        long lowest = LogLinearHistogram.lowestEquivalentValue(precision, i);
+        assertEquals(previous + 1, lowest);
+        previous = LogLinearHistogram.highestEquivalentValue(precision, i);
+      }
+      assertEquals(Long.MAX_VALUE, previous);
+    }
+  }
+
+  @Test public void clamping() {
+    LogLinearHistogram histogram = new LogLinearHistogram(3, 100);
+    histogram.record(-5);
+    histogram.record(1_000_000);
+
+    LogLinearHistogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(2, snapshot.count());
+    assertEquals(0, snapshot.valueAtPercentile(50.0));
+    assertEquals(1_000_000, snapshot.max());
+  }
+
+  @Test public void snapshotAndReset() {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    histogram.record(42);
+    histogram.record(43);
+
+    assertEquals(2, histogram.snapshotAndReset().count());
+    assertEquals(0, histogram.count());
+
+    LogLinearHistogram.Snapshot empty = histogram.snapshot();
+    assertEquals(0, empty.count());
+    assertEquals(0, empty.max());
+    assertEquals(0, empty.p99());
+  }
+
+  @Test public void merge() {
+    LogLinearHistogram first = new LogLinearHistogram();
+    LogLinearHistogram second = new LogLinearHistogram();
+    first.record(10);
+    second.record(20);
+    second.record(30);
+
+    LogLinearHistogram.Snapshot merged = first.snapshot().merge(second.snapshot());
+    assertEquals(3, merged.count());
+    assertEquals(60, merged.sum());
+    assertEquals(30, merged.max());
+    assertEquals(20, merged.p50());
+
+    try {
+      merged.merge(new LogLinearHistogram(3, 100).snapshot());
+      fail("merge must throw IllegalArgumentException");
+    } catch (IllegalArgumentException ex) {
+      assertEquals("snapshots have different layouts", ex.getMessage());
+    }
+  }
+
+  @Test public void concurrentRecording() throws Exception {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    int threads = 8;
+    int iterations = 100_000;
+    CountDownLatch latch = new CountDownLatch(threads);
+    for (int i = 0; i < threads; i++) {
+      new Thread(() -> {
+        for (int j = 0; j < iterations; j++) {
+          histogram.record(j);
+        }
+        latch.countDown();
+      }).start();
+    }
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+    assertEquals(threads * iterations, histogram.count());
+    assertEquals(threads * iterations, histogram.snapshot().count());
+  }
+
+  @Test public void concurrentReset() throws Exception {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    int threads = 4;
+    int iterations = 100_000;
+    CountDownLatch latch = new CountDownLatch(threads);
+    for (int i = 0; i < threads; i++) {
+      new Thread(() -> {
+        for (int j = 0; j < iterations; j++) {
+          histogram.record(j);
+        }
+        latch.countDown();
+      }).start();
+    }
+    long reset = 0;
+    while (latch.getCount() > 0) {
+      reset += histogram.snapshotAndReset().count();
+    }
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+    long remaining = histogram.count();
+    assertEquals(remaining, histogram.snapshot().count());
+    assertEquals(threads * iterations, reset + remaining);
+  }
+
+  @Test public void invalidArguments() {
+    try {
+      new LogLinearHistogram(0, 100);
+      fail("constructor must throw IllegalArgumentException");
+    } catch (IllegalArgumentException ex) {
+      assertEquals("precision <0> must be in range [1, 14]", ex.getMessage());
+    }
+    try {
+      new LogLinearHistogram().snapshot().valueAtPercentile(101.0);
+      fail("valueAtPercentile must throw IllegalArgumentException");
+    } catch (IllegalArgumentException ex) {
+      assertEquals("percentile <101.0> must be in range [0, 100]", ex.getMessage());
+    }
+  }
+
+  private static void assertWithin(long expected, long actual, double relativeError) {
+    assertTrue(expected + " vs " + actual, Math.abs(actual - expected) <= expected * relativeError);
+  }
+}
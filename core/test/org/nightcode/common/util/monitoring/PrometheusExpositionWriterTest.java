@@ -0,0 +1,154 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.monitoring;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link PrometheusExpositionWriter}.
+ */
+public class PrometheusExpositionWriterTest {
+
+  @Test public void counter() throws Exception {
+    InMemoryMonitoringEngine engine = new InMemoryMonitoringEngine();
+    Counter plain = engine.registerCounter("jobs", "");
+    plain.inc(3);
+    plain.dec();
+    Counter counter = engine.registerCounter("requests", "Total \\ requests\nserved", "method", "path");
+    counter.tags("GET", "/a\"b").inc(12);
+
+    // counters may be decremented, so they aren't Prometheus counters
+    String expected = "# TYPE jobs gauge\n"
+        + "jobs 2\n"
+        + "# HELP requests Total \\\\ requests\\nserved\n"
+        + "# TYPE requests gauge\n"
+        + "requests{method=\"GET\",path=\"/a\\\"b\"} 12\n";
+    assertEquals(expected, write(engine));
+  }
+
+  @Test public void gauge() throws Exception {
+    InMemoryMonitoringEngine engine = new InMemoryMonitoringEngine();
+    AtomicLong depth = new AtomicLong(7);
+    Gauge gauge = engine.registerGauge("depth", "queue depth", depth::get);
+    assertEquals(7, gauge.value());
+    depth.set(3);
+    assertEquals("# HELP depth queue depth\n# TYPE depth gauge\ndepth 3\n", write(engine));
+  }
+
+  @Test public void summary() throws Exception {
+    InMemoryMonitoringEngine engine = new InMemoryMonitoringEngine();
+    Histogram histogram = engine.registerHistogram("size", "message size");
+    for (int i = 1; i <= 10; i++) {
+      histogram.update(i);
+    }
+    Timer timer = engine.registerTimer("latency", "latency", "op");
+    timer.tags("read").update(1500, TimeUnit.MILLISECONDS);
+    timer.tags("read").update(2, TimeUnit.SECONDS);
+
+    String expected = "# HELP size message size\n"
+        + "# TYPE size summary\n"
+        + "size{quantile=\"0.5\"} 5\n"
+        + "size{quantile=\"0.99\"} 10\n"
+        + "size{quantile=\"0.999\"} 10\n"
+        + "size{quantile=\"1\"} 10\n"
+        + "size_sum 55\n"
+        + "size_count 10\n"
+        + "# HELP latency latency\n"
+        + "# TYPE latency summary\n";
+    String actual = write(engine);
+    assertTrue(actual, actual.startsWith(expected));
+    assertTrue(actual, actual.contains("latency{op=\"read\",quantile=\"1\"} 2\n"));
+    assertTrue(actual, actual.contains("latency_sum{op=\"read\"} 3.5\n"));
+    assertTrue(actual, actual.endsWith("latency_count{op=\"read\"} 2\n"));
+  }
+
+  @Test public void summarySuffixesIgnoreNameSeparator() throws Exception {
+    InMemoryMonitoringEngine engine = new InMemoryMonitoringEngine('.');
+    engine.registerHistogram("size", "").update(4);
+
+    String actual = write(engine);
+    assertTrue(actual, actual.contains("size_sum 4\n"));
+    assertTrue(actual, actual.endsWith("size_count 1\n"));
+  }
+
+  @Test public void invalidNames() throws Exception {
+    InMemoryMonitoringEngine engine = new InMemoryMonitoringEngine('.');
+    engine.registerCounter("order-service.rejected", "rejected orders", "error:type").tags("a").inc();
+    engine.registerGauge("2xx", "", () -> 1);
+
+    String expected = "# HELP order_service_rejected rejected orders\n"
+        + "# TYPE order_service_rejected gauge\n"
+        + "order_service_rejected{error_type=\"a\"} 1\n"
+        + "# TYPE _2xx gauge\n"
+        + "_2xx 1\n";
+    assertEquals(expected, write(engine));
+  }
+
+  @Test public void unicodeAndReuse() throws Exception {
+    InMemoryMonitoringEngine engine = new InMemoryMonitoringEngine();
+    Counter counter = engine.registerCounter("users", "", "name");
+    counter.tags("\u0434\u0438\u043c\u0430 \uD83D\uDE00").inc();
+
+    PrometheusExpositionWriter writer = new PrometheusExpositionWriter(engine);
+    ByteBuffer first = writer.write();
+    String text = StandardCharsets.UTF_8.decode(first).toString();
+    assertEquals("# TYPE users gauge\nusers{name=\"\u0434\u0438\u043c\u0430 \uD83D\uDE00\"} 1\n", text);
+
+    ByteBuffer second = writer.write();
+    assertEquals(text, StandardCharsets.UTF_8.decode(second).toString());
+  }
+
+  @Test public void httpServer() throws Exception {
+    InMemoryMonitoringEngine engine = new InMemoryMonitoringEngine();
+    engine.registerCounter("up", "").inc();
+
+    try (PrometheusHttpServer server = new PrometheusHttpServer(engine,
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+      server.start();
+      URL url = new URL("http", "127.0.0.1", server.address().getPort(), PrometheusHttpServer.DEFAULT_PATH);
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      assertEquals(200, connection.getResponseCode());
+      assertEquals(PrometheusExpositionWriter.CONTENT_TYPE, connection.getContentType());
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      try (InputStream in = connection.getInputStream()) {
+        byte[] buffer = new byte[256];
+        for (int n; (n = in.read(buffer)) != -1; ) {
+          body.write(buffer, 0, n);
+        }
+      }
+      assertEquals("# TYPE up gauge\nup 1\n", new String(body.toByteArray(), StandardCharsets.UTF_8));
+    }
+  }
+
+  private static String write(InMemoryMonitoringEngine engine) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new PrometheusExpositionWriter(engine).write(out);
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
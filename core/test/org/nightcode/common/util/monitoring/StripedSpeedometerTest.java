@@ -0,0 +1,84 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nightcode.common.util.monitoring;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link StripedSpeedometer}.
+ */
+public class StripedSpeedometerTest {
+
+  @Test public void speed() {
+    AtomicLong clock = new AtomicLong();
+    StripedSpeedometer speedometer = new StripedSpeedometer(1, TimeUnit.SECONDS, clock::get);
+
+    speedometer.mark(500);
+    clock.set(TimeUnit.MILLISECONDS.toNanos(500));
+    assertEquals(500.0, speedometer.getSpeed(), 0.001);
+
+    speedometer.mark(500);
+    clock.set(TimeUnit.SECONDS.toNanos(1));
+    assertEquals(1000.0, speedometer.getSpeed(), 0.001);
+
+    // the previous period's speed fades out while the current one accumulates
+    clock.set(TimeUnit.MILLISECONDS.toNanos(1250));
+    assertEquals(750.0 + 250.0, speedometer.update(250), 0.001);
+
+    clock.set(TimeUnit.SECONDS.toNanos(3));
+    assertEquals(125.0, speedometer.getSpeed(), 0.001);
+  }
+
+  @Test public void concurrentMarks() throws Exception {
+    AtomicLong clock = new AtomicLong();
+    StripedSpeedometer speedometer = new StripedSpeedometer(1, TimeUnit.SECONDS, clock::get);
+
+    int threads = 8;
+    int iterations = 100_000;
+    CountDownLatch latch = new CountDownLatch(threads);
+    for (int i = 0; i < threads; i++) {
+      new Thread(() -> {
+        for (int j = 0; j < iterations; j++) {
+          speedometer.mark(1);
+          if ((j & 0xFFF) == 0) {
+            speedometer.getSpeed();
+          }
+        }
+        latch.countDown();
+      }).start();
+    }
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+    clock.set(TimeUnit.SECONDS.toNanos(2));
+    assertEquals(threads * iterations / 2.0, speedometer.getSpeed(), 0.001);
+  }
+
+  @Test public void invalidPeriod() {
+    try {
+      new StripedSpeedometer(0, TimeUnit.SECONDS);
+      fail("constructor must throw IllegalArgumentException");
+    } catch (IllegalArgumentException ex) {
+      assertEquals("averaging period <0> must be greater than 0", ex.getMessage());
+    }
+  }
+}